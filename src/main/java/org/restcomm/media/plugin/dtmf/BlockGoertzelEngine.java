@@ -0,0 +1,250 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Goertzel engine that evaluates consecutive, non-overlapping windows of samples.
+ * <p>
+ * All recurrences are updated together as each sample arrives, so no window buffer is kept. Subclasses hold the state of the
+ * recurrences and choose the arithmetic they run in, while this class takes care of windows and gating.
+ * <p>
+ * When a {@link SignalGate} is set, the recurrences only run for windows that carry audio which may be a tone. The gate is
+ * evaluated over short blocks of samples and costs a couple of integer operations per sample. Until a block passes the gate
+ * the recurrences of the current window are left untouched (which is equivalent to treating the audio as silence) and a
+ * window in which no block passed is dropped without being evaluated. The samples of the block being gated are kept, so the
+ * block that passes is fed to the recurrences as well and the window is analysed from there on as usual. The following window
+ * starts armed as long as the last block kept passing, so continuous tones are analysed in full.
+ */
+abstract class BlockGoertzelEngine extends GoertzelEngine {
+
+    final int N;
+    final int bins;
+
+    private int offset;
+    private int maxAmpl;
+    private long windowEnergy;
+
+    // Pre-filter configuration
+    private final boolean gating;
+    private final int gateLength;
+    private final double gateEnergy;
+    private final int minCrossings;
+    private final int maxCrossings;
+
+    // Pre-filter state
+    private final short[] block;
+    private int gateOffset;
+    private double energy;
+    private int crossings;
+    private boolean positive;
+    private boolean open;
+    private boolean armed;
+    private boolean loud;
+    private final long[] rejected;
+    private final GoertzelDtmfDetectorMetrics metrics;
+
+    /**
+     * @param bank the shared coefficients of the frequencies to analyse.
+     * @param gate the pre-filter that windows must pass to be analysed. May be null to analyse every window.
+     * @param metrics the aggregate counters windows dropped by the pre-filter are reported to. May be null.
+     */
+    BlockGoertzelEngine(GoertzelFilterBank bank, SignalGate gate, GoertzelDtmfDetectorMetrics metrics) {
+        this.N = bank.getN();
+        this.bins = bank.getBins();
+
+        this.gating = (gate != null);
+        this.gateLength = gating ? gate.getBlockLength() : 0;
+        this.gateEnergy = gating ? gate.getMinEnergy() : 0;
+        this.minCrossings = gating ? gate.getMinCrossings() : 0;
+        this.maxCrossings = gating ? gate.getMaxCrossings() : 0;
+        this.block = new short[gateLength];
+        this.armed = !gating;
+        this.rejected = new long[GateStage.values().length];
+        this.metrics = metrics;
+    }
+
+    @Override
+    boolean process(int sample) {
+        if (gating) {
+            if (armed) {
+                gate(sample);
+            } else {
+                block[gateOffset] = (short) sample;
+                gate(sample);
+                if (armed) {
+                    // The block that opened the gate is analysed too, as far as it belongs to this window
+                    final int count = Math.min(gateLength, offset + 1);
+                    for (int i = gateLength - count; i < gateLength; i++) {
+                        feed(block[i]);
+                    }
+                    return ++offset == N;
+                }
+                if (++offset < N) {
+                    return false;
+                }
+                // No block of this window passed the gate, so it is dropped without evaluation
+                final GateStage stage = loud ? GateStage.ZERO_CROSSING : GateStage.ENERGY;
+                rejected[stage.ordinal()]++;
+                if (metrics != null) {
+                    metrics.windowRejected(stage);
+                }
+                nextWindow();
+                return false;
+            }
+        }
+
+        feed(sample);
+        return ++offset == N;
+    }
+
+    private void feed(int sample) {
+        final int amplitude = Math.abs(sample);
+        if (amplitude > maxAmpl) {
+            maxAmpl = amplitude;
+        }
+        windowEnergy += sample * sample;
+        recur(sample);
+    }
+
+    /**
+     * Runs a single step of every Goertzel recurrence.
+     *
+     * @param sample the signed 16-bit sample.
+     */
+    abstract void recur(int sample);
+
+    /**
+     * Clears the state of every Goertzel recurrence.
+     */
+    abstract void clear();
+
+    /**
+     * @return the number of bytes the states of the recurrences take in a snapshot.
+     */
+    abstract int getRecurrenceSize();
+
+    /**
+     * Writes the states of the recurrences into a buffer.
+     */
+    abstract void saveRecurrences(ByteBuffer buffer);
+
+    /**
+     * Reads back the states of the recurrences.
+     */
+    abstract void restoreRecurrences(ByteBuffer buffer);
+
+    /**
+     * Accumulates the energy and zero crossings of the current gate block and arms the window once a block passes the gate.
+     */
+    private void gate(int sample) {
+        energy += (double) sample * sample;
+        final boolean p = sample >= 0;
+        if (p != positive) {
+            positive = p;
+            crossings++;
+        }
+
+        if (++gateOffset == gateLength) {
+            final boolean blockLoud = energy >= gateEnergy;
+            open = blockLoud && crossings >= minCrossings && crossings <= maxCrossings;
+            loud |= blockLoud;
+            armed |= open;
+
+            gateOffset = 0;
+            energy = 0;
+            crossings = 0;
+        }
+    }
+
+    @Override
+    int getSnapshotSize() {
+        // Window offset, peak and energy, then the block being gated with its energy, crossings and flags
+        return 16 + (gating ? 2 * gateLength + 17 : 0) + getRecurrenceSize();
+    }
+
+    @Override
+    void save(ByteBuffer buffer) {
+        buffer.putInt(offset).putInt(maxAmpl).putLong(windowEnergy);
+        if (gating) {
+            for (int i = 0; i < gateLength; i++) {
+                buffer.putShort(block[i]);
+            }
+            buffer.putInt(gateOffset).putDouble(energy).putInt(crossings);
+            buffer.put((byte) ((positive ? 1 : 0) | (open ? 2 : 0) | (armed ? 4 : 0) | (loud ? 8 : 0)));
+        }
+        saveRecurrences(buffer);
+    }
+
+    @Override
+    void restore(ByteBuffer buffer) {
+        offset = checkPosition(buffer.getInt(), N);
+        maxAmpl = buffer.getInt();
+        windowEnergy = buffer.getLong();
+        if (gating) {
+            for (int i = 0; i < gateLength; i++) {
+                block[i] = buffer.getShort();
+            }
+            gateOffset = checkPosition(buffer.getInt(), gateLength);
+            energy = buffer.getDouble();
+            crossings = buffer.getInt();
+            final byte flags = buffer.get();
+            positive = (flags & 1) != 0;
+            open = (flags & 2) != 0;
+            armed = (flags & 4) != 0;
+            loud = (flags & 8) != 0;
+        }
+        restoreRecurrences(buffer);
+    }
+
+    @Override
+    long getRejectedWindows(GateStage stage) {
+        return rejected[stage.ordinal()];
+    }
+
+    @Override
+    double peak() {
+        return maxAmpl;
+    }
+
+    @Override
+    double energy() {
+        return (double) windowEnergy * N / 2;
+    }
+
+    @Override
+    void nextWindow() {
+        reset();
+    }
+
+    @Override
+    void reset() {
+        offset = 0;
+        maxAmpl = 0;
+        windowEnergy = 0;
+        armed = !gating || open;
+        loud = false;
+        clear();
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Goertzel engine that screens the audio with short windows and only runs the full length analysis to confirm a candidate.
+ * <p>
+ * A short window flags a candidate when it reaches the minimum tone volume and its two strongest bins hold
+ * {@link #MIN_SHARE} of its energy, which a tone filling at least half of the window does whatever its frequencies, while
+ * speech and noise rarely do. A {@link SlidingGoertzelEngine} then evaluates a full length window at the end of every short
+ * window, for as long as the last full length window overlaps a flagged short window. Only these windows are handed out
+ * for evaluation, so the frequency resolution of the full length is kept while tones are confirmed about as soon as they
+ * fill enough of a window.
+ * <p>
+ * When backdating, the samples of the last full length window are kept and replayed into the sliding engine when a candidate
+ * is flagged, so the first window it evaluates already reaches back to the onset of the tone. Otherwise the sliding engine
+ * starts with the candidate and evaluates its first window a full length later, but no samples are kept.
+ */
+class CascadeGoertzelEngine extends GoertzelEngine {
+
+    // Share of the energy of a short window its two strongest bins must hold to flag a candidate
+    static final double MIN_SHARE = 0.5;
+
+    private final GoertzelEngine screen;
+    private final SlidingGoertzelEngine confirm;
+    private final double threshold;
+    private final double[] screenPower;
+    private final int N;
+
+    // Samples of the last full length window, oldest first from the position, or null when not backdating
+    private final short[] history;
+    private int position;
+
+    // Whether the sliding engine runs, and the number of samples since the last flagged short window ended
+    private boolean armed;
+    private int sinceCandidate;
+
+    /**
+     * @param screen the engine that evaluates the short windows.
+     * @param screenBank the coefficients the screening engine runs with.
+     * @param bank the coefficients of the full length analysis.
+     * @param threshold the minimum peak amplitude of a short window that can flag a candidate.
+     * @param backdating whether the full length analysis reaches back before the candidate.
+     */
+    CascadeGoertzelEngine(GoertzelEngine screen, GoertzelFilterBank screenBank, GoertzelFilterBank bank, double threshold,
+            boolean backdating) {
+        this.screen = screen;
+        this.confirm = new SlidingGoertzelEngine(bank, screenBank.getN());
+        this.threshold = threshold;
+        this.screenPower = new double[screenBank.getBins()];
+        this.N = bank.getN();
+        this.history = backdating ? new short[N] : null;
+    }
+
+    @Override
+    boolean process(int sample) {
+        if (history != null) {
+            history[position] = (short) sample;
+            if (++position == N) {
+                position = 0;
+            }
+        }
+
+        boolean ready = false;
+        if (armed) {
+            sinceCandidate++;
+            ready = confirm.process(sample);
+        }
+        if (screen.process(sample)) {
+            if (candidate()) {
+                sinceCandidate = 0;
+                if (!armed) {
+                    ready = arm();
+                }
+            }
+            screen.nextWindow();
+        }
+        return ready;
+    }
+
+    /**
+     * @return whether the short window that is ready to be evaluated flags a candidate.
+     */
+    private boolean candidate() {
+        final double energy = screen.energy();
+        if (screen.peak() < threshold || energy <= 0) {
+            return false;
+        }
+
+        screen.power(screenPower);
+        double first = 0;
+        double second = 0;
+        for (double p : screenPower) {
+            if (p > first) {
+                second = first;
+                first = p;
+            } else if (p > second) {
+                second = p;
+            }
+        }
+        return first + second >= energy * MIN_SHARE;
+    }
+
+    /**
+     * Starts the sliding engine, replaying the kept samples into it when backdating.
+     *
+     * @return whether a window is ready to be evaluated once the kept samples are replayed.
+     */
+    private boolean arm() {
+        this.armed = true;
+        confirm.reset();
+        if (history == null) {
+            return false;
+        }
+
+        boolean ready = false;
+        for (int i = 0; i < N; i++) {
+            ready = confirm.process(history[(position + i) % N]);
+        }
+        return ready;
+    }
+
+    @Override
+    double peak() {
+        return confirm.peak();
+    }
+
+    @Override
+    double energy() {
+        return confirm.energy();
+    }
+
+    @Override
+    void power(double[] power) {
+        confirm.power(power);
+    }
+
+    @Override
+    void nextWindow() {
+        confirm.nextWindow();
+        // Stand down once the window that was just evaluated holds no flagged short window
+        if (sinceCandidate >= N) {
+            this.armed = false;
+        }
+    }
+
+    @Override
+    long getRejectedWindows(GateStage stage) {
+        return screen.getRejectedWindows(stage);
+    }
+
+    @Override
+    void reset() {
+        screen.reset();
+        confirm.reset();
+        if (history != null) {
+            for (int i = 0; i < N; i++) {
+                history[i] = 0;
+            }
+        }
+        position = 0;
+        armed = false;
+        sinceCandidate = 0;
+    }
+
+    @Override
+    int getSnapshotSize() {
+        return 9 + screen.getSnapshotSize() + confirm.getSnapshotSize() + ((history == null) ? 0 : 2 * N);
+    }
+
+    @Override
+    void save(ByteBuffer buffer) {
+        screen.save(buffer);
+        if (history != null) {
+            for (int i = 0; i < N; i++) {
+                buffer.putShort(history[i]);
+            }
+        }
+        buffer.putInt(position).putInt(sinceCandidate).put((byte) (armed ? 1 : 0));
+        // The sliding engine is restarted when a candidate is flagged, so its state only matters while it runs
+        if (armed) {
+            confirm.save(buffer);
+        }
+    }
+
+    @Override
+    void restore(ByteBuffer buffer) {
+        screen.restore(buffer);
+        if (history != null) {
+            for (int i = 0; i < N; i++) {
+                history[i] = buffer.getShort();
+            }
+        }
+        position = checkPosition(buffer.getInt(), N);
+        sinceCandidate = buffer.getInt();
+        armed = buffer.get() != 0;
+        if (armed) {
+            confirm.restore(buffer);
+        } else {
+            confirm.reset();
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Goertzel engine that decimates the incoming samples by an integer factor before handing them to another engine.
+ * <p>
+ * Decimation runs through a second order CIC filter: two integrators at the input rate and two combs at the output rate.
+ * It costs a few integer additions per sample, its nulls fall on the multiples of the output rate where aliases would fold
+ * back onto the DTMF band, and it attenuates the band itself by about 1 dB at most, well within the twist a tone is allowed.
+ */
+class DecimatingGoertzelEngine extends GoertzelEngine {
+
+    private final GoertzelEngine engine;
+    private final int factor;
+    private final int gain;
+
+    // Integrators run with wrap-around arithmetic, which the combs cancel out
+    private int integrator1;
+    private int integrator2;
+    private int comb1;
+    private int comb2;
+    private int phase;
+
+    /**
+     * @param engine the engine that analyses the decimated samples.
+     * @param factor the decimation factor.
+     */
+    DecimatingGoertzelEngine(GoertzelEngine engine, int factor) {
+        this.engine = engine;
+        this.factor = factor;
+        this.gain = factor * factor;
+    }
+
+    @Override
+    boolean process(int sample) {
+        integrator1 += sample;
+        integrator2 += integrator1;
+        if (++phase < factor) {
+            return false;
+        }
+        phase = 0;
+
+        final int stage1 = integrator2 - comb1;
+        comb1 = integrator2;
+        final int stage2 = stage1 - comb2;
+        comb2 = stage1;
+        return engine.process(stage2 / gain);
+    }
+
+    @Override
+    double peak() {
+        return engine.peak();
+    }
+
+    @Override
+    double energy() {
+        return engine.energy();
+    }
+
+    @Override
+    void power(double[] power) {
+        engine.power(power);
+    }
+
+    @Override
+    void nextWindow() {
+        engine.nextWindow();
+    }
+
+    @Override
+    long getRejectedWindows(GateStage stage) {
+        return engine.getRejectedWindows(stage);
+    }
+
+    @Override
+    void reset() {
+        // Filter memory holds past samples too
+        engine.reset();
+        integrator1 = 0;
+        integrator2 = 0;
+        comb1 = 0;
+        comb2 = 0;
+        phase = 0;
+    }
+
+    @Override
+    int getSnapshotSize() {
+        return 20 + engine.getSnapshotSize();
+    }
+
+    @Override
+    void save(ByteBuffer buffer) {
+        buffer.putInt(integrator1).putInt(integrator2).putInt(comb1).putInt(comb2).putInt(phase);
+        engine.save(buffer);
+    }
+
+    @Override
+    void restore(ByteBuffer buffer) {
+        integrator1 = buffer.getInt();
+        integrator2 = buffer.getInt();
+        comb1 = buffer.getInt();
+        comb2 = buffer.getInt();
+        phase = checkPosition(buffer.getInt(), factor);
+        engine.restore(buffer);
+    }
+
+}
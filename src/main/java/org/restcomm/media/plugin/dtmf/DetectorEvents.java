@@ -0,0 +1,270 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events that describe what {@link GoertzelDtmfDetector detectors} see, to be looked at in JDK Mission
+ * Control when a digit is missed or reported twice.
+ * <p>
+ * Events are only built for the legs a detector traces (see {@link GoertzelDtmfDetector#setTraced(boolean)}) and only while
+ * a recording enables their type, so leaving tracing on in production costs a couple of field reads per window, without
+ * allocating, until a recording starts. None of them records a stack trace. Windows are far more frequent than the other events,
+ * so {@link WindowAnalysed} is disabled by default and has to be enabled in the recording settings.
+ * <p>
+ * Older runtimes lack the Flight Recorder API, so detectors only touch this class after checking it is there.
+ */
+final class DetectorEvents {
+
+    // Types are looked up once, so that their state can be checked before allocating an event
+    private static final EventType WINDOW_ANALYSED = EventType.getEventType(WindowAnalysed.class);
+    private static final EventType CANDIDATE_REJECTED = EventType.getEventType(CandidateRejected.class);
+    private static final EventType TONE_CONFIRMED = EventType.getEventType(ToneConfirmed.class);
+    private static final EventType TONE_ENDED = EventType.getEventType(ToneEnded.class);
+    private static final EventType STATE_CHANGED = EventType.getEventType(StateChanged.class);
+
+    private DetectorEvents() {
+    }
+
+    static void windowAnalysed(long leg, long position, double peak, double energy, double[] power, int tone) {
+        if (!WINDOW_ANALYSED.isEnabled()) {
+            return;
+        }
+        final WindowAnalysed event = new WindowAnalysed();
+        if (event.shouldCommit()) {
+            event.leg = leg;
+            event.position = position;
+            event.peak = peak;
+            event.energy = energy;
+            event.power697 = power[0];
+            event.power770 = power[1];
+            event.power852 = power[2];
+            event.power941 = power[3];
+            event.power1209 = power[4];
+            event.power1336 = power[5];
+            event.power1477 = power[6];
+            event.power1633 = power[7];
+            event.tone = (tone < 0) ? null : ToneFamily.getName(tone);
+            event.commit();
+        }
+    }
+
+    static void candidateRejected(long leg, long position, DtmfToneClassifier classifier, double[] power, double energy,
+            double noiseFloor) {
+        if (!CANDIDATE_REJECTED.isEnabled()) {
+            return;
+        }
+        final CandidateRejected event = new CandidateRejected();
+        if (event.shouldCommit()) {
+            event.leg = leg;
+            event.position = position;
+            event.reason = classifier.getRejection(power, energy, noiseFloor);
+            event.commit();
+        }
+    }
+
+    static void toneConfirmed(long leg, int tone, long onset, long latency) {
+        if (!TONE_CONFIRMED.isEnabled()) {
+            return;
+        }
+        final ToneConfirmed event = new ToneConfirmed();
+        if (event.shouldCommit()) {
+            event.leg = leg;
+            event.tone = ToneFamily.getName(tone);
+            event.onset = onset;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    static void toneEnded(long leg, int tone, long onset, long length) {
+        if (!TONE_ENDED.isEnabled()) {
+            return;
+        }
+        final ToneEnded event = new ToneEnded();
+        if (event.shouldCommit()) {
+            event.leg = leg;
+            event.tone = ToneFamily.getName(tone);
+            event.onset = onset;
+            event.length = length;
+            event.commit();
+        }
+    }
+
+    static void stateChanged(long leg, long position, ToneState from, ToneState to) {
+        if (!STATE_CHANGED.isEnabled()) {
+            return;
+        }
+        final StateChanged event = new StateChanged();
+        if (event.shouldCommit()) {
+            event.leg = leg;
+            event.position = position;
+            event.from = from.name();
+            event.to = to.name();
+            event.commit();
+        }
+    }
+
+    @Name("org.restcomm.media.plugin.dtmf.WindowAnalysed")
+    @Label("DTMF Window Analysed")
+    @Description("Bin powers of a window that went through the Goertzel analysis")
+    @Category({"Restcomm Media", "DTMF Detector"})
+    @StackTrace(false)
+    @Enabled(false)
+    static final class WindowAnalysed extends Event {
+
+        @Label("Leg")
+        long leg;
+
+        @Label("Position")
+        @Description("Position of the sample that follows the window")
+        long position;
+
+        @Label("Peak Amplitude")
+        double peak;
+
+        @Label("Energy")
+        double energy;
+
+        @Label("697 Hz")
+        double power697;
+
+        @Label("770 Hz")
+        double power770;
+
+        @Label("852 Hz")
+        double power852;
+
+        @Label("941 Hz")
+        double power941;
+
+        @Label("1209 Hz")
+        double power1209;
+
+        @Label("1336 Hz")
+        double power1336;
+
+        @Label("1477 Hz")
+        double power1477;
+
+        @Label("1633 Hz")
+        double power1633;
+
+        @Label("Tone")
+        @Description("DTMF tone recognised in the window, if any")
+        String tone;
+
+    }
+
+    @Name("org.restcomm.media.plugin.dtmf.CandidateRejected")
+    @Label("DTMF Candidate Rejected")
+    @Description("Window loud enough to be classified that held no DTMF tone")
+    @Category({"Restcomm Media", "DTMF Detector"})
+    @StackTrace(false)
+    static final class CandidateRejected extends Event {
+
+        @Label("Leg")
+        long leg;
+
+        @Label("Position")
+        @Description("Position of the sample that follows the window")
+        long position;
+
+        @Label("Reason")
+        @Description("First check the window failed")
+        String reason;
+
+    }
+
+    @Name("org.restcomm.media.plugin.dtmf.ToneConfirmed")
+    @Label("DTMF Tone Confirmed")
+    @Category({"Restcomm Media", "DTMF Detector"})
+    @StackTrace(false)
+    static final class ToneConfirmed extends Event {
+
+        @Label("Leg")
+        long leg;
+
+        @Label("Tone")
+        String tone;
+
+        @Label("Onset")
+        @Description("Position of the first sample of the tone")
+        long onset;
+
+        @Label("Latency")
+        @Description("Time from the first loud window to the detection, in milliseconds")
+        long latency;
+
+    }
+
+    @Name("org.restcomm.media.plugin.dtmf.ToneEnded")
+    @Label("DTMF Tone Ended")
+    @Category({"Restcomm Media", "DTMF Detector"})
+    @StackTrace(false)
+    static final class ToneEnded extends Event {
+
+        @Label("Leg")
+        long leg;
+
+        @Label("Tone")
+        String tone;
+
+        @Label("Onset")
+        @Description("Position of the first sample of the tone")
+        long onset;
+
+        @Label("Length")
+        @Description("Number of samples the tone lasted")
+        long length;
+
+    }
+
+    @Name("org.restcomm.media.plugin.dtmf.StateChanged")
+    @Label("DTMF Tone State Changed")
+    @Category({"Restcomm Media", "DTMF Detector"})
+    @StackTrace(false)
+    static final class StateChanged extends Event {
+
+        @Label("Leg")
+        long leg;
+
+        @Label("Position")
+        long position;
+
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+
+    }
+
+}
@@ -0,0 +1,400 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Fixed set of worker threads, or shards, that run detection for the legs attached to them, instead of the media threads
+ * that receive the audio.
+ * <p>
+ * Each leg is hashed to a shard when it is attached and stays there until it is detached, so the state of its detector is
+ * only ever touched by one thread and stays in the caches of the core that thread runs on, whichever media thread delivers
+ * the next frame. Frames reach the shard through a {@link FrameQueue} per leg, a single-producer single-consumer ring that
+ * is written and read without locks and without allocating. A shard drains the queues of its legs in turns, a bounded batch
+ * at a time, and sleeps when all of them are empty. When the queue of a leg is full its frame is dropped and counted, so a
+ * lagging shard never holds up a media thread.
+ * <p>
+ * Media-core does not tell a detector that its leg has ended, so a leg that gets no frame for the idle timeout is marked
+ * idle, and removed from its shard if it gets none for another timeout. Shards therefore only go through the legs that are
+ * receiving audio and do not keep ended ones from being garbage collected. A leg that gets a frame again is attached again
+ * to the same shard, with the state of its detector intact.
+ * <p>
+ * Shards run on platform threads, which keep their core for as long as the operating system lets them. Deployments that pin
+ * threads to cores can do so through the thread factory.
+ */
+public class DtmfDetectorShards implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(DtmfDetectorShards.class);
+
+    // Longest time a shard sleeps before looking for frames again, in case a wake-up was missed
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Largest number of frames of a leg processed before moving on to the next leg of the shard
+    private static final int BATCH_SIZE = 8;
+
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10000;
+
+    private static final ShardedDtmfDetector[] NO_LEGS = new ShardedDtmfDetector[0];
+
+    private final Shard[] shards;
+    private final int queueCapacity;
+    private final long idleNanos;
+
+    private final LongAdder processed;
+    private final LongAdder dropped;
+
+    /**
+     * Creates shards that run on daemon platform threads.
+     *
+     * @param shards the number of shards, typically the number of cores set aside for detection.
+     * @param queueCapacity the number of frames the queue of each leg holds, rounded up to a power of two.
+     */
+    public DtmfDetectorShards(int shards, int queueCapacity) {
+        this(shards, queueCapacity, DEFAULT_IDLE_TIMEOUT_MILLIS, defaultThreadFactory());
+    }
+
+    /**
+     * Creates shards that run on daemon platform threads.
+     *
+     * @param shards the number of shards, typically the number of cores set aside for detection.
+     * @param queueCapacity the number of frames the queue of each leg holds, rounded up to a power of two.
+     * @param idleTimeout the time without frames after which a leg is marked idle, and then removed from its shard, in
+     *        milliseconds.
+     */
+    public DtmfDetectorShards(int shards, int queueCapacity, long idleTimeout) {
+        this(shards, queueCapacity, idleTimeout, defaultThreadFactory());
+    }
+
+    /**
+     * @param shards the number of shards, typically the number of cores set aside for detection.
+     * @param queueCapacity the number of frames the queue of each leg holds, rounded up to a power of two.
+     * @param idleTimeout the time without frames after which a leg is marked idle, and then removed from its shard, in
+     *        milliseconds.
+     * @param threadFactory the factory of the shard threads.
+     */
+    public DtmfDetectorShards(int shards, int queueCapacity, long idleTimeout, ThreadFactory threadFactory) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Number of shards must be positive: " + shards);
+        }
+        if (queueCapacity < 1 || queueCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Queue capacity must be between 1 and 2^30: " + queueCapacity);
+        }
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("Idle timeout must be positive: " + idleTimeout);
+        }
+        this.queueCapacity = queueCapacity;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        this.processed = new LongAdder();
+        this.dropped = new LongAdder();
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(threadFactory);
+        }
+    }
+
+    /**
+     * Starts the shard threads.
+     */
+    public void start() {
+        for (Shard shard : shards) {
+            shard.running = true;
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * Stops the shard threads once the frames already queued are processed. Legs still attached are detached, while legs
+     * removed for being idle are left alone.
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.running = false;
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Attaches the detector of a leg to a shard.
+     *
+     * @param detector the detector, which must not be used directly afterwards.
+     * @param key the key the shard is chosen by, such as an identifier of the leg or of its call. Legs with the same key share
+     *        a shard.
+     * @return the detector that hands frames over to the shard.
+     */
+    public ShardedDtmfDetector attach(GoertzelDtmfDetector detector, long key) {
+        return attach(detector, key, null);
+    }
+
+    /**
+     * Attaches the detector of a leg to a shard.
+     *
+     * @param detector the detector, which must not be used directly afterwards.
+     * @param key the key the shard is chosen by, such as an identifier of the leg or of its call. Legs with the same key share
+     *        a shard.
+     * @param onDetach called on the shard thread with the detector once the leg is detached, or on the migrating thread once
+     *        a migrated leg is. May be null.
+     * @return the detector that hands frames over to the shard.
+     */
+    public ShardedDtmfDetector attach(GoertzelDtmfDetector detector, long key, Consumer<GoertzelDtmfDetector> onDetach) {
+        final Shard shard = shards[getShard(key)];
+        final ShardedDtmfDetector leg = new ShardedDtmfDetector(detector, new FrameQueue(queueCapacity), shard, onDetach);
+        shard.add(leg);
+        return leg;
+    }
+
+    /**
+     * Gets the shard the legs with a given key are attached to.
+     *
+     * @param key the key.
+     * @return the index of the shard.
+     */
+    public int getShard(long key) {
+        // Fibonacci hashing spreads sequential keys evenly
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (((hash >>> 32) * shards.length) >>> 32);
+    }
+
+    /**
+     * Gets the number of shards.
+     */
+    public int getShards() {
+        return shards.length;
+    }
+
+    /**
+     * Gets the number of legs currently attached to the shards, idle ones included until they are removed.
+     */
+    public long getLegs() {
+        long legs = 0;
+        for (Shard shard : shards) {
+            legs += shard.legs.length;
+        }
+        return legs;
+    }
+
+    /**
+     * Gets the number of legs currently attached to a shard.
+     *
+     * @param shard the index of the shard.
+     */
+    public int getLegs(int shard) {
+        return shards[shard].legs.length;
+    }
+
+    /**
+     * Gets the number of frames the shards ran detection over.
+     */
+    public long getProcessedFrames() {
+        return processed.sum();
+    }
+
+    /**
+     * Gets the number of frames dropped because the queue of their leg was full.
+     */
+    public long getDroppedFrames() {
+        return dropped.sum();
+    }
+
+    /**
+     * Creates daemon platform threads named after their shard.
+     */
+    static ThreadFactory defaultThreadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "dtmf-detector-shard-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    final class Shard implements Runnable {
+
+        private final Thread thread;
+
+        // Legs of the shard, replaced as a whole when a leg is attached or detached
+        private volatile ShardedDtmfDetector[] legs;
+
+        private volatile boolean running;
+        private volatile boolean sleeping;
+
+        private Shard(ThreadFactory threadFactory) {
+            this.legs = NO_LEGS;
+            this.thread = threadFactory.newThread(this);
+        }
+
+        private synchronized void add(ShardedDtmfDetector leg) {
+            final ShardedDtmfDetector[] legs = Arrays.copyOf(this.legs, this.legs.length + 1);
+            legs[legs.length - 1] = leg;
+            this.legs = legs;
+        }
+
+        /**
+         * Adds a leg that was removed for being idle back, when it gets a frame again.
+         */
+        void reattach(ShardedDtmfDetector leg) {
+            add(leg);
+            wake();
+        }
+
+        boolean isRunning() {
+            return running;
+        }
+
+        private synchronized void remove(ShardedDtmfDetector leg) {
+            final ShardedDtmfDetector[] legs = this.legs;
+            for (int i = 0; i < legs.length; i++) {
+                if (legs[i] == leg) {
+                    final ShardedDtmfDetector[] remaining = new ShardedDtmfDetector[legs.length - 1];
+                    System.arraycopy(legs, 0, remaining, 0, i);
+                    System.arraycopy(legs, i + 1, remaining, i, remaining.length - i);
+                    this.legs = remaining;
+                    return;
+                }
+            }
+        }
+
+        void frameDropped() {
+            dropped.increment();
+        }
+
+        /**
+         * Wakes the shard up if it sleeps, after a frame was queued or a leg was detached.
+         */
+        void wake() {
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                if (process() > 0) {
+                    continue;
+                }
+                this.sleeping = true;
+                if (running && !pending()) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                this.sleeping = false;
+            }
+
+            // Frames queued before the shards were closed are still processed
+            while (process() > 0) {
+                continue;
+            }
+            for (ShardedDtmfDetector leg : legs) {
+                detach(leg);
+            }
+        }
+
+        /**
+         * Gives every leg of the shard a turn, and detaches the legs that were closed.
+         *
+         * @return the number of frames processed.
+         */
+        private int process() {
+            final long now = System.nanoTime();
+            int count = 0;
+            for (ShardedDtmfDetector leg : legs) {
+                if (leg.isClosed()) {
+                    count += detach(leg);
+                    continue;
+                }
+                int drained = 0;
+                try {
+                    drained = leg.drain(BATCH_SIZE);
+                } catch (RuntimeException e) {
+                    logger.warn("DTMF detection failed", e);
+                }
+                if (drained > 0) {
+                    leg.setLastActive(now);
+                    count += drained;
+                } else if (now - leg.getLastActive() > idleNanos) {
+                    idle(leg, now);
+                }
+            }
+            if (count > 0) {
+                processed.add(count);
+            }
+            return count;
+        }
+
+        private boolean pending() {
+            for (ShardedDtmfDetector leg : legs) {
+                if (leg.isClosed() || !leg.isIdle()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Marks a leg that got no frame for the idle timeout as idle, or removes it if it already was. A frame queued while
+         * the leg was removed is seen by the producer, which attaches the leg again.
+         */
+        private void idle(ShardedDtmfDetector leg, long now) {
+            if (leg.getAttachment() == ShardedDtmfDetector.ATTACHED) {
+                if (leg.setAttachment(ShardedDtmfDetector.ATTACHED, ShardedDtmfDetector.IDLE)) {
+                    leg.setLastActive(now);
+                }
+                return;
+            }
+            remove(leg);
+            if (!leg.setAttachment(ShardedDtmfDetector.IDLE, ShardedDtmfDetector.DETACHED)) {
+                // The producer queued a frame meanwhile and expects the leg to still be there
+                add(leg);
+            }
+        }
+
+        private int detach(ShardedDtmfDetector leg) {
+            remove(leg);
+            try {
+                return leg.detach();
+            } catch (RuntimeException e) {
+                logger.warn("DTMF leg could not be detached", e);
+                return 0;
+            }
+        }
+
+    }
+
+}
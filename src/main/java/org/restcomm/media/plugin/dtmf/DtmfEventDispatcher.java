@@ -0,0 +1,333 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers the events of {@link GoertzelDtmfDetector detectors} to their observers on a dedicated thread, so a slow observer
+ * does not hold up the media threads that run detection.
+ * <p>
+ * Events are written to a preallocated ring buffer that any number of media threads can publish to without locking, and are
+ * drained in batches by a single consumer thread, which is a virtual thread when the runtime supports them. Publishing an
+ * event takes a bounded number of steps and allocates nothing. When the buffer is full the configured
+ * {@link OverflowPolicy} applies.
+ * <p>
+ * Events of a leg are delivered in the order they were detected. Observers registered with a detector that uses a
+ * dispatcher are called from the consumer thread, after {@link GoertzelDtmfDetector#detect(byte[], long)} has returned, so
+ * state read from the detector while handling an event (such as {@link GoertzelDtmfDetector#getLastToneOffset()}) may
+ * already describe later audio. Events still queued for a detector that is reset are discarded once the thread that reset it
+ * publishes another event, which hands the reset over to the consumer thread. A leg whose events must all be delivered, or
+ * none, waits for them through {@link GoertzelDtmfDetector#awaitEvents(long, TimeUnit)} before the reset.
+ */
+public class DtmfEventDispatcher implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(DtmfEventDispatcher.class);
+
+    // Longest time the consumer sleeps before looking for events again, in case a wake-up was missed
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int capacity;
+    private final int mask;
+    private final int batchSize;
+    private final OverflowPolicy overflow;
+
+    // Slots of the ring. A slot holds an event once its sequence is one past the position it was claimed at.
+    private final AtomicLongArray sequences;
+    private final GoertzelDtmfDetector[] detectors;
+    private final int[] generations;
+    private final boolean[] begins;
+    private final int[] tones;
+    private final long[] onsets;
+    private final long[] durations;
+
+    // Next position to claim, shared by the producers, and next position to deliver, written by the consumer only
+    private final AtomicLong tail;
+    private volatile long head;
+
+    private final LongAdder dropped;
+    private final LongAdder inlined;
+    private final LongAdder delivered;
+    private final LongAdder batches;
+
+    private final Thread consumer;
+    private volatile boolean running;
+    private volatile boolean sleeping;
+
+    /**
+     * Creates a dispatcher that drops events when its buffer is full.
+     *
+     * @param capacity the number of events the buffer holds, rounded up to a power of two.
+     */
+    public DtmfEventDispatcher(int capacity) {
+        this(capacity, 64, OverflowPolicy.DROP);
+    }
+
+    /**
+     * Creates a dispatcher whose consumer runs on a virtual thread if the runtime supports them, or on a daemon platform
+     * thread otherwise.
+     *
+     * @param capacity the number of events the buffer holds, rounded up to a power of two.
+     * @param batchSize the largest number of events delivered before the consumer frees their slots.
+     * @param overflow what to do with events that do not fit in the buffer.
+     */
+    public DtmfEventDispatcher(int capacity, int batchSize, OverflowPolicy overflow) {
+        this(capacity, batchSize, overflow, defaultThreadFactory());
+    }
+
+    /**
+     * @param capacity the number of events the buffer holds, rounded up to a power of two.
+     * @param batchSize the largest number of events delivered before the consumer frees their slots.
+     * @param overflow what to do with events that do not fit in the buffer.
+     * @param threadFactory the factory of the consumer thread.
+     */
+    public DtmfEventDispatcher(int capacity, int batchSize, OverflowPolicy overflow, ThreadFactory threadFactory) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.batchSize = batchSize;
+        this.overflow = overflow;
+
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.detectors = new GoertzelDtmfDetector[this.capacity];
+        this.generations = new int[this.capacity];
+        this.begins = new boolean[this.capacity];
+        this.tones = new int[this.capacity];
+        this.onsets = new long[this.capacity];
+        this.durations = new long[this.capacity];
+
+        this.tail = new AtomicLong();
+        this.dropped = new LongAdder();
+        this.inlined = new LongAdder();
+        this.delivered = new LongAdder();
+        this.batches = new LongAdder();
+
+        this.consumer = threadFactory.newThread(this::drain);
+    }
+
+    /**
+     * Starts the consumer thread.
+     */
+    public void start() {
+        this.running = true;
+        this.consumer.start();
+    }
+
+    /**
+     * Stops the consumer thread once the events already published are delivered.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Publishes an event of a detector.
+     *
+     * @return false if the event was dropped because the buffer was full.
+     */
+    boolean dispatch(GoertzelDtmfDetector detector, int generation, boolean begin, int tone, long onset, long duration) {
+        long position;
+        do {
+            position = tail.get();
+            if (position - head >= capacity) {
+                if (overflow == OverflowPolicy.INLINE) {
+                    inlined.increment();
+                    detector.deliver(generation, begin, tone, onset, duration);
+                    return true;
+                }
+                dropped.increment();
+                return false;
+            }
+        } while (!tail.compareAndSet(position, position + 1));
+
+        final int index = (int) position & mask;
+        detectors[index] = detector;
+        generations[index] = generation;
+        begins[index] = begin;
+        tones[index] = tone;
+        onsets[index] = onset;
+        durations[index] = duration;
+        sequences.set(index, position + 1);
+
+        if (sleeping) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the events published so far are delivered. Must not be called from an observer, which runs on the consumer
+     * thread.
+     *
+     * @param timeout the longest time to wait.
+     * @param unit the unit of the timeout.
+     * @return whether the events were delivered in time.
+     * @throws InterruptedException if the caller was interrupted while waiting.
+     */
+    boolean awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+        final long target = tail.get();
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (head < target) {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(remaining, PARK_NANOS));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return true;
+    }
+
+    private void drain() {
+        while (running || head != tail.get()) {
+            if (deliver() > 0) {
+                continue;
+            }
+            this.sleeping = true;
+            if (sequences.get((int) head & mask) != head + 1 && running) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            this.sleeping = false;
+        }
+    }
+
+    /**
+     * Delivers the next batch of published events and frees their slots.
+     *
+     * @return the number of events delivered.
+     */
+    private int deliver() {
+        final long start = head;
+        long position = start;
+        while (position - start < batchSize) {
+            final int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            final GoertzelDtmfDetector detector = detectors[index];
+            detectors[index] = null;
+            try {
+                detector.deliver(generations[index], begins[index], tones[index], onsets[index], durations[index]);
+            } catch (RuntimeException e) {
+                logger.warn("DTMF observer failed", e);
+            }
+            position++;
+        }
+
+        final int count = (int) (position - start);
+        if (count > 0) {
+            this.head = position;
+            delivered.add(count);
+            batches.increment();
+        }
+        return count;
+    }
+
+    /**
+     * Creates daemon consumer threads, virtual ones if the runtime supports them.
+     */
+    static ThreadFactory defaultThreadFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> type = Class.forName("java.lang.Thread$Builder");
+            final Method name = type.getMethod("name", String.class);
+            final Method factory = type.getMethod("factory");
+            return (ThreadFactory) factory.invoke(name.invoke(builder, "dtmf-event-dispatcher"));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return runnable -> {
+                final Thread thread = new Thread(runnable, "dtmf-event-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    /**
+     * Gets the number of events the buffer holds.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of events published and not delivered yet.
+     */
+    public long getPending() {
+        return tail.get() - head;
+    }
+
+    /**
+     * Gets the number of events delivered by the consumer thread.
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * Gets the number of batches the consumer thread delivered.
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * Gets the number of events discarded because the buffer was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the number of events delivered on the media thread because the buffer was full.
+     */
+    public long getInlined() {
+        return inlined.sum();
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.restcomm.media.core.resource.dtmf.detector.DtmfEvent;
+
+/**
+ * Decides which DTMF tone, if any, is present in a window given the powers of the eight DTMF frequency bins.
+ * <p>
+ * Bin powers are laid out low group first: indexes 0-3 hold 697, 770, 852 and 941 Hz and indexes 4-7 hold 1209, 1336, 1477
+ * and 1633 Hz. Tones are identified as <code>row * 4 + column</code> so that callers can look up the tone name and a shared
+ * {@link DtmfEvent} without allocating.
+ * <p>
+ * Besides requiring one bin of each group to dominate the rest of its group, the classifier can validate a candidate in the
+ * way ITU-T Q.24 receivers do, using nothing but the bin powers and the window energy the engine already has:
+ * <ul>
+ * <li>the twist, that is the level difference between both tones, must stay within limits in either direction;</li>
+ * <li>both tones must stand above the noise floor of the leg;</li>
+ * <li>both tones together must hold a minimum share of the window energy.</li>
+ * </ul>
+ * Voice rarely passes these checks, since its energy spreads over many harmonics and falls with frequency.
+ */
+final class DtmfToneClassifier {
+
+    static final int BINS = 8;
+
+    static final int TONES = 16;
+
+    static final int[] FREQUENCIES = new int[]{697, 770, 852, 941, 1209, 1336, 1477, 1633};
+
+    private static final String[][] events = new String[][]{{"1", "2", "3", "A"}, {"4", "5", "6", "B"}, {"7", "8", "9", "C"}, {"*", "0", "#", "D"}};
+    private static final DtmfEvent[] dtmfEvents = new DtmfEvent[TONES];
+
+    static {
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                dtmfEvents[(i << 2) | j] = new DtmfEvent(events[i][j]);
+            }
+        }
+    }
+
+    // Checks a candidate can fail, in the order they are made
+    private static final String[] REJECTIONS = new String[]{"low group", "high group", "twist", "reverse twist", "noise floor",
+            "relative energy"};
+
+    private final double threshold;
+
+    // Validation limits as power ratios, zero when disabled
+    private final double maxTwist;
+    private final double maxReverseTwist;
+    private final double minSignalToNoise;
+    private final double minRelativeEnergy;
+
+    /**
+     * Creates a classifier that only checks the dominance of each group.
+     *
+     * @param toneVolume the minimum tone volume, in dBm0.
+     */
+    DtmfToneClassifier(int toneVolume) {
+        this(toneVolume, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates a classifier that validates candidates as configured by detector settings.
+     *
+     * @param settings the detector settings.
+     */
+    DtmfToneClassifier(GoertzelDtmfDetectorSettings settings) {
+        this(settings.getToneVolume(), settings.getMaxTwist(), settings.getMaxReverseTwist(), settings.getMinSignalToNoise(),
+                settings.getMinRelativeEnergy());
+    }
+
+    private DtmfToneClassifier(int toneVolume, int maxTwist, int maxReverseTwist, int minSignalToNoise, int minRelativeEnergy) {
+        this.threshold = Math.pow(Math.pow(10, toneVolume), 0.1) * Short.MAX_VALUE;
+        this.maxTwist = ratio(maxTwist);
+        this.maxReverseTwist = ratio(maxReverseTwist);
+        this.minSignalToNoise = ratio(minSignalToNoise);
+        this.minRelativeEnergy = (minRelativeEnergy > 0) ? minRelativeEnergy / 100.0 : 0;
+    }
+
+    private static double ratio(int decibels) {
+        return (decibels > 0) ? Math.pow(10, decibels / 10.0) : 0;
+    }
+
+    /**
+     * Gets the minimum peak amplitude a window must reach to be evaluated. The same value is the minimum ratio between the
+     * strongest bin of a group and every other bin of that group.
+     *
+     * @return the threshold.
+     */
+    double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Gets the name of a tone.
+     *
+     * @param tone the tone, as returned by {@link #getTone(double[])}.
+     * @return the tone name.
+     */
+    static String getName(int tone) {
+        return events[tone >> 2][tone & 3];
+    }
+
+    /**
+     * Looks up a tone by name.
+     *
+     * @param name the tone name.
+     * @return the tone as <code>row * 4 + column</code>, or -1 if the name is not a DTMF digit.
+     */
+    static int getTone(String name) {
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                if (events[i][j].equals(name)) {
+                    return (i << 2) | j;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the shared event that reports a tone.
+     *
+     * @param tone the tone, as returned by {@link #getTone(double[])}.
+     * @return the event.
+     */
+    static DtmfEvent getEvent(int tone) {
+        return dtmfEvents[tone];
+    }
+
+    /**
+     * Searches maximum value in the specified range of an array.
+     *
+     * @param data input data.
+     * @param from index of the first element of the range.
+     * @param to index past the last element of the range.
+     * @return the index of the maximum value in the range.
+     */
+    private int getMax(double data[], int from, int to) {
+        int idx = from;
+        double max = data[from];
+        for (int i = from + 1; i < to; i++) {
+            if (max < data[i]) {
+                max = data[i];
+                idx = i;
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Checks that the strongest bin of a frequency group dominates the other bins of the same group.
+     *
+     * @param data the bin powers.
+     * @param from index of the first bin of the group.
+     * @param to index past the last bin of the group.
+     * @return the index of the dominant bin, or -1 if there is none.
+     */
+    private int getDominant(double data[], int from, int to) {
+        int m = getMax(data, from, to);
+
+        for (int i = from; i < to; i++) {
+            if (m == i) {
+                continue;
+            }
+            double r = data[m] / (data[i] + 1E-15);
+            if (r < threshold) {
+                return -1;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Searches DTMF tone, checking only the dominance of each group.
+     *
+     * @param power the bin powers, low group first.
+     * @return the DTMF tone as <code>row * 4 + column</code>, or -1 if no tone is present.
+     */
+    int getTone(double power[]) {
+        return getTone(power, 0, 0);
+    }
+
+    /**
+     * Searches DTMF tone and validates it against the twist, noise floor and relative energy limits.
+     *
+     * @param power the bin powers, low group first.
+     * @param energy the window energy, in the scale of the bin powers. Zero skips the relative energy check.
+     * @param noiseFloor the noise floor of the leg, in the scale of the bin powers.
+     * @return the DTMF tone as <code>row * 4 + column</code>, or -1 if no tone is present.
+     */
+    int getTone(double power[], double energy, double noiseFloor) {
+        final int tone = classify(power, energy, noiseFloor);
+        return (tone < 0) ? -1 : tone;
+    }
+
+    /**
+     * Tells why a window holds no DTMF tone.
+     *
+     * @param power the bin powers, low group first.
+     * @param energy the window energy, in the scale of the bin powers. Zero skips the relative energy check.
+     * @param noiseFloor the noise floor of the leg, in the scale of the bin powers.
+     * @return the first check the window failed, or null if it holds a tone.
+     */
+    String getRejection(double power[], double energy, double noiseFloor) {
+        final int tone = classify(power, energy, noiseFloor);
+        return (tone < 0) ? REJECTIONS[-tone - 1] : null;
+    }
+
+    /**
+     * @return the DTMF tone as <code>row * 4 + column</code>, or minus the position of the failed check in
+     *         {@link #REJECTIONS}, counted from one.
+     */
+    private int classify(double power[], double energy, double noiseFloor) {
+        int fm = getDominant(power, 0, 4);
+        if (fm < 0) {
+            return -1;
+        }
+
+        int Fm = getDominant(power, 4, BINS);
+        if (Fm < 0) {
+            return -2;
+        }
+
+        final double low = power[fm];
+        final double high = power[Fm];
+        if (maxTwist > 0 && high > low * maxTwist) {
+            return -3;
+        }
+        if (maxReverseTwist > 0 && low > high * maxReverseTwist) {
+            return -4;
+        }
+        if (minSignalToNoise > 0 && Math.min(low, high) < noiseFloor * minSignalToNoise) {
+            return -5;
+        }
+        if (minRelativeEnergy > 0 && energy > 0 && low + high < energy * minRelativeEnergy) {
+            return -6;
+        }
+
+        return (fm << 2) | (Fm - 4);
+    }
+
+}
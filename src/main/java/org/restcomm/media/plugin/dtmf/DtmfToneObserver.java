@@ -0,0 +1,58 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+/**
+ * Receives the begin and the end of the tones tracked by a {@link GoertzelDtmfDetector}.
+ * <p>
+ * Positions are counted in samples, at the sample rate of the detector, from the first sample received after the detector
+ * was created or reset. They can be turned into RTP timestamps by adding the timestamp of that first sample, as needed to
+ * generate RFC 4733 telephone events. The edges of a tone are placed within the first and the last windows that carried it
+ * by the share of the window energy the tone holds, so their accuracy does not depend on the window length as long as the
+ * rest of those windows is quiet.
+ * <p>
+ * Observers are called from the thread that feeds the detector, so they must return quickly.
+ */
+public interface DtmfToneObserver {
+
+    /**
+     * Called once when a tone is recognised, at the same time the {@link org.restcomm.media.core.resource.dtmf.detector.DtmfEvent}
+     * is delivered.
+     *
+     * @param detector the detector that recognised the tone.
+     * @param tone the name of the tone.
+     * @param onset the position of the first sample of the tone.
+     */
+    void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset);
+
+    /**
+     * Called once when a tone that began is no longer present for longer than the tone interval, is replaced by another
+     * tone, or when the detector is flushed.
+     *
+     * @param detector the detector that recognised the tone.
+     * @param tone the name of the tone.
+     * @param onset the position of the first sample of the tone.
+     * @param duration the number of samples the tone lasted.
+     */
+    void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration);
+
+}
@@ -0,0 +1,120 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Block Goertzel engine that runs its recurrences in integer arithmetic.
+ * <p>
+ * Coefficients carry {@link GoertzelFilterBank#FIXED_POINT_BITS} fractional bits and states are kept in 32-bit integers,
+ * with the product of a coefficient and a state computed on 64 bits. States take half the memory of double ones and the
+ * recurrence avoids floating point conversions of the incoming samples. Windows long enough to overflow a state are fed
+ * samples scaled down by {@link GoertzelFilterBank#getFixedShift()} bits. Bin powers are computed in double precision once
+ * per window and scaled back, so they can be compared with the window energy and with the powers of
+ * {@link FloatingPointGoertzelEngine}.
+ */
+class FixedPointGoertzelEngine extends BlockGoertzelEngine {
+
+    private static final double COEFFICIENT_SCALE = 1.0 / (1 << GoertzelFilterBank.FIXED_POINT_BITS);
+    // Products are rounded to nearest, truncating them biases the recurrences enough to move the edges of a tone
+    private static final long ROUNDING = 1L << (GoertzelFilterBank.FIXED_POINT_BITS - 1);
+
+    private final int[] coefficients;
+    private final int shift;
+    private final double powerScale;
+
+    private final int[] s1;
+    private final int[] s2;
+
+    /**
+     * @param bank the shared coefficients of the frequencies to analyse.
+     */
+    FixedPointGoertzelEngine(GoertzelFilterBank bank) {
+        this(bank, null, null);
+    }
+
+    /**
+     * @param bank the shared coefficients of the frequencies to analyse.
+     * @param gate the pre-filter that windows must pass to be analysed. May be null to analyse every window.
+     * @param metrics the aggregate counters windows dropped by the pre-filter are reported to. May be null.
+     */
+    FixedPointGoertzelEngine(GoertzelFilterBank bank, SignalGate gate, GoertzelDtmfDetectorMetrics metrics) {
+        super(bank, gate, metrics);
+        this.coefficients = bank.getFixedCoefficients();
+        this.shift = bank.getFixedShift();
+        this.powerScale = (double) (1L << (2 * shift));
+        this.s1 = new int[bins];
+        this.s2 = new int[bins];
+    }
+
+    @Override
+    void recur(int sample) {
+        final long x = sample >> shift;
+        final int[] c = this.coefficients;
+        final int[] s1 = this.s1;
+        final int[] s2 = this.s2;
+        for (int i = 0; i < bins; i++) {
+            final int s = (int) (x + (((long) c[i] * s1[i] + ROUNDING) >> GoertzelFilterBank.FIXED_POINT_BITS) - s2[i]);
+            s2[i] = s1[i];
+            s1[i] = s;
+        }
+    }
+
+    @Override
+    void power(double[] power) {
+        for (int i = 0; i < bins; i++) {
+            final double a = s1[i];
+            final double b = s2[i];
+            power[i] = (a * a + b * b - coefficients[i] * COEFFICIENT_SCALE * a * b) * powerScale;
+        }
+    }
+
+    @Override
+    void clear() {
+        for (int i = 0; i < bins; i++) {
+            s1[i] = 0;
+            s2[i] = 0;
+        }
+    }
+
+    @Override
+    int getRecurrenceSize() {
+        return 8 * bins;
+    }
+
+    @Override
+    void saveRecurrences(ByteBuffer buffer) {
+        for (int i = 0; i < bins; i++) {
+            buffer.putInt(s1[i]).putInt(s2[i]);
+        }
+    }
+
+    @Override
+    void restoreRecurrences(ByteBuffer buffer) {
+        for (int i = 0; i < bins; i++) {
+            s1[i] = buffer.getInt();
+            s2[i] = buffer.getInt();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Block Goertzel engine that runs its recurrences in double precision.
+ */
+class FloatingPointGoertzelEngine extends BlockGoertzelEngine {
+
+    private final double[] coefficients;
+
+    private final double[] s1;
+    private final double[] s2;
+
+    /**
+     * @param bank the shared coefficients of the frequencies to analyse.
+     */
+    FloatingPointGoertzelEngine(GoertzelFilterBank bank) {
+        this(bank, null, null);
+    }
+
+    /**
+     * @param bank the shared coefficients of the frequencies to analyse.
+     * @param gate the pre-filter that windows must pass to be analysed. May be null to analyse every window.
+     * @param metrics the aggregate counters windows dropped by the pre-filter are reported to. May be null.
+     */
+    FloatingPointGoertzelEngine(GoertzelFilterBank bank, SignalGate gate, GoertzelDtmfDetectorMetrics metrics) {
+        super(bank, gate, metrics);
+        this.coefficients = bank.getCoefficients();
+        this.s1 = new double[bins];
+        this.s2 = new double[bins];
+    }
+
+    @Override
+    void recur(int sample) {
+        final double[] c = this.coefficients;
+        final double[] s1 = this.s1;
+        final double[] s2 = this.s2;
+        for (int i = 0; i < bins; i++) {
+            final double s = sample + c[i] * s1[i] - s2[i];
+            s2[i] = s1[i];
+            s1[i] = s;
+        }
+    }
+
+    @Override
+    void power(double[] power) {
+        for (int i = 0; i < bins; i++) {
+            power[i] = s1[i] * s1[i] + s2[i] * s2[i] - coefficients[i] * s1[i] * s2[i];
+        }
+    }
+
+    @Override
+    void clear() {
+        for (int i = 0; i < bins; i++) {
+            s1[i] = 0;
+            s2[i] = 0;
+        }
+    }
+
+    @Override
+    int getRecurrenceSize() {
+        return 16 * bins;
+    }
+
+    @Override
+    void saveRecurrences(ByteBuffer buffer) {
+        for (int i = 0; i < bins; i++) {
+            buffer.putDouble(s1[i]).putDouble(s2[i]);
+        }
+    }
+
+    @Override
+    void restoreRecurrences(ByteBuffer buffer) {
+        for (int i = 0; i < bins; i++) {
+            s1[i] = buffer.getDouble();
+            s2[i] = buffer.getDouble();
+        }
+    }
+
+}
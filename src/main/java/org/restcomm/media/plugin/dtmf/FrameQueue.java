@@ -0,0 +1,151 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer single-consumer queue of audio frames that hands the frames of a leg over to the shard thread that
+ * owns its detector.
+ * <p>
+ * Frames are copied into slots that are allocated the first time a frame of that size is seen and reused afterwards, so the
+ * steady state allocates nothing. Each side publishes its position with an ordered write and keeps a cached copy of the
+ * position of the other side, which it only refreshes when the queue looks full or empty, so the two threads rarely touch the
+ * same cache line.
+ * <p>
+ * Only one thread may offer frames at a time, which holds for a leg as the media scheduler never runs two tasks of a leg at
+ * once, and only the shard thread may drain them.
+ */
+final class FrameQueue {
+
+    private final int capacity;
+    private final int mask;
+
+    private final byte[][] frames;
+    private final int[] lengths;
+    private final long[] durations;
+
+    // Next position to write, published by the producer, and the last value of head it saw
+    private final AtomicLong tail;
+    private long headCache;
+
+    // Next position to read, published by the consumer, and the last value of tail it saw
+    private final AtomicLong head;
+    private long tailCache;
+
+    /**
+     * @param capacity the number of frames the queue holds, rounded up to a power of two.
+     */
+    FrameQueue(int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.frames = new byte[size][];
+        this.lengths = new int[size];
+        this.durations = new long[size];
+        this.tail = new AtomicLong();
+        this.head = new AtomicLong();
+    }
+
+    /**
+     * Copies a frame into the queue. Called by the producer only.
+     *
+     * @return false if the queue is full.
+     */
+    boolean offer(byte[] data, int offset, int length, long duration) {
+        final long position = tail.get();
+        if (position - headCache >= capacity) {
+            this.headCache = head.get();
+            if (position - headCache >= capacity) {
+                return false;
+            }
+        }
+
+        final int index = (int) position & mask;
+        byte[] frame = frames[index];
+        if (frame == null || frame.length < length) {
+            frame = new byte[length];
+            frames[index] = frame;
+        }
+        System.arraycopy(data, offset, frame, 0, length);
+        lengths[index] = length;
+        durations[index] = duration;
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Runs detection over the frames in the queue and frees their slots. Called by the consumer only.
+     *
+     * @param detector the detector of the leg.
+     * @param encoding the encoding of the frames.
+     * @param max the largest number of frames to process.
+     * @return the number of frames processed.
+     */
+    int drain(GoertzelDtmfDetector detector, SampleEncoding encoding, int max) {
+        final long start = head.get();
+        if (start == tailCache) {
+            this.tailCache = tail.get();
+            if (start == tailCache) {
+                return 0;
+            }
+        }
+
+        final long end = Math.min(tailCache, start + max);
+        for (long position = start; position < end; position++) {
+            final int index = (int) position & mask;
+            detector.detect(frames[index], 0, lengths[index], encoding, durations[index]);
+        }
+        head.lazySet(end);
+        return (int) (end - start);
+    }
+
+    /**
+     * Discards the frames in the queue. Called by the consumer only.
+     *
+     * @return the number of frames discarded.
+     */
+    int clear() {
+        final long start = head.get();
+        this.tailCache = tail.get();
+        head.lazySet(tailCache);
+        return (int) (tailCache - start);
+    }
+
+    /**
+     * @return whether the queue holds no frame, as seen from any thread.
+     */
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+}
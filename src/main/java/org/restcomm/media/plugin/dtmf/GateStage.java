@@ -0,0 +1,42 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+/**
+ * Stages of the cheap pre-filter that runs ahead of the Goertzel analysis.
+ * <p>
+ * Stages are evaluated in order over short blocks of samples, and a window is only analysed if some block passed every stage.
+ * A window that is gated out is attributed to the last stage it reached.
+ */
+public enum GateStage {
+
+    /**
+     * The mean energy of the block is too low to carry a tone at the configured volume.
+     */
+    ENERGY,
+
+    /**
+     * The zero-crossing rate of the block is outside the range a pair of DTMF frequencies can produce.
+     */
+    ZERO_CROSSING
+
+}
@@ -21,11 +21,15 @@
 
 package org.restcomm.media.plugin.dtmf;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-import org.restcomm.media.core.component.audio.GoertzelFilter;
 import org.restcomm.media.core.resource.dtmf.detector.AbstractDtmfDetector;
-import org.restcomm.media.core.resource.dtmf.detector.DtmfEvent;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implements inband DTMF detector.
@@ -37,6 +41,54 @@ import org.restcomm.media.core.resource.dtmf.detector.DtmfEvent;
  * Though Inband DTMF detection may work for other codecs like SPEEX, GSM, G729 as DtmfDetector is using DSP in front of
  * InbandDetector there is no guarantee that it will always work. In future MMS may not have DSP in front of InbandDetector and
  * hence Inband detection for codecs like SPEEX, GSM, G729 may completely stop
+ * <p>
+ * The eight Goertzel recurrences (four low group and four high group frequencies) are updated together as each sample is
+ * decoded, so the detector produces no garbage while processing frames. By default the detector keeps no window buffer and
+ * evaluates consecutive windows; a hop size shorter than the tone duration switches to a sliding window instead.
+ * <p>
+ * Consecutive windows are screened by a cheap pre-filter on energy and zero-crossing rate, so silence and most speech do not
+ * pay for the Goertzel recurrences. The number of windows analysed and dropped by each stage is available from
+ * {@link #getAnalysedWindows()} and {@link #getRejectedWindows(GateStage)}.
+ * <p>
+ * Candidates are validated against twist limits, the share of the window energy held by the tones, and a noise floor the
+ * detector tracks for its leg from the bin powers of the windows that hold no tone (see {@link GoertzelDtmfDetectorSettings}).
+ * <p>
+ * Besides linear PCM the detector accepts raw G.711 A-law and mu-law payloads (see {@link SampleEncoding}), which are expanded
+ * in the same loop that feeds the recurrences.
+ * <p>
+ * Audio is 8 kHz by default but any sample rate can be configured. Wideband legs can be decimated by an integer factor before
+ * the analysis, so that they cost about as much as narrowband ones.
+ * <p>
+ * Non-overlapping windows can also run as a cascade (see {@link GoertzelDtmfDetectorSettings#getCascadeDuration()}): short
+ * windows screen the audio for candidates, and full length windows only run while a candidate is present, evaluated at the
+ * end of every short window, so tones are confirmed about as soon as with overlapping windows.
+ * <p>
+ * Each leg is tracked by a state machine (see {@link ToneState}) that runs once per window and keeps processing audio
+ * while a tone lasts. Observers receive a single {@link org.restcomm.media.core.resource.dtmf.detector.DtmfEvent} per
+ * key press however long it is held, and {@link DtmfToneObserver observers} registered through
+ * {@link #observeTones(DtmfToneObserver)} are also told when the tone begins and ends, with positions counted in samples.
+ * <p>
+ * Observers are called on the thread that runs detection, unless the detector was created with a
+ * {@link DtmfEventDispatcher}, which delivers events on its own thread so that slow observers do not delay audio processing.
+ * <p>
+ * Other {@link ToneFamily tone families}, such as fax, call progress or MF signalling tones, can be recognised in the same
+ * pass: their frequencies are added to the filter bank and each family applies its own rules to the bin powers of every
+ * window. Their tones are reported through the same events and observers as DTMF digits, under the names listed by the
+ * family.
+ * <p>
+ * Detectors are created without analysis state. The engine is allocated by the first frame that reaches the minimum tone
+ * volume and released again once the leg stays quieter than that for {@link GoertzelDtmfDetectorSettings#getHibernateAfter()}
+ * milliseconds, so idle legs only pay for a peak scan of each frame. Windows keep the alignment they would have had if the
+ * engine had been running all along, so hibernation does not move tone edges.
+ * <p>
+ * Instead of logging, detectors describe what they see through Java Flight Recorder events (analysed windows with their
+ * bin powers, rejected candidates with the failed check, confirmed and ended tones, and state changes), which cost nothing
+ * while no recording enables them. Legs can be sampled through {@link GoertzelDtmfDetectorSettings#getEventSampling()} or
+ * picked one by one with {@link #setTraced(boolean)}.
+ * <p>
+ * Every detector keeps its own counters of frames, windows, detected tones and rejected candidates. Detectors created with
+ * a shared {@link GoertzelDtmfDetectorMetrics} also report to it, so all the detectors of a provider can be monitored at
+ * once.
  *
  * @author yulian oifa
  * @author amit bhayani
@@ -44,192 +96,1256 @@ import org.restcomm.media.core.resource.dtmf.detector.DtmfEvent;
  */
 public class GoertzelDtmfDetector extends AbstractDtmfDetector {
 
-    private static final Logger logger = LogManager.getLogger(GoertzelDtmfDetector.class);
+    // Source of the identifiers legs are reported under in Flight Recorder events
+    private static final AtomicLong legs = new AtomicLong();
 
-    private final static String[][] events = new String[][]{{"1", "2", "3", "A"}, {"4", "5", "6", "B"}, {"7", "8", "9", "C"}, {"*", "0", "#", "D"}};
+    // Whether the runtime provides the Flight Recorder API
+    private static final boolean FLIGHT_RECORDER = hasFlightRecorder();
 
-    private final static int[] lowFreq = new int[]{697, 770, 852, 941};
-    private final static int[] highFreq = new int[]{1209, 1336, 1477, 1633};
+    // Weight of a new window in the noise floor estimate, when it is below and above the current estimate
+    private static final double NOISE_FLOOR_FALL = 0.5;
+    private static final double NOISE_FLOOR_RISE = 0.125;
 
-    private final GoertzelFilter[] lowFreqFilters = new GoertzelFilter[4];
-    private final GoertzelFilter[] highFreqFilters = new GoertzelFilter[4];
+    private static final DtmfToneObserver[] NO_OBSERVERS = new DtmfToneObserver[0];
 
-    private final double threshold;
+    // Layout of snapshots, to be incremented whenever the state they hold changes
+    private static final byte SNAPSHOT_VERSION = 2;
+
+    // Settings that shape the runtime state, in the order snapshots hold them
+    private static final String[] CONFIGURATION = {"sample rate", "window length", "decimation", "hop", "fixed point",
+            "gating", "cascade window", "cascade backdating", "tone families"};
 
-    private int offset;
+    // Version, configuration and flags, then samples, last loud position, state, tone, six tone positions and noise floor
+    private static final int SNAPSHOT_HEADER = 2 + 4 * CONFIGURATION.length;
+    private static final int SNAPSHOT_TRACKING = 74;
+    private static final int SNAPSHOT_FAMILY = 18;
+
+    private final DtmfToneClassifier classifier;
+    private final double threshold;
 
     private final int toneVolume;
     private final int toneDuration;
     private final int toneInterval;
+    private final int hopSize;
+    private final SampleEncoding encoding;
+    private final int sampleRate;
+
+    // Window length and distance between the ends of two consecutive windows, in received samples (before decimation)
     private final int N;
+    private final int windowHop;
+
+    // Gap after which a tone that is no longer present is considered to be over, in received samples
+    private final long releaseGap;
+
+    // Analysis configuration, the engine is only allocated while the leg carries audio
+    private final GoertzelFilterBank bank;
+    private final SignalGate gate;
+    private final int hop;
+    private final int decimation;
+    private final boolean fixedPoint;
+
+    // Coefficients of the short windows that screen the audio for candidates, null when the cascade is disabled
+    private final GoertzelFilterBank screenBank;
+    private final boolean backdating;
+
+    // Run of quiet audio after which the engine is released, in received samples. Zero keeps the engine once allocated.
+    private final long hibernationGap;
+
+    // Settings that shape the runtime state, so snapshots are only restored by compatible detectors, and the maximum size of
+    // a snapshot, computed when first asked for
+    private final int[] configuration;
+    private int snapshotSize;
+
+    // Tone families recognised besides DTMF, and how long their tones must last to be reported, in received samples
+    private final ToneFamilyClassifier[] families;
+    private final long[] familyMinDuration;
 
-    private final double p[];
-    private final double P[];
+    private final GoertzelDtmfDetectorMetrics metrics;
+    private final DtmfEventDispatcher dispatcher;
 
-    private final double[] signal;
-    private double maxAmpl;
-    private String lastTone;
-    private long elapsedTime;
-    private volatile boolean waiting;
+    // Analysis state, null while the detector hibernates
+    private GoertzelEngine engine;
+    // Handed back to the metrics when the analysis state is released
+    private GoertzelDtmfDetectorMetrics.Activation activation;
 
+    // Bin powers of the window being evaluated, allocated along with the engine. Indexes 0-3 hold the low group, 4-7 the
+    // high group.
+    private double[] power;
+
+    // Windows dropped by the pre-filter of engines that were released
+    private final long[] releasedRejections;
+
+    // Position right after the last frame that reached the minimum tone volume
+    private long lastLoud;
+
+    // Tone each family is tracking (index in the family, -1 if none), its first sample, the end of the last window that carried
+    // it and whether its begin was reported
+    private final int[] familyTone;
+    private final long[] familyOnset;
+    private final long[] familyEnd;
+    private final boolean[] familyReported;
+
+    // Running estimate of the bin power of windows that hold no tone, leaving out the strongest bin of each group
+    private double noiseFloor;
+
+    private volatile DtmfToneObserver[] toneObservers;
+
+    // Tone being tracked, positions of its first sample and of the sample that follows it, and end of the last window that
+    // carried it. Like the rest of the runtime state, written by the thread that runs detection only.
+    private ToneState state;
+    private int tone;
+    private long toneOnset;
+    private long toneEnd;
+    private long toneWindowEnd;
+
+    private long analysedWindows;
+    private long processedFrames;
+    private long detectedTones;
+    private long rejectedCandidates;
+    private long lastLatency;
+
+    // Start of the current run of windows loud enough to be classified, and end of the last analysed window
+    private long candidateStart;
+    private long lastWindowEnd;
+
+    // Samples received since creation or reset, and position right after the window that carried the last tone
+    private long samples;
+    private long toneOffset;
+
+    // Incremented on reset, so events of the previous leg that are still queued in the dispatcher are discarded. The consumer
+    // of the dispatcher sees the increment through the slots published after it, and a migrating leg is only reset once its
+    // events are delivered.
+    private int generation;
+
+    // One leg out of this many records Flight Recorder events, 0 for none; the identifier of the current leg and whether it
+    // records events
+    private final int eventSampling;
+    private long leg;
+    private boolean traced;
+
+    /**
+     * Creates a detector that evaluates consecutive, non-overlapping windows.
+     *
+     * @param toneVolume the minimum tone volume, in dBm0.
+     * @param toneDuration the length of the analysis window, in milliseconds.
+     * @param toneInterval the shortest pause that separates two presses of the same key, in milliseconds.
+     */
     public GoertzelDtmfDetector(int toneVolume, int toneDuration, int toneInterval) {
+        this(toneVolume, toneDuration, toneInterval, toneDuration);
+    }
+
+    /**
+     * Creates a detector that evaluates a window every <code>hopSize</code> milliseconds.
+     * <p>
+     * When the hop size is shorter than the tone duration consecutive windows overlap, which shortens the time it takes to
+     * report a tone at the same per sample cost.
+     *
+     * @param toneVolume the minimum tone volume, in dBm0.
+     * @param toneDuration the length of the analysis window, in milliseconds.
+     * @param toneInterval the shortest pause that separates two presses of the same key, in milliseconds.
+     * @param hopSize the time between two consecutive window evaluations, in milliseconds. Values that are not positive or
+     *        not shorter than the tone duration disable overlapping.
+     */
+    public GoertzelDtmfDetector(int toneVolume, int toneDuration, int toneInterval, int hopSize) {
+        this(new GoertzelDtmfDetectorSettings().setToneVolume(toneVolume).setToneDuration(toneDuration)
+                .setToneInterval(toneInterval).setHopSize(hopSize));
+    }
+
+    /**
+     * Creates a detector out of a complete set of settings.
+     *
+     * @param settings the detector settings.
+     */
+    public GoertzelDtmfDetector(GoertzelDtmfDetectorSettings settings) {
+        this(settings, null);
+    }
+
+    /**
+     * Creates a detector that reports to aggregate metrics.
+     *
+     * @param settings the detector settings.
+     * @param metrics the aggregate metrics shared with other detectors. May be null.
+     */
+    public GoertzelDtmfDetector(GoertzelDtmfDetectorSettings settings, GoertzelDtmfDetectorMetrics metrics) {
+        this(settings, metrics, null);
+    }
+
+    /**
+     * Creates a detector that reports to aggregate metrics and hands its events to a dispatcher.
+     *
+     * @param settings the detector settings.
+     * @param metrics the aggregate metrics shared with other detectors. May be null.
+     * @param dispatcher the dispatcher that delivers events to observers. May be null to deliver them on the thread that runs
+     *        detection.
+     */
+    public GoertzelDtmfDetector(GoertzelDtmfDetectorSettings settings, GoertzelDtmfDetectorMetrics metrics,
+            DtmfEventDispatcher dispatcher) {
+        this(settings, new DtmfToneClassifier(settings), GoertzelFilterBank.tones(settings), metrics, dispatcher);
+    }
+
+    /**
+     * Creates a detector that shares its immutable classifier and filter bank with other detectors.
+     */
+    GoertzelDtmfDetector(GoertzelDtmfDetectorSettings settings, DtmfToneClassifier classifier, GoertzelFilterBank bank,
+            GoertzelDtmfDetectorMetrics metrics, DtmfEventDispatcher dispatcher) {
         // Detector Configuration
-        this.threshold = Math.pow(Math.pow(10, toneVolume), 0.1) * Short.MAX_VALUE;
-        this.toneVolume = toneVolume;
-        this.toneDuration = toneDuration;
-        this.toneInterval = toneInterval;
-        double scale = toneDuration / 1000.0;
-        this.N = 8 * toneDuration;
-        this.signal = new double[N];
-        for (int i = 0; i < 4; i++) {
-            this.lowFreqFilters[i] = new GoertzelFilter(lowFreq[i], N, scale);
-            this.highFreqFilters[i] = new GoertzelFilter(highFreq[i], N, scale);
+        this.classifier = classifier;
+        this.threshold = classifier.getThreshold();
+        this.toneVolume = settings.getToneVolume();
+        this.toneDuration = settings.getToneDuration();
+        this.toneInterval = settings.getToneInterval();
+        this.hopSize = (settings.getHopSize() > 0 && settings.getHopSize() < toneDuration) ? settings.getHopSize() : toneDuration;
+        this.encoding = settings.getEncoding();
+        this.sampleRate = settings.getSampleRate();
+        this.N = bank.getN() * settings.getDecimation();
+
+        this.releaseGap = Math.max(1, (long) sampleRate * toneInterval / 1000);
+
+        this.bank = bank;
+        this.decimation = settings.getDecimation();
+        this.fixedPoint = settings.isFixedPoint();
+        if (this.hopSize < toneDuration) {
+            this.hop = (int) ((long) bank.getSampleRate() * this.hopSize / 1000);
+            this.gate = null;
+            this.windowHop = hop * decimation;
+        } else {
+            this.hop = 0;
+            this.gate = settings.isGating() ? new SignalGate(threshold, bank) : null;
+            this.windowHop = N;
         }
+        final int screenLength = (int) ((long) bank.getSampleRate() * settings.getCascadeDuration() / 1000);
+        if (hop == 0 && screenLength > 0 && 2 * screenLength <= bank.getN()) {
+            this.screenBank = settings.getToneFamilies().isEmpty() ? GoertzelFilterBank.dtmf(bank.getSampleRate(), screenLength)
+                    : GoertzelFilterBank.tones(bank.getSampleRate(), screenLength, settings.getToneFamilies());
+        } else {
+            this.screenBank = null;
+        }
+        this.backdating = settings.isCascadeBackdating();
+        this.hibernationGap = Math.max(0, (long) sampleRate * settings.getHibernateAfter() / 1000);
+        this.eventSampling = settings.getEventSampling();
+        this.families = new ToneFamilyClassifier[settings.getToneFamilies().size()];
+        this.familyMinDuration = new long[families.length];
+        int f = 0;
+        for (ToneFamily family : settings.getToneFamilies()) {
+            this.families[f] = new ToneFamilyClassifier(family, bank);
+            this.familyMinDuration[f] = (long) sampleRate * family.getMinDuration() / 1000;
+            f++;
+        }
+        this.metrics = metrics;
+        this.dispatcher = dispatcher;
+        int familyMask = 0;
+        for (ToneFamily family : settings.getToneFamilies()) {
+            familyMask |= 1 << family.ordinal();
+        }
+        this.configuration = new int[]{sampleRate, N, decimation, hop, fixedPoint ? 1 : 0, (gate != null) ? 1 : 0,
+                (screenBank != null) ? screenBank.getN() : 0, backdating ? 1 : 0, familyMask};
 
         // Runtime Detection
-        this.p = new double[4];
-        this.P = new double[4];
-        this.offset = 0;
-        this.lastTone = "";
-        this.elapsedTime = 0;
-        this.waiting = false;
+        this.releasedRejections = new long[GateStage.values().length];
+        this.toneObservers = NO_OBSERVERS;
+        this.state = ToneState.IDLE;
+        this.tone = -1;
+        this.toneOffset = -1;
+        this.candidateStart = -1;
+        this.familyTone = new int[families.length];
+        this.familyOnset = new long[families.length];
+        this.familyEnd = new long[families.length];
+        this.familyReported = new boolean[families.length];
+        Arrays.fill(familyTone, -1);
+        startLeg();
     }
 
     public GoertzelDtmfDetector() {
-        this(-35, 80, 20);
+        this(new GoertzelDtmfDetectorSettings());
     }
 
+    /**
+     * Runs detection over a frame encoded as configured by {@link GoertzelDtmfDetectorSettings#getEncoding()}.
+     *
+     * @param data the frame.
+     * @param duration the duration of the frame, in milliseconds.
+     */
     @Override
     public void detect(byte[] data, long duration) {
-        // If Detector is in WAITING state, then drop packets
-        // until a period of data (based on frame duration accumulation) elapses.
-        if (waiting) {
-            this.elapsedTime += duration;
-            this.waiting = (this.elapsedTime < this.toneInterval);
+        detect(data, 0, data.length, encoding, duration);
+    }
 
-            if (waiting) {
-                return;
-            } else {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Waiting: " + waiting + " [last tone=" + this.lastTone + ", elapsed time=" + elapsedTime + "]");
+    /**
+     * Runs detection over a range of bytes that hold audio in the specified encoding.
+     * <p>
+     * G.711 code words are expanded through a lookup table while they are fed to the Goertzel recurrences, so raw A-law or
+     * mu-law RTP payloads can be analysed without decoding them first.
+     *
+     * @param data the audio.
+     * @param offset the index of the first byte.
+     * @param length the number of bytes.
+     * @param encoding the encoding of the audio.
+     * @param duration the duration of the audio, in milliseconds.
+     */
+    public void detect(byte[] data, int offset, int length, SampleEncoding encoding, long duration) {
+        final short[] table = encoding.getExpansionTable();
+        final long start = this.samples;
+        this.samples += (table == null) ? (length >> 1) : length;
+        countFrame();
+
+        int peak = 0;
+        if (table == null) {
+            // Trailing odd byte (if any) does not hold a complete sample
+            final int M = offset + (length & ~1);
+            if (engine == null) {
+                int loudest = 0;
+                for (int k = offset; k < M; k += 2) {
+                    loudest = Math.max(loudest, Math.abs((data[k] & 0xff) | (data[k + 1] << 8)));
+                }
+                if (!activate(loudest, start)) {
+                    return;
                 }
             }
-        }
+            final GoertzelEngine engine = this.engine;
+            for (int k = offset; k < M; k += 2) {
+                final int sample = (data[k] & 0xff) | (data[k + 1] << 8);
+                peak = Math.max(peak, Math.abs(sample));
 
-        int M = data.length;
-        int k = 0;
-        while (k < M) {
-            while (offset < N && k < M - 1) {
-                double s = ((data[k++] & 0xff) | (data[k++] << 8));
-                double sa = Math.abs(s);
-                if (sa > maxAmpl) {
-                    maxAmpl = sa;
+                // if dtmf window is complete check signal
+                if (engine.process(sample)) {
+                    analyse(start + ((k - offset) >> 1) + 1);
+                }
+            }
+        } else {
+            final int M = offset + length;
+            if (engine == null) {
+                int loudest = 0;
+                for (int k = offset; k < M; k++) {
+                    loudest = Math.max(loudest, Math.abs(table[data[k] & 0xff]));
+                }
+                if (!activate(loudest, start)) {
+                    return;
                 }
-                signal[offset++] = s;
             }
+            final GoertzelEngine engine = this.engine;
+            for (int k = offset; k < M; k++) {
+                final int sample = table[data[k] & 0xff];
+                peak = Math.max(peak, Math.abs(sample));
+                if (engine.process(sample)) {
+                    analyse(start + (k - offset) + 1);
+                }
+            }
+        }
+        checkRelease();
+        settle(peak);
+    }
+
+    /**
+     * Runs detection over a range of linear PCM samples.
+     *
+     * @param data the samples.
+     * @param offset the index of the first sample.
+     * @param length the number of samples.
+     * @param duration the duration of the samples, in milliseconds.
+     */
+    public void detect(short[] data, int offset, int length, long duration) {
+        final long start = this.samples - offset;
+        this.samples += length;
+        countFrame();
+
+        final int end = offset + length;
+        if (engine == null) {
+            int loudest = 0;
+            for (int k = offset; k < end; k++) {
+                loudest = Math.max(loudest, Math.abs(data[k]));
+            }
+            if (!activate(loudest, start + offset)) {
+                return;
+            }
+        }
+        final GoertzelEngine engine = this.engine;
+        int peak = 0;
+        for (int k = offset; k < end; k++) {
+            final int sample = data[k];
+            peak = Math.max(peak, Math.abs(sample));
+            if (engine.process(sample)) {
+                analyse(start + k + 1);
+            }
+        }
+        checkRelease();
+        settle(peak);
+    }
+
+    /**
+     * Runs detection over the linear PCM samples between the position and the limit of a buffer.
+     * <p>
+     * Samples are read in place, so heap, direct and read-only buffers are all supported without copying. The position of the
+     * buffer is not modified. A view made by {@link ByteBuffer#asShortBuffer()} decodes samples in the byte order its
+     * {@link ByteBuffer} had when the view was made.
+     *
+     * @param data the samples.
+     * @param duration the duration of the samples, in milliseconds.
+     */
+    public void detect(ShortBuffer data, long duration) {
+        final long start = this.samples - data.position();
+        this.samples += data.remaining();
+        countFrame();
+
+        final int end = data.limit();
+        if (engine == null) {
+            int loudest = 0;
+            for (int k = data.position(); k < end; k++) {
+                loudest = Math.max(loudest, Math.abs(data.get(k)));
+            }
+            if (!activate(loudest, start + data.position())) {
+                return;
+            }
+        }
+        final GoertzelEngine engine = this.engine;
+        int peak = 0;
+        for (int k = data.position(); k < end; k++) {
+            final int sample = data.get(k);
+            peak = Math.max(peak, Math.abs(sample));
+            if (engine.process(sample)) {
+                analyse(start + k + 1);
+            }
+        }
+        checkRelease();
+        settle(peak);
+    }
 
-            // if dtmf buffer full check signal
-            if (offset == N) {
-                offset = 0;
+    /**
+     * Runs detection over the 16-bit linear PCM samples between the position and the limit of a buffer.
+     * <p>
+     * Samples are decoded in the byte order of the buffer, not in the little-endian order of {@link SampleEncoding#LINEAR}
+     * used by {@link #detect(byte[], long)}. {@link ByteBuffer#allocate(int)}, {@link ByteBuffer#allocateDirect(int)} and
+     * {@link ByteBuffer#wrap(byte[])} all make big-endian buffers, so a buffer holding little-endian audio, such as a linear
+     * RTP payload, must be set to {@link ByteOrder#LITTLE_ENDIAN} first. Samples are read in place, so heap, direct and
+     * read-only buffers are all supported without copying. The position of the buffer is not modified.
+     *
+     * @param data the samples.
+     * @param duration the duration of the samples, in milliseconds.
+     */
+    public void detect(ByteBuffer data, long duration) {
+        final int position = data.position();
+        final long start = this.samples;
+        this.samples += data.remaining() >> 1;
+        countFrame();
 
-                // and if max amplitude of signal is greater threshold
-                // try to detect tone.
-                if (maxAmpl >= threshold) {
-                    maxAmpl = 0;
+        // Trailing odd byte (if any) does not hold a complete sample
+        final int end = position + ((data.limit() - position) & ~1);
+        if (engine == null) {
+            int loudest = 0;
+            for (int k = position; k < end; k += 2) {
+                loudest = Math.max(loudest, Math.abs(data.getShort(k)));
+            }
+            if (!activate(loudest, start)) {
+                return;
+            }
+        }
+        final GoertzelEngine engine = this.engine;
+        int peak = 0;
+        for (int k = position; k < end; k += 2) {
+            final int sample = data.getShort(k);
+            peak = Math.max(peak, Math.abs(sample));
+            if (engine.process(sample)) {
+                analyse(start + ((k - position) >> 1) + 1);
+            }
+        }
+        checkRelease();
+        settle(peak);
+    }
 
-                    getPower(lowFreqFilters, signal, 0, p);
-                    getPower(highFreqFilters, signal, 0, P);
+    private void countFrame() {
+        this.processedFrames++;
+        if (metrics != null) {
+            metrics.frameProcessed();
+        }
+    }
 
-                    String tone = getTone(p, P);
+    /**
+     * Allocates the analysis state of a hibernating detector when a frame reaches the minimum tone volume.
+     *
+     * @param peak the peak absolute amplitude of the frame that has just been received.
+     * @param start the position of the first sample of the frame.
+     * @return whether the frame must be analysed.
+     */
+    private boolean activate(int peak, long start) {
+        if (peak < threshold) {
+            return false;
+        }
+        wake(start);
+        return true;
+    }
 
-                    if (tone != null) {
-                        // Keep reference to latest identified tone
-                        this.elapsedTime = 0;
-                        this.lastTone = tone;
-                        this.waiting = true;
+    /**
+     * Releases the analysis state once the audio stayed below the minimum tone volume for long enough and no tone is being
+     * tracked. The peak is tracked by the loop that feeds the engine, so active legs do not scan their frames twice.
+     *
+     * @param peak the peak absolute amplitude of the frame that has just been analysed.
+     */
+    private void settle(int peak) {
+        if (peak >= threshold) {
+            this.lastLoud = samples;
+        } else if (hibernationGap > 0 && samples - lastLoud >= hibernationGap && state != ToneState.CONFIRMED
+                && state != ToneState.RELEASE && !trackingFamilies()) {
+            hibernate();
+        }
+    }
 
-                        if (logger.isTraceEnabled()) {
-                            logger.trace("Waiting: " + waiting + " [last tone=" + this.lastTone + ", elapsed time=" + elapsedTime + "]");
-                        }
+    /**
+     * Allocates the analysis state.
+     *
+     * @param start the position of the first sample that will be fed to the engine.
+     */
+    private void wake(long start) {
+        final GoertzelEngine engine = createEngine();
 
-                        // Inform liteners about DTMF tone detection
-                        notify(new DtmfEvent(tone));
-                    }
-                }
+        // Zeros stand for the quiet audio that was skipped, so windows keep the boundaries they would have had
+        final long skipped;
+        if (screenBank != null) {
+            skipped = start % ((long) screenBank.getN() * decimation);
+        } else if (hop == 0) {
+            skipped = start % N;
+        } else {
+            // Sliding windows are only evaluated once they are full, so they need a whole window of history
+            skipped = (start < N) ? start : N + (start - N) % windowHop;
+        }
+        for (long i = 0; i < skipped; i++) {
+            if (engine.process(0)) {
+                engine.nextWindow();
             }
         }
+
+        this.engine = engine;
+        this.power = new double[bank.getBins()];
+        if (metrics != null) {
+            this.activation = metrics.engineActivated(this);
+        }
     }
 
-    private void getPower(GoertzelFilter[] filters, double[] data, int offset, double[] power) {
-        for (int i = 0; i < 4; i++) {
-            power[i] = filters[i].getPower(data, offset);
+    private GoertzelEngine createEngine() {
+        final GoertzelEngine analysis;
+        if (hop > 0) {
+            analysis = new SlidingGoertzelEngine(bank, hop);
+        } else if (screenBank != null) {
+            // The short windows are gated, and only candidates reach the full length analysis
+            analysis = new CascadeGoertzelEngine(new FloatingPointGoertzelEngine(screenBank, gate, metrics), screenBank, bank,
+                    threshold, backdating);
+        } else if (fixedPoint) {
+            analysis = new FixedPointGoertzelEngine(bank, gate, metrics);
+        } else {
+            analysis = new FloatingPointGoertzelEngine(bank, gate, metrics);
         }
+        return (decimation > 1) ? new DecimatingGoertzelEngine(analysis, decimation) : analysis;
     }
 
     /**
-     * Searches maximum value in the specified array.
+     * Releases the analysis state. The next frame that reaches the minimum tone volume starts a new window.
+     */
+    private void hibernate() {
+        if (engine == null) {
+            return;
+        }
+        for (GateStage stage : GateStage.values()) {
+            releasedRejections[stage.ordinal()] += engine.getRejectedWindows(stage);
+        }
+        this.engine = null;
+        this.power = null;
+        changeState(ToneState.IDLE, samples);
+        this.candidateStart = -1;
+        Arrays.fill(familyTone, -1);
+        if (metrics != null) {
+            metrics.engineReleased(activation);
+            this.activation = null;
+        }
+    }
+
+    /**
+     * Registers an observer of the begin and end of tones.
      *
-     * @param data input data.
-     * @return the index of the maximum value in the data array.
+     * @param observer the observer.
+     */
+    public synchronized void observeTones(DtmfToneObserver observer) {
+        final DtmfToneObserver[] observers = Arrays.copyOf(toneObservers, toneObservers.length + 1);
+        observers[observers.length - 1] = observer;
+        this.toneObservers = observers;
+    }
+
+    /**
+     * Unregisters an observer of the begin and end of tones.
+     *
+     * @param observer the observer.
+     */
+    public synchronized void forgetTones(DtmfToneObserver observer) {
+        final DtmfToneObserver[] observers = toneObservers;
+        for (int i = 0; i < observers.length; i++) {
+            if (observers[i] == observer) {
+                final DtmfToneObserver[] remaining = new DtmfToneObserver[observers.length - 1];
+                System.arraycopy(observers, 0, remaining, 0, i);
+                System.arraycopy(observers, i + 1, remaining, i, remaining.length - i);
+                this.toneObservers = remaining;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reports the end of the tone being tracked, if any, without waiting for the tone interval to elapse. Meant to be called
+     * when the leg stops sending audio.
      */
-    private int getMax(double data[]) {
-        int idx = 0;
-        double max = data[0];
-        for (int i = 1; i < data.length; i++) {
-            if (max < data[i]) {
-                max = data[i];
-                idx = i;
+    public void flush() {
+        if (state == ToneState.CONFIRMED || state == ToneState.RELEASE) {
+            end(samples);
+        }
+        for (int f = 0; f < families.length; f++) {
+            if (familyTone[f] >= 0) {
+                endFamilyTone(f);
             }
         }
-        return idx;
     }
 
     /**
-     * Searches DTMF tone.
+     * Clears all runtime detection state so the detector can be reused by another leg. Observers are not affected.
+     */
+    public void reset() {
+        hibernate();
+        this.generation++;
+        startLeg();
+        this.state = ToneState.IDLE;
+        this.tone = -1;
+        this.toneEnd = 0;
+        this.samples = 0;
+        this.toneOffset = -1;
+        this.candidateStart = -1;
+        this.lastWindowEnd = 0;
+        this.lastLoud = 0;
+        this.noiseFloor = 0;
+    }
+
+    /**
+     * Waits until the events the detector reported so far reach its observers, when they are delivered by a
+     * {@link DtmfEventDispatcher}. Events still queued when the detector is {@link #reset() reset} are discarded, so a
+     * detector whose leg moves to another node must only be reset once this returns true: the snapshot of the leg counts
+     * those tones as reported, and the other node will not report them again.
+     * <p>
+     * Must not be called from an observer of the detector.
      *
-     * @param f the low frequency array
-     * @param F the high frequency array.
-     * @return DTMF tone.
+     * @param timeout the longest time to wait.
+     * @param unit the unit of the timeout.
+     * @return whether the events were delivered in time. Always true when events are delivered on the thread that runs
+     *         detection.
+     * @throws InterruptedException if the caller was interrupted while waiting.
      */
-    private String getTone(double f[], double F[]) {
-        int fm = getMax(f);
-        boolean fd = true;
+    public boolean awaitEvents(long timeout, TimeUnit unit) throws InterruptedException {
+        return dispatcher == null || dispatcher.awaitDelivery(timeout, unit);
+    }
 
-        for (int i = 0; i < f.length; i++) {
-            if (fm == i) {
-                continue;
+    /**
+     * Gets the number of bytes {@link #snapshot(ByteBuffer)} writes at most, whatever the state of the detector.
+     *
+     * @return the maximum size of a snapshot, in bytes.
+     */
+    public int getSnapshotSize() {
+        if (snapshotSize == 0) {
+            final GoertzelEngine engine = this.engine;
+            this.snapshotSize = SNAPSHOT_HEADER + SNAPSHOT_TRACKING + SNAPSHOT_FAMILY * families.length
+                    + ((engine == null) ? createEngine() : engine).getSnapshotSize();
+        }
+        return snapshotSize;
+    }
+
+    /**
+     * Writes the runtime state of the detector into a buffer, so that the leg can carry on in a detector of another node
+     * through {@link #restore(ByteBuffer)}: the windows being analysed, the tone being tracked and the noise floor. Counters,
+     * observers and the Flight Recorder identifier of the leg are not part of it.
+     * <p>
+     * Snapshots are written big-endian from the position of the buffer, whatever its byte order, and leave the position after
+     * the last byte written. Nothing is allocated. A hibernating detector takes about a hundred bytes; one that analyses audio
+     * adds the state of its engine, a few hundred bytes more for overlapping windows or cascades.
+     * <p>
+     * Must be called by the thread that runs detection, between two frames.
+     *
+     * @param buffer the buffer.
+     * @throws java.nio.BufferOverflowException if the buffer is too small for the snapshot, which never happens with
+     *         {@link #getSnapshotSize()} bytes remaining.
+     */
+    public void snapshot(ByteBuffer buffer) {
+        final ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            buffer.put(SNAPSHOT_VERSION);
+            for (int value : configuration) {
+                buffer.putInt(value);
+            }
+            buffer.put((byte) ((engine == null) ? 0 : 1));
+            buffer.putLong(samples).putLong(lastLoud);
+            buffer.put((byte) state.ordinal()).put((byte) tone);
+            buffer.putLong(toneOnset).putLong(toneEnd).putLong(toneWindowEnd).putLong(toneOffset);
+            buffer.putLong(candidateStart).putLong(lastWindowEnd);
+            buffer.putDouble(noiseFloor);
+            for (int f = 0; f < families.length; f++) {
+                buffer.put((byte) familyTone[f]).put((byte) (familyReported[f] ? 1 : 0));
+                buffer.putLong(familyOnset[f]).putLong(familyEnd[f]);
             }
-            double r = f[fm] / (f[i] + 1E-15);
-            if (r < threshold) {
-                fd = false;
-                break;
+            if (engine != null) {
+                engine.save(buffer);
             }
+        } finally {
+            buffer.order(order);
         }
+    }
+
+    /**
+     * Carries on a leg from a snapshot written by {@link #snapshot(ByteBuffer)}, possibly on another node. The detector must
+     * have the same settings as the one that wrote the snapshot; its current runtime state is discarded.
+     * <p>
+     * Positions keep counting from where the snapshot was taken, so a tone that was confirmed before the snapshot is not
+     * reported again, and a tone whose window was in progress is confirmed as if the leg had not moved.
+     * <p>
+     * The snapshot is checked in full before the detector is changed, so a detector that rejects a snapshot keeps its state.
+     * <p>
+     * Must be called by the thread that runs detection, between two frames. The position of the buffer is left after the
+     * snapshot, or where it was if the snapshot is rejected.
+     *
+     * @param buffer the buffer, read from its position.
+     * @throws IllegalArgumentException if the snapshot has another version, was written by a detector with other settings, is
+     *         truncated or holds values out of range.
+     */
+    public void restore(ByteBuffer buffer) {
+        final ByteBuffer snapshot = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        final GoertzelEngine restored;
+        try {
+            restored = check(snapshot);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Snapshot is truncated", e);
+        }
+
+        final ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            buffer.position(buffer.position() + SNAPSHOT_HEADER);
+            hibernate();
+            this.samples = buffer.getLong();
+            this.lastLoud = buffer.getLong();
+            this.state = ToneState.values()[buffer.get()];
+            this.tone = buffer.get();
+            this.toneOnset = buffer.getLong();
+            this.toneEnd = buffer.getLong();
+            this.toneWindowEnd = buffer.getLong();
+            this.toneOffset = buffer.getLong();
+            this.candidateStart = buffer.getLong();
+            this.lastWindowEnd = buffer.getLong();
+            this.noiseFloor = buffer.getDouble();
+            for (int f = 0; f < families.length; f++) {
+                this.familyTone[f] = buffer.get();
+                this.familyReported[f] = buffer.get() != 0;
+                this.familyOnset[f] = buffer.getLong();
+                this.familyEnd[f] = buffer.getLong();
+            }
+            if (restored != null) {
+                this.engine = restored;
+                this.power = new double[bank.getBins()];
+                if (metrics != null) {
+                    this.activation = metrics.engineActivated(this);
+                }
+            }
+            buffer.position(snapshot.position());
+        } finally {
+            buffer.order(order);
+        }
+    }
 
-        if (!fd) {
+    /**
+     * Reads a whole snapshot and checks it against the settings of the detector, without changing the detector.
+     *
+     * @param snapshot the snapshot, read big-endian from its position.
+     * @return the engine restored from the snapshot, or null if the snapshot was taken while hibernating.
+     */
+    private GoertzelEngine check(ByteBuffer snapshot) {
+        final byte version = snapshot.get();
+        if (version != SNAPSHOT_VERSION) {
+            throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+        }
+        for (int i = 0; i < configuration.length; i++) {
+            final int value = snapshot.getInt();
+            if (value != configuration[i]) {
+                throw new IllegalArgumentException("Snapshot was written by a detector with another " + CONFIGURATION[i]
+                        + ": " + value + " instead of " + configuration[i]);
+            }
+        }
+        final boolean active = checkFlag(snapshot.get());
+
+        // Samples and last loud position, then state and tone
+        snapshot.position(snapshot.position() + 16);
+        checkRange(snapshot.get(), 0, ToneState.values().length, "tone state");
+        checkRange(snapshot.get(), -1, DtmfToneClassifier.TONES, "tone");
+        // Four tone positions, candidate start, last window end and noise floor
+        snapshot.position(snapshot.position() + 56);
+        for (int f = 0; f < families.length; f++) {
+            checkRange(snapshot.get(), -1, families[f].getFamily().getToneCount(), "tone");
+            checkFlag(snapshot.get());
+            snapshot.position(snapshot.position() + 16);
+        }
+        if (!active) {
             return null;
         }
+        final GoertzelEngine engine = createEngine();
+        engine.restore(snapshot);
+        return engine;
+    }
+
+    private static boolean checkFlag(byte flag) {
+        return checkRange(flag, 0, 2, "flag") != 0;
+    }
+
+    private static int checkRange(int value, int min, int bound, String name) {
+        if (value < min || value >= bound) {
+            throw new IllegalArgumentException("Snapshot holds an invalid " + name + ": " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Gets the state of the tone tracking. Must be called by the thread that runs detection, or by observers called on it.
+     *
+     * @return the current state.
+     */
+    public ToneState getToneState() {
+        return state;
+    }
+
+    /**
+     * Gets the encoding of the frames passed to {@link #detect(byte[], long)}.
+     *
+     * @return the encoding.
+     */
+    SampleEncoding getEncoding() {
+        return encoding;
+    }
 
-        int Fm = getMax(F);
-        boolean Fd = true;
+    /**
+     * Gets the sample rate that positions reported by the detector are counted at.
+     *
+     * @return the sample rate, in Hz.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the number of samples received since the detector was created or reset.
+     *
+     * @return the number of samples received.
+     */
+    public long getProcessedSamples() {
+        return samples;
+    }
+
+    /**
+     * Gets the position of the sample that follows the window in which the last tone was detected, counted from the first
+     * sample received after the detector was created or reset.
+     * <p>
+     * When read by an observer while it is being notified, it locates the tone being reported with sample accuracy: the tone
+     * was present in the {@link #getWindowSize()} samples that precede this position.
+     *
+     * @return the position after the last detected tone, or -1 if no tone was detected yet.
+     */
+    public long getLastToneOffset() {
+        return toneOffset;
+    }
+
+    /**
+     * Gets the length of the analysis window.
+     *
+     * @return the number of received samples in a window, before decimation.
+     */
+    public int getWindowSize() {
+        return N;
+    }
+
+    /**
+     * Gets the number of frames received since the detector was created.
+     *
+     * @return the number of frames received.
+     */
+    public long getProcessedFrames() {
+        return processedFrames;
+    }
 
-        for (int i = 0; i < F.length; i++) {
-            if (Fm == i) {
+    /**
+     * Gets the number of tones detected since the detector was created.
+     *
+     * @return the number of detected tones.
+     */
+    public long getDetectedTones() {
+        return detectedTones;
+    }
+
+    /**
+     * Gets the number of windows that were loud enough to be classified but did not hold a DTMF tone.
+     *
+     * @return the number of rejected candidates.
+     */
+    public long getRejectedCandidates() {
+        return rejectedCandidates;
+    }
+
+    /**
+     * Gets the latency of the last detection, from the start of the first window of the run of windows loud enough to be
+     * classified to the end of the window in which the tone was recognised.
+     *
+     * @return the latency of the last detection, in milliseconds, or 0 if no tone was detected yet.
+     */
+    public long getLastDetectionLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * Gets the number of windows that went through the Goertzel analysis.
+     *
+     * @return the number of analysed windows.
+     */
+    public long getAnalysedWindows() {
+        return analysedWindows;
+    }
+
+    /**
+     * Gets the number of windows that a stage of the pre-filter dropped without running the Goertzel analysis.
+     *
+     * @param stage the pre-filter stage.
+     * @return the number of windows dropped by the stage.
+     */
+    public long getRejectedWindows(GateStage stage) {
+        final GoertzelEngine engine = this.engine;
+        return releasedRejections[stage.ordinal()] + ((engine == null) ? 0 : engine.getRejectedWindows(stage));
+    }
+
+    /**
+     * Gets whether the detector holds no analysis state, because the leg has not carried audio loud enough to hold a tone
+     * since the detector was created or reset, or has stayed quiet for the configured time since then.
+     *
+     * @return whether the detector hibernates.
+     */
+    public boolean isHibernating() {
+        return engine == null;
+    }
+
+    /**
+     * Gets the identifier the current leg is reported under in Flight Recorder events. Every detector gets a new identifier
+     * when it is created and when it is reset.
+     *
+     * @return the leg identifier.
+     */
+    public long getTraceId() {
+        return leg;
+    }
+
+    /**
+     * Gets whether the current leg records Flight Recorder events.
+     *
+     * @return whether the leg is traced.
+     */
+    public boolean isTraced() {
+        return traced;
+    }
+
+    /**
+     * Includes the current leg in Flight Recorder events, or leaves it out, regardless of the configured event sampling. The
+     * choice holds until the detector is reset. Has no effect on runtimes without the Flight Recorder API.
+     *
+     * @param traced whether the leg records events.
+     */
+    public void setTraced(boolean traced) {
+        this.traced = traced && FLIGHT_RECORDER;
+    }
+
+    /**
+     * Gives the detector the identifier of a new leg, and decides whether it is sampled for Flight Recorder events.
+     */
+    private void startLeg() {
+        this.leg = legs.incrementAndGet();
+        this.traced = eventSampling > 0 && leg % eventSampling == 0 && FLIGHT_RECORDER;
+    }
+
+    private static boolean hasFlightRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event", false, GoertzelDtmfDetector.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Evaluates the window the engine has just completed, updates the state of the tone tracking and moves the engine to the
+     * next window.
+     *
+     * @param position the position of the sample that follows the window.
+     */
+    private void analyse(long position) {
+        analysedWindows++;
+        if (metrics != null) {
+            metrics.windowAnalysed();
+        }
+
+        final long windowStart = position - N;
+        final boolean contiguous = windowStart <= lastWindowEnd;
+        this.lastWindowEnd = position;
+
+        // and if max amplitude of signal is greater threshold
+        // try to detect tone.
+        final boolean loud = engine.peak() >= threshold;
+        int tone = -1;
+        if (loud) {
+            // Windows dropped by the pre-filter break a run of candidates
+            if (candidateStart < 0 || !contiguous) {
+                this.candidateStart = windowStart;
+            }
+            engine.power(power);
+
+            tone = classifier.getTone(power, engine.energy(), noiseFloor);
+            if (traced) {
+                DetectorEvents.windowAnalysed(leg, position, engine.peak(), engine.energy(), power, tone);
+            }
+            if (tone < 0) {
+                this.rejectedCandidates++;
+                if (metrics != null) {
+                    metrics.candidateRejected();
+                }
+                if (traced) {
+                    DetectorEvents.candidateRejected(leg, position, classifier, power, engine.energy(), noiseFloor);
+                }
+                updateNoiseFloor();
+            }
+        }
+
+        if (tone >= 0) {
+            // With exact frequency bins the tones' share of the window energy tells how many samples of the window they fill,
+            // which places the edges of the tone within the window
+            final double energy = engine.energy();
+            final long filled = (energy > 0) ? Math.round(Math.min((power[tone >> 2] + power[4 + (tone & 3)]) / energy, 1) * N) : N;
+
+            final boolean tracking = state == ToneState.CONFIRMED || state == ToneState.RELEASE;
+            if (tracking && tone == this.tone && windowStart <= toneWindowEnd
+                    && (toneWindowEnd - toneEnd < releaseGap || windowStart + filled - toneEnd < releaseGap)) {
+                // Window follows one that carried the tone up to its end, or only holds what overlapping windows already
+                // saw of the tone, so the tone fills its start
+                changeState(ToneState.CONFIRMED, position);
+                this.toneEnd = Math.max(toneEnd, windowStart + filled);
+                this.toneWindowEnd = position;
+            } else if (tracking && tone == this.tone && position - filled - toneEnd < releaseGap) {
+                // Tone resumed after a short break, so it fills the end of the window
+                changeState(ToneState.CONFIRMED, position);
+                this.toneEnd = position;
+                this.toneWindowEnd = position;
+            } else {
+                if (tracking) {
+                    // Another key, or the same key pressed again after a long enough pause
+                    end(position);
+                }
+                begin(tone, Math.max(position - filled, toneEnd), position);
+            }
+            this.candidateStart = -1;
+        } else if (state == ToneState.CONFIRMED || state == ToneState.RELEASE) {
+            changeState(ToneState.RELEASE, position);
+            if (position - toneEnd >= releaseGap) {
+                end(position);
+            }
+        } else {
+            changeState(loud ? ToneState.CANDIDATE : ToneState.IDLE, position);
+        }
+
+        if (!loud) {
+            this.candidateStart = -1;
+        }
+        if (families.length > 0) {
+            trackFamilies(loud, windowStart, position);
+        }
+        engine.nextWindow();
+    }
+
+    /**
+     * Runs the rules of every other tone family over the window that has just been evaluated and tracks their tones. A tone is
+     * reported once it lasted for the minimum duration of its family, and ends as soon as a window that follows it by more
+     * than the tone interval does not carry it.
+     */
+    private void trackFamilies(boolean loud, long windowStart, long position) {
+        final double energy = loud ? engine.energy() : 0;
+        for (int f = 0; f < families.length; f++) {
+            final int tone = loud ? families[f].getTone(power, energy) : -1;
+            if (tone < 0) {
+                if (familyTone[f] >= 0 && position - familyEnd[f] >= releaseGap) {
+                    endFamilyTone(f);
+                }
                 continue;
             }
-            double r = F[Fm] / (F[i] + 1E-15);
-            if (r < threshold) {
-                Fd = false;
-                break;
+
+            if (tone != familyTone[f] || windowStart - familyEnd[f] >= releaseGap) {
+                if (familyTone[f] >= 0) {
+                    endFamilyTone(f);
+                }
+                this.familyTone[f] = tone;
+                this.familyOnset[f] = windowStart;
+                this.familyReported[f] = false;
+            }
+            this.familyEnd[f] = position;
+
+            if (!familyReported[f] && position - familyOnset[f] >= familyMinDuration[f]) {
+                this.familyReported[f] = true;
+                beginFamilyTone(f, position);
             }
         }
+    }
 
-        if (!Fd) {
-            return null;
+    private boolean trackingFamilies() {
+        for (int f = 0; f < families.length; f++) {
+            if (familyTone[f] >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the tone tracking forward at the end of a frame, when the windows that followed the last analysed one were dropped
+     * by the pre-filter and so never reached {@link #analyse(long)}.
+     */
+    private void checkRelease() {
+        if (samples < lastWindowEnd + windowHop) {
+            return;
+        }
+        if (state == ToneState.CANDIDATE) {
+            changeState(ToneState.IDLE, samples);
+        } else if (state == ToneState.CONFIRMED) {
+            changeState(ToneState.RELEASE, samples);
+        }
+        if (state == ToneState.RELEASE && samples - toneEnd >= releaseGap) {
+            end(samples);
         }
+        for (int f = 0; f < families.length; f++) {
+            if (familyTone[f] >= 0 && samples - familyEnd[f] >= releaseGap) {
+                endFamilyTone(f);
+            }
+        }
+    }
+
+    private void begin(int tone, long onset, long position) {
+        this.detectedTones++;
+        this.lastLatency = (position - candidateStart) * 1000 / sampleRate;
+        if (metrics != null) {
+            metrics.toneDetected(tone, lastLatency);
+        }
+
+        changeState(ToneState.CONFIRMED, position);
+        this.tone = tone;
+        this.toneOnset = onset;
+        this.toneEnd = position;
+        this.toneWindowEnd = position;
+        this.toneOffset = position;
 
-        return events[fm][Fm];
+        if (traced) {
+            DetectorEvents.toneConfirmed(leg, tone, onset, lastLatency);
+        }
+        publish(true, tone, onset, 0);
     }
 
-}
+    /**
+     * @param position the position the end of the tone was decided at.
+     */
+    private void end(long position) {
+        final int tone = this.tone;
+        final long duration = toneEnd - toneOnset;
+        changeState(ToneState.IDLE, position);
+        this.tone = -1;
+
+        if (traced) {
+            DetectorEvents.toneEnded(leg, tone, toneOnset, duration);
+        }
+        publish(false, tone, toneOnset, duration);
+    }
+
+    private void changeState(ToneState state, long position) {
+        if (traced && state != this.state) {
+            DetectorEvents.stateChanged(leg, position, this.state, state);
+        }
+        this.state = state;
+    }
+
+    private void beginFamilyTone(int f, long position) {
+        final int tone = families[f].getFamily().getTone(familyTone[f]);
+        final long onset = familyOnset[f];
+        final long latency = (position - onset) * 1000 / sampleRate;
+        this.detectedTones++;
+        if (metrics != null) {
+            metrics.toneDetected(tone, latency);
+        }
 
+        if (traced) {
+            DetectorEvents.toneConfirmed(leg, tone, onset, latency);
+        }
+        publish(true, tone, onset, 0);
+    }
+
+    /**
+     * Stops tracking the tone of a family, and reports its end if its begin was reported.
+     */
+    private void endFamilyTone(int f) {
+        final int tone = families[f].getFamily().getTone(familyTone[f]);
+        final long onset = familyOnset[f];
+        final long duration = familyEnd[f] - onset;
+        this.familyTone[f] = -1;
+        if (!familyReported[f]) {
+            return;
+        }
+
+        if (traced) {
+            DetectorEvents.toneEnded(leg, tone, onset, duration);
+        }
+        publish(false, tone, onset, duration);
+    }
+
+    private void publish(boolean begin, int tone, long onset, long duration) {
+        if (dispatcher == null) {
+            deliver(generation, begin, tone, onset, duration);
+        } else {
+            dispatcher.dispatch(this, generation, begin, tone, onset, duration);
+        }
+    }
+
+    /**
+     * Informs observers of the begin or the end of a tone, unless the detector was reset since the tone was detected.
+     */
+    void deliver(int generation, boolean begin, int tone, long onset, long duration) {
+        if (generation != this.generation) {
+            return;
+        }
+
+        final String name = ToneFamily.getName(tone);
+        if (begin) {
+            // Inform liteners about DTMF tone detection
+            notify(ToneFamily.getEvent(tone));
+            for (DtmfToneObserver observer : toneObservers) {
+                observer.onToneBegin(this, name, onset);
+            }
+        } else {
+            for (DtmfToneObserver observer : toneObservers) {
+                observer.onToneEnd(this, name, onset, duration);
+            }
+        }
+    }
+
+    /**
+     * Folds the bin powers of a window that holds no tone into the noise floor. The strongest bin of each group is left out,
+     * as it may belong to a tone that only covers part of the window. The estimate falls quickly and rises slowly, so a burst
+     * of speech does not mask the tones that follow it.
+     */
+    private void updateNoiseFloor() {
+        double sum = 0;
+        double lowMax = 0;
+        double highMax = 0;
+        for (int i = 0; i < 4; i++) {
+            sum += power[i] + power[i + 4];
+            lowMax = Math.max(lowMax, power[i]);
+            highMax = Math.max(highMax, power[i + 4]);
+        }
+        final double mean = (sum - lowMax - highMax) / (DtmfToneClassifier.BINS - 2);
+        this.noiseFloor += (mean - noiseFloor) * ((mean < noiseFloor) ? NOISE_FLOOR_FALL : NOISE_FLOOR_RISE);
+    }
+
+}
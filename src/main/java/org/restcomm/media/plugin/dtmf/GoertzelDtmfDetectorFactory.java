@@ -0,0 +1,97 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+/**
+ * Creates {@link GoertzelDtmfDetector} instances that share the same configuration.
+ * <p>
+ * All detectors of a factory share one immutable classifier and filter bank, so only their small runtime state is allocated
+ * per leg, and their analysis state only once they hear a loud enough frame. Detectors are not reused: media-core's
+ * <code>DtmfDetectorProvider</code> has no way of telling that a leg has ended, so detectors of ended legs are left to the
+ * garbage collector.
+ */
+public class GoertzelDtmfDetectorFactory {
+
+    private final GoertzelDtmfDetectorSettings settings;
+    private final DtmfToneClassifier classifier;
+    private final GoertzelFilterBank bank;
+    private final GoertzelDtmfDetectorMetrics metrics;
+    private final DtmfEventDispatcher dispatcher;
+
+    /**
+     * @param settings the settings of the detectors.
+     */
+    public GoertzelDtmfDetectorFactory(GoertzelDtmfDetectorSettings settings) {
+        this(settings, null);
+    }
+
+    /**
+     * @param settings the settings of the detectors.
+     * @param metrics the aggregate metrics all detectors of the factory report to. May be null.
+     */
+    public GoertzelDtmfDetectorFactory(GoertzelDtmfDetectorSettings settings, GoertzelDtmfDetectorMetrics metrics) {
+        this(settings, metrics, null);
+    }
+
+    /**
+     * @param settings the settings of the detectors.
+     * @param metrics the aggregate metrics all detectors of the factory report to. May be null.
+     * @param dispatcher the dispatcher that delivers the events of all detectors of the factory. May be null to deliver events
+     *        on the threads that run detection.
+     */
+    public GoertzelDtmfDetectorFactory(GoertzelDtmfDetectorSettings settings, GoertzelDtmfDetectorMetrics metrics,
+            DtmfEventDispatcher dispatcher) {
+        this.settings = new GoertzelDtmfDetectorSettings(settings);
+        this.classifier = new DtmfToneClassifier(settings);
+        this.bank = GoertzelFilterBank.tones(settings);
+        this.metrics = metrics;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Creates a detector.
+     *
+     * @return a detector with clean runtime state.
+     */
+    public GoertzelDtmfDetector create() {
+        return new GoertzelDtmfDetector(settings, classifier, bank, metrics, dispatcher);
+    }
+
+    /**
+     * Gets the aggregate metrics of the detectors of the factory.
+     *
+     * @return the metrics, or null if the factory was created without metrics.
+     */
+    public GoertzelDtmfDetectorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the dispatcher that delivers the events of the detectors of the factory.
+     *
+     * @return the dispatcher, or null if events are delivered on the threads that run detection.
+     */
+    public DtmfEventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+}
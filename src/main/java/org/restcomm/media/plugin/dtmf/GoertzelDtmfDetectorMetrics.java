@@ -0,0 +1,279 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregate counters of a group of {@link GoertzelDtmfDetector} instances, typically all the detectors of a provider.
+ * <p>
+ * Counters are {@link LongAdder} instances, so detectors running on different threads update them without contending on a
+ * single memory location and without allocating. Values are pulled on demand; per leg values are available from each
+ * detector.
+ * <p>
+ * Detection latency is measured from the start of the first window of a run of windows loud enough to be classified, to
+ * the end of the window in which the tone was recognised. It is kept in a histogram with fixed bucket bounds, in
+ * milliseconds.
+ * <p>
+ * Detectors holding their analysis state are counted until they hibernate or are reset. Media-core drops the detectors of
+ * ended legs without telling them, so each active detector is also tracked through a phantom reference, and stops being
+ * counted once it is garbage collected.
+ */
+public class GoertzelDtmfDetectorMetrics {
+
+    private static final long[] LATENCY_BOUNDS = new long[]{20, 40, 60, 80, 100, 120, 160, 200, 300, 500, 1000, Long.MAX_VALUE};
+
+    private final LongAdder frames;
+    private final LongAdder analysedWindows;
+    private final LongAdder[] rejectedWindows;
+    private final LongAdder[] tones;
+    private final LongAdder rejectedCandidates;
+    private final LongAdder[] latency;
+    private final LongAdder latencySum;
+    private final LongAdder activeEngines;
+    private final LongAdder hibernations;
+    private final LongAdder abandonments;
+
+    // Active detectors, queued once garbage collected
+    private final Set<Activation> activations;
+    private final ReferenceQueue<GoertzelDtmfDetector> collected;
+
+    public GoertzelDtmfDetectorMetrics() {
+        this.frames = new LongAdder();
+        this.analysedWindows = new LongAdder();
+        this.rejectedWindows = adders(GateStage.values().length);
+        this.tones = adders(ToneFamily.getTones());
+        this.rejectedCandidates = new LongAdder();
+        this.latency = adders(LATENCY_BOUNDS.length);
+        this.latencySum = new LongAdder();
+        this.activeEngines = new LongAdder();
+        this.hibernations = new LongAdder();
+        this.abandonments = new LongAdder();
+        this.activations = ConcurrentHashMap.newKeySet();
+        this.collected = new ReferenceQueue<>();
+    }
+
+    private static LongAdder[] adders(int count) {
+        final LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    void frameProcessed() {
+        frames.increment();
+    }
+
+    void windowAnalysed() {
+        analysedWindows.increment();
+    }
+
+    void windowRejected(GateStage stage) {
+        rejectedWindows[stage.ordinal()].increment();
+    }
+
+    void candidateRejected() {
+        rejectedCandidates.increment();
+    }
+
+    /**
+     * @param detector the detector that allocated its analysis state.
+     * @return the activation the detector hands back to {@link #engineReleased(Activation)} when it releases that state.
+     */
+    Activation engineActivated(GoertzelDtmfDetector detector) {
+        expunge();
+        final Activation activation = new Activation(detector, collected);
+        activations.add(activation);
+        activeEngines.increment();
+        return activation;
+    }
+
+    void engineReleased(Activation activation) {
+        if (activations.remove(activation)) {
+            activation.clear();
+            activeEngines.decrement();
+            hibernations.increment();
+        }
+    }
+
+    /**
+     * Stops counting the active detectors that were garbage collected without releasing their analysis state.
+     */
+    private void expunge() {
+        Reference<? extends GoertzelDtmfDetector> reference;
+        while ((reference = collected.poll()) != null) {
+            if (activations.remove(reference)) {
+                activeEngines.decrement();
+                abandonments.increment();
+            }
+        }
+    }
+
+    /**
+     * @param tone the tone identifier, a DTMF tone as returned by {@link DtmfToneClassifier#getTone(double[])} or a tone of
+     *        another family as returned by {@link ToneFamily#getTone(int)}.
+     * @param latency the detection latency, in milliseconds.
+     */
+    void toneDetected(int tone, long latency) {
+        tones[tone].increment();
+        latencySum.add(latency);
+
+        int bucket = 0;
+        while (latency > LATENCY_BOUNDS[bucket]) {
+            bucket++;
+        }
+        this.latency[bucket].increment();
+    }
+
+    /**
+     * Gets the number of frames handed to the detectors.
+     */
+    public long getProcessedFrames() {
+        return frames.sum();
+    }
+
+    /**
+     * Gets the number of windows that went through the Goertzel analysis.
+     */
+    public long getAnalysedWindows() {
+        return analysedWindows.sum();
+    }
+
+    /**
+     * Gets the number of windows that a stage of the pre-filter dropped without running the Goertzel analysis.
+     *
+     * @param stage the pre-filter stage.
+     */
+    public long getRejectedWindows(GateStage stage) {
+        return rejectedWindows[stage.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of windows that were loud enough to be classified but did not hold a DTMF tone.
+     */
+    public long getRejectedCandidates() {
+        return rejectedCandidates.sum();
+    }
+
+    /**
+     * Gets the number of tones detected.
+     */
+    public long getDetectedTones() {
+        long sum = 0;
+        for (LongAdder tone : tones) {
+            sum += tone.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the number of times a digit or a tone of another {@link ToneFamily family} was detected.
+     *
+     * @param digit the digit, one of <code>0-9</code>, <code>*</code>, <code>#</code> and <code>A-D</code>, or the name of a
+     *        tone of another family.
+     * @throws IllegalArgumentException if no tone has that name.
+     */
+    public long getDetectedTones(String digit) {
+        final int tone = ToneFamily.getTone(digit);
+        if (tone < 0) {
+            throw new IllegalArgumentException("Not a DTMF digit nor a known tone: " + digit);
+        }
+        return tones[tone].sum();
+    }
+
+    /**
+     * Gets the inclusive upper bounds of the latency histogram buckets, in milliseconds. The last bound is
+     * {@link Long#MAX_VALUE}.
+     */
+    public long[] getLatencyBounds() {
+        return LATENCY_BOUNDS.clone();
+    }
+
+    /**
+     * Gets a snapshot of the number of detections in every bucket of the latency histogram.
+     */
+    public long[] getLatencyCounts() {
+        final long[] counts = new long[latency.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = latency[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the number of detections in a bucket of the latency histogram.
+     *
+     * @param bucket the index of the bucket in {@link #getLatencyBounds()}.
+     */
+    public long getLatencyCount(int bucket) {
+        return latency[bucket].sum();
+    }
+
+    /**
+     * Gets the sum of all detection latencies, in milliseconds.
+     */
+    public long getLatencySum() {
+        return latencySum.sum();
+    }
+
+    /**
+     * Gets the number of detectors that currently hold their analysis state, as opposed to hibernating ones.
+     */
+    public long getActiveDetectors() {
+        expunge();
+        return activeEngines.sum();
+    }
+
+    /**
+     * Gets the number of times a detector released its analysis state, after a stretch of quiet audio or when it was reset.
+     */
+    public long getHibernations() {
+        return hibernations.sum();
+    }
+
+    /**
+     * Gets the number of detectors that were garbage collected while holding their analysis state, typically those of legs
+     * that ended without being released.
+     */
+    public long getAbandonedDetectors() {
+        expunge();
+        return abandonments.sum();
+    }
+
+    /**
+     * Reference to a detector holding its analysis state.
+     */
+    static final class Activation extends PhantomReference<GoertzelDtmfDetector> {
+
+        private Activation(GoertzelDtmfDetector detector, ReferenceQueue<GoertzelDtmfDetector> queue) {
+            super(detector, queue);
+        }
+
+    }
+
+}
@@ -0,0 +1,332 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Settings of a {@link GoertzelDtmfDetector}.
+ * <p>
+ * Detectors copy the settings they are created with, so an instance can be reused and modified afterwards without affecting
+ * detectors that already exist.
+ */
+public class GoertzelDtmfDetectorSettings {
+
+    private int toneVolume;
+    private int toneDuration;
+    private int toneInterval;
+    private int hopSize;
+    private boolean gating;
+    private boolean fixedPoint;
+    private SampleEncoding encoding;
+    private int sampleRate;
+    private int decimation;
+    private int maxTwist;
+    private int maxReverseTwist;
+    private int minSignalToNoise;
+    private int minRelativeEnergy;
+    private int hibernateAfter;
+    private EnumSet<ToneFamily> toneFamilies;
+    private int eventSampling;
+    private int cascadeDuration;
+    private boolean cascadeBackdating;
+
+    public GoertzelDtmfDetectorSettings() {
+        this.toneVolume = -35;
+        this.toneDuration = 80;
+        this.toneInterval = 20;
+        this.hopSize = 0;
+        this.gating = true;
+        this.fixedPoint = false;
+        this.encoding = SampleEncoding.LINEAR;
+        this.sampleRate = 8000;
+        this.decimation = 1;
+        this.maxTwist = 4;
+        this.maxReverseTwist = 8;
+        this.minSignalToNoise = 10;
+        this.minRelativeEnergy = 5;
+        this.hibernateAfter = 5000;
+        this.toneFamilies = EnumSet.noneOf(ToneFamily.class);
+        this.eventSampling = 0;
+        this.cascadeDuration = 0;
+        this.cascadeBackdating = true;
+    }
+
+    public GoertzelDtmfDetectorSettings(GoertzelDtmfDetectorSettings settings) {
+        this.toneVolume = settings.toneVolume;
+        this.toneDuration = settings.toneDuration;
+        this.toneInterval = settings.toneInterval;
+        this.hopSize = settings.hopSize;
+        this.gating = settings.gating;
+        this.fixedPoint = settings.fixedPoint;
+        this.encoding = settings.encoding;
+        this.sampleRate = settings.sampleRate;
+        this.decimation = settings.decimation;
+        this.maxTwist = settings.maxTwist;
+        this.maxReverseTwist = settings.maxReverseTwist;
+        this.minSignalToNoise = settings.minSignalToNoise;
+        this.minRelativeEnergy = settings.minRelativeEnergy;
+        this.hibernateAfter = settings.hibernateAfter;
+        this.toneFamilies = EnumSet.copyOf(settings.toneFamilies);
+        this.eventSampling = settings.eventSampling;
+        this.cascadeDuration = settings.cascadeDuration;
+        this.cascadeBackdating = settings.cascadeBackdating;
+    }
+
+    /**
+     * @return the minimum tone volume, in dBm0.
+     */
+    public int getToneVolume() {
+        return toneVolume;
+    }
+
+    public GoertzelDtmfDetectorSettings setToneVolume(int toneVolume) {
+        this.toneVolume = toneVolume;
+        return this;
+    }
+
+    /**
+     * @return the length of the analysis window, in milliseconds.
+     */
+    public int getToneDuration() {
+        return toneDuration;
+    }
+
+    public GoertzelDtmfDetectorSettings setToneDuration(int toneDuration) {
+        this.toneDuration = toneDuration;
+        return this;
+    }
+
+    /**
+     * @return the shortest pause that separates two presses of the same key, in milliseconds. A tone that stops for less
+     *         than this is reported as a single key press.
+     */
+    public int getToneInterval() {
+        return toneInterval;
+    }
+
+    public GoertzelDtmfDetectorSettings setToneInterval(int toneInterval) {
+        this.toneInterval = toneInterval;
+        return this;
+    }
+
+    /**
+     * @return the time between two consecutive window evaluations, in milliseconds. Values that are not positive or not
+     *         shorter than the tone duration disable overlapping windows.
+     */
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public GoertzelDtmfDetectorSettings setHopSize(int hopSize) {
+        this.hopSize = hopSize;
+        return this;
+    }
+
+    /**
+     * @return whether windows that cannot carry a tone are dropped by a cheap pre-filter before running the Goertzel analysis.
+     *         Only applies to non-overlapping windows.
+     */
+    public boolean isGating() {
+        return gating;
+    }
+
+    public GoertzelDtmfDetectorSettings setGating(boolean gating) {
+        this.gating = gating;
+        return this;
+    }
+
+    /**
+     * @return whether the Goertzel recurrences run in integer arithmetic rather than in double precision. Only applies to
+     *         non-overlapping windows.
+     */
+    public boolean isFixedPoint() {
+        return fixedPoint;
+    }
+
+    public GoertzelDtmfDetectorSettings setFixedPoint(boolean fixedPoint) {
+        this.fixedPoint = fixedPoint;
+        return this;
+    }
+
+    /**
+     * @return the encoding of the frames passed to {@link GoertzelDtmfDetector#detect(byte[], long)}.
+     */
+    public SampleEncoding getEncoding() {
+        return encoding;
+    }
+
+    public GoertzelDtmfDetectorSettings setEncoding(SampleEncoding encoding) {
+        this.encoding = encoding;
+        return this;
+    }
+
+    /**
+     * @return the sample rate of the audio passed to the detector, in Hz.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public GoertzelDtmfDetectorSettings setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+        return this;
+    }
+
+    /**
+     * @return the factor the audio is decimated by before the Goertzel analysis, 1 to analyse every sample. The sample rate
+     *         must be a multiple of the factor and the decimated rate must be at least 8 kHz.
+     */
+    public int getDecimation() {
+        return decimation;
+    }
+
+    public GoertzelDtmfDetectorSettings setDecimation(int decimation) {
+        this.decimation = decimation;
+        return this;
+    }
+
+    /**
+     * @return how much stronger the high group tone may be than the low group tone, in dB. Line loss attenuates the high
+     *         group, so a high group that is stronger than the low group is more likely speech and the allowance is smaller
+     *         than the reverse one. Values that are not positive disable the check.
+     */
+    public int getMaxTwist() {
+        return maxTwist;
+    }
+
+    public GoertzelDtmfDetectorSettings setMaxTwist(int maxTwist) {
+        this.maxTwist = maxTwist;
+        return this;
+    }
+
+    /**
+     * @return how much stronger the low group tone may be than the high group tone, in dB. Values that are not positive
+     *         disable the check.
+     */
+    public int getMaxReverseTwist() {
+        return maxReverseTwist;
+    }
+
+    public GoertzelDtmfDetectorSettings setMaxReverseTwist(int maxReverseTwist) {
+        this.maxReverseTwist = maxReverseTwist;
+        return this;
+    }
+
+    /**
+     * @return how far above the running noise floor of the leg both tones must be, in dB. Values that are not positive
+     *         disable the check.
+     */
+    public int getMinSignalToNoise() {
+        return minSignalToNoise;
+    }
+
+    public GoertzelDtmfDetectorSettings setMinSignalToNoise(int minSignalToNoise) {
+        this.minSignalToNoise = minSignalToNoise;
+        return this;
+    }
+
+    /**
+     * @return the share of the window energy both tones must hold together, in percent. Values that are not positive disable
+     *         the check.
+     */
+    public int getMinRelativeEnergy() {
+        return minRelativeEnergy;
+    }
+
+    public GoertzelDtmfDetectorSettings setMinRelativeEnergy(int minRelativeEnergy) {
+        this.minRelativeEnergy = minRelativeEnergy;
+        return this;
+    }
+
+    /**
+     * @return how long the audio must stay below the minimum tone volume before the detector releases its analysis state, in
+     *         milliseconds. Values that are not positive keep the state once allocated.
+     */
+    public int getHibernateAfter() {
+        return hibernateAfter;
+    }
+
+    public GoertzelDtmfDetectorSettings setHibernateAfter(int hibernateAfter) {
+        this.hibernateAfter = hibernateAfter;
+        return this;
+    }
+
+    /**
+     * @return the tone families recognised besides DTMF, in the same pass over the audio. Empty by default.
+     */
+    public Set<ToneFamily> getToneFamilies() {
+        return Collections.unmodifiableSet(toneFamilies);
+    }
+
+    public GoertzelDtmfDetectorSettings setToneFamilies(Collection<ToneFamily> toneFamilies) {
+        this.toneFamilies = EnumSet.noneOf(ToneFamily.class);
+        this.toneFamilies.addAll(toneFamilies);
+        return this;
+    }
+
+    /**
+     * @return how many legs share one leg that records Flight Recorder events: 1 traces every leg, 10 one leg out of ten.
+     *         Values that are not positive, the default, trace no leg unless asked to through
+     *         {@link GoertzelDtmfDetector#setTraced(boolean)}.
+     */
+    public int getEventSampling() {
+        return eventSampling;
+    }
+
+    public GoertzelDtmfDetectorSettings setEventSampling(int eventSampling) {
+        this.eventSampling = eventSampling;
+        return this;
+    }
+
+    /**
+     * @return the length of the short windows that screen the audio for candidates, in milliseconds. Windows as long as the
+     *         tone duration then only run to confirm a candidate. Values that are not positive or longer than half the tone
+     *         duration disable the cascade. Only applies to non-overlapping windows.
+     */
+    public int getCascadeDuration() {
+        return cascadeDuration;
+    }
+
+    public GoertzelDtmfDetectorSettings setCascadeDuration(int cascadeDuration) {
+        this.cascadeDuration = cascadeDuration;
+        return this;
+    }
+
+    /**
+     * @return whether the window that confirms a candidate starts one short window before the one that flagged it, so that it
+     *         holds the onset of the tone. Otherwise it starts after the short window that flagged the candidate, the tone is
+     *         confirmed later and its onset is reported late by up to two short windows, but no samples are kept.
+     */
+    public boolean isCascadeBackdating() {
+        return cascadeBackdating;
+    }
+
+    public GoertzelDtmfDetectorSettings setCascadeBackdating(boolean cascadeBackdating) {
+        this.cascadeBackdating = cascadeBackdating;
+        return this;
+    }
+
+}
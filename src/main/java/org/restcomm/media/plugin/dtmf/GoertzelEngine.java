@@ -0,0 +1,121 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Runs the Goertzel analysis of a bank of frequencies over a stream of 16-bit samples.
+ * <p>
+ * Samples are fed one at a time and the engine signals when a window of samples is ready to be evaluated. The caller then
+ * reads the peak amplitude and the bin powers of that window and moves the engine to the next window.
+ */
+abstract class GoertzelEngine {
+
+    /**
+     * Feeds a single sample into the engine.
+     *
+     * @param sample the signed 16-bit sample.
+     * @return true if a window is ready to be evaluated, false otherwise.
+     */
+    abstract boolean process(int sample);
+
+    /**
+     * Gets the peak absolute amplitude of the window that is ready to be evaluated.
+     *
+     * @return the peak amplitude.
+     */
+    abstract double peak();
+
+    /**
+     * Gets the energy of the window that is ready to be evaluated, in the scale of the bin powers: a window holding a single
+     * sinusoid at the frequency of a bin has the same energy as the power of that bin.
+     *
+     * @return the window energy.
+     */
+    abstract double energy();
+
+    /**
+     * Computes the power of each frequency bin of the window that is ready to be evaluated.
+     *
+     * @param power the array where bin powers are written into.
+     */
+    abstract void power(double[] power);
+
+    /**
+     * Moves to the next window once the current one has been evaluated.
+     */
+    abstract void nextWindow();
+
+    /**
+     * Gets the number of windows that were dropped by a stage of the pre-filter without being evaluated.
+     *
+     * @param stage the pre-filter stage.
+     * @return the number of windows dropped by the stage.
+     */
+    long getRejectedWindows(GateStage stage) {
+        return 0;
+    }
+
+    /**
+     * Discards all samples seen so far, so the next window is made of new samples only.
+     */
+    abstract void reset();
+
+    /**
+     * Gets the number of bytes {@link #save(ByteBuffer)} writes at most.
+     *
+     * @return the size of the state, in bytes.
+     */
+    abstract int getSnapshotSize();
+
+    /**
+     * Writes the state of the windows in progress into a buffer. Counters of dropped windows are not part of it.
+     *
+     * @param buffer the buffer, written from its position.
+     */
+    abstract void save(ByteBuffer buffer);
+
+    /**
+     * Reads back the state written by {@link #save(ByteBuffer)} on an engine of the same configuration.
+     *
+     * @param buffer the buffer, read from its position.
+     * @throws IllegalArgumentException if a position in the state is out of range for the configuration of the engine.
+     */
+    abstract void restore(ByteBuffer buffer);
+
+    /**
+     * Checks a position read back by {@link #restore(ByteBuffer)}.
+     *
+     * @param position the position.
+     * @param bound the first value out of range.
+     * @return the position.
+     * @throws IllegalArgumentException if the position is negative or not below the bound.
+     */
+    static int checkPosition(int position, int bound) {
+        if (position < 0 || position >= bound) {
+            throw new IllegalArgumentException("Snapshot holds a position out of range: " + position);
+        }
+        return position;
+    }
+
+}
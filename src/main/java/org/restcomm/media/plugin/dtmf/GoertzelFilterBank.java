@@ -0,0 +1,282 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable set of precomputed coefficients used to run the Goertzel analysis of a group of frequencies over windows of a
+ * given length.
+ * <p>
+ * Banks hold no per leg state, so a single instance is shared by every detector with the same configuration. The arrays
+ * exposed by this class must never be modified.
+ */
+final class GoertzelFilterBank {
+
+    // Lowest sample rate that keeps every DTMF frequency well below the Nyquist frequency
+    private static final int MIN_DTMF_SAMPLE_RATE = 8000;
+
+    // Fractional bits of the fixed point coefficients
+    static final int FIXED_POINT_BITS = 28;
+
+    // DTMF banks keyed by sample rate (high 32 bits) and window length (low 32 bits)
+    private static final ConcurrentMap<Long, GoertzelFilterBank> dtmfBanks = new ConcurrentHashMap<>();
+
+    // Banks that analyse other tone families as well, keyed by sample rate, window length and the ordinals of the families
+    private static final ConcurrentMap<List<Integer>, GoertzelFilterBank> toneBanks = new ConcurrentHashMap<>();
+
+    private final int N;
+    private final int sampleRate;
+    private final int[] frequencies;
+
+    // Goertzel recurrence coefficient: 2cos(w)
+    private final double[] coefficients;
+
+    // Same coefficient in fixed point, and how far samples are scaled down to keep fixed point states within 32 bits
+    private final int[] fixedCoefficients;
+    private final int fixedShift;
+
+    // Sliding DFT rotation of the previous state, e^(jw), and of the incoming sample, e^(-jw(N-1))
+    private final double[] rotationRe;
+    private final double[] rotationIm;
+    private final double[] inputRe;
+    private final double[] inputIm;
+
+    /**
+     * @param frequencies the frequencies to analyse, in Hz.
+     * @param N the window length, in samples.
+     * @param sampleRate the sampling rate, in Hz.
+     */
+    GoertzelFilterBank(int[] frequencies, int N, int sampleRate) {
+        if (N <= 0) {
+            throw new IllegalArgumentException("Window length must be positive: " + N);
+        }
+
+        final int bins = frequencies.length;
+        this.N = N;
+        this.sampleRate = sampleRate;
+        this.frequencies = frequencies.clone();
+        this.coefficients = new double[bins];
+        this.fixedCoefficients = new int[bins];
+        this.rotationRe = new double[bins];
+        this.rotationIm = new double[bins];
+        this.inputRe = new double[bins];
+        this.inputIm = new double[bins];
+        double bound = 0;
+        for (int i = 0; i < bins; i++) {
+            final double w = 2.0 * Math.PI * frequencies[i] / sampleRate;
+            this.coefficients[i] = 2.0 * Math.cos(w);
+            this.fixedCoefficients[i] = (int) Math.round(this.coefficients[i] * (1 << FIXED_POINT_BITS));
+            this.rotationRe[i] = Math.cos(w);
+            this.rotationIm[i] = Math.sin(w);
+            this.inputRe[i] = Math.cos(w * (N - 1));
+            this.inputIm[i] = -Math.sin(w * (N - 1));
+
+            // A recurrence fed N full scale samples never exceeds N * 32768 / sin(w), doubled to absorb rounding
+            bound = Math.max(bound, 2.0 * N * 32768 / Math.abs(Math.sin(w)));
+        }
+
+        int shift = 0;
+        while (shift < 15 && bound / (1 << shift) > Integer.MAX_VALUE) {
+            shift++;
+        }
+        this.fixedShift = shift;
+    }
+
+    /**
+     * Gets the shared bank of the eight DTMF frequencies that matches the settings of a detector.
+     * <p>
+     * The bank runs at the sample rate left after decimation, with a window as long as the tone duration.
+     *
+     * @param settings the detector settings.
+     * @return the bank.
+     * @throws IllegalArgumentException if the sample rate cannot be decimated by the configured factor, or is too low once
+     *         decimated.
+     */
+    static GoertzelFilterBank dtmf(GoertzelDtmfDetectorSettings settings) {
+        final int decimation = settings.getDecimation();
+        if (decimation < 1 || settings.getSampleRate() % decimation != 0) {
+            throw new IllegalArgumentException(
+                    "Sample rate " + settings.getSampleRate() + " Hz cannot be decimated by " + decimation);
+        }
+
+        final int sampleRate = settings.getSampleRate() / decimation;
+        if (sampleRate < MIN_DTMF_SAMPLE_RATE) {
+            throw new IllegalArgumentException("Analysis sample rate must be at least " + MIN_DTMF_SAMPLE_RATE + " Hz: " + sampleRate);
+        }
+        return dtmf(sampleRate, (int) ((long) sampleRate * settings.getToneDuration() / 1000));
+    }
+
+    /**
+     * Gets the shared bank that matches the settings of a detector: the eight DTMF frequencies, followed by the frequencies of
+     * the {@link GoertzelDtmfDetectorSettings#getToneFamilies() tone families} it recognises besides DTMF, if any.
+     *
+     * @param settings the detector settings.
+     * @return the bank.
+     * @throws IllegalArgumentException if the sample rate cannot be decimated by the configured factor, or is too low once
+     *         decimated.
+     */
+    static GoertzelFilterBank tones(GoertzelDtmfDetectorSettings settings) {
+        final GoertzelFilterBank dtmf = dtmf(settings);
+        final Set<ToneFamily> families = settings.getToneFamilies();
+        return families.isEmpty() ? dtmf : tones(dtmf.getSampleRate(), dtmf.getN(), families);
+    }
+
+    /**
+     * Gets the shared bank of the DTMF frequencies and of the frequencies of some tone families, for a sample rate and a window
+     * length. Frequencies shared by several families are analysed once.
+     *
+     * @param sampleRate the sampling rate, in Hz.
+     * @param N the window length, in samples.
+     * @param families the tone families.
+     * @return the bank.
+     */
+    static GoertzelFilterBank tones(int sampleRate, int N, Set<ToneFamily> families) {
+        final Integer[] key = new Integer[2 + families.size()];
+        key[0] = sampleRate;
+        key[1] = N;
+        int k = 2;
+        for (ToneFamily family : families) {
+            key[k++] = family.ordinal();
+        }
+        Arrays.sort(key, 2, key.length);
+
+        final List<Integer> bankKey = Arrays.asList(key);
+        GoertzelFilterBank bank = toneBanks.get(bankKey);
+        if (bank == null) {
+            int[] frequencies = DtmfToneClassifier.FREQUENCIES.clone();
+            for (ToneFamily family : families) {
+                for (int frequency : family.getFrequencies()) {
+                    if (!contains(frequencies, frequency)) {
+                        frequencies = Arrays.copyOf(frequencies, frequencies.length + 1);
+                        frequencies[frequencies.length - 1] = frequency;
+                    }
+                }
+            }
+            final GoertzelFilterBank created = new GoertzelFilterBank(frequencies, N, sampleRate);
+            bank = toneBanks.putIfAbsent(bankKey, created);
+            if (bank == null) {
+                bank = created;
+            }
+        }
+        return bank;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the shared bank of the eight DTMF frequencies for a sample rate and a window length.
+     *
+     * @param sampleRate the sampling rate, in Hz.
+     * @param N the window length, in samples.
+     * @return the bank.
+     */
+    static GoertzelFilterBank dtmf(int sampleRate, int N) {
+        final Long key = ((long) sampleRate << 32) | (N & 0xffffffffL);
+        GoertzelFilterBank bank = dtmfBanks.get(key);
+        if (bank == null) {
+            final GoertzelFilterBank created = new GoertzelFilterBank(DtmfToneClassifier.FREQUENCIES, N, sampleRate);
+            bank = dtmfBanks.putIfAbsent(key, created);
+            if (bank == null) {
+                bank = created;
+            }
+        }
+        return bank;
+    }
+
+    int getN() {
+        return N;
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    int getBins() {
+        return frequencies.length;
+    }
+
+    int getFrequency(int bin) {
+        return frequencies[bin];
+    }
+
+    /**
+     * Looks up the bin that analyses a frequency.
+     *
+     * @param frequency the frequency, in Hz.
+     * @return the index of the bin, or -1 if the frequency is not analysed.
+     */
+    int getBin(int frequency) {
+        for (int i = 0; i < frequencies.length; i++) {
+            if (frequencies[i] == frequency) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    double[] getCoefficients() {
+        return coefficients;
+    }
+
+    /**
+     * @return the recurrence coefficients with {@link #FIXED_POINT_BITS} fractional bits.
+     */
+    int[] getFixedCoefficients() {
+        return fixedCoefficients;
+    }
+
+    /**
+     * @return the number of bits samples are shifted right by before they are fed to a fixed point recurrence.
+     */
+    int getFixedShift() {
+        return fixedShift;
+    }
+
+    double[] getRotationRe() {
+        return rotationRe;
+    }
+
+    double[] getRotationIm() {
+        return rotationIm;
+    }
+
+    double[] getInputRe() {
+        return inputRe;
+    }
+
+    double[] getInputIm() {
+        return inputIm;
+    }
+
+}
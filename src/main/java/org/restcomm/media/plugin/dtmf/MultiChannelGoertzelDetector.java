@@ -0,0 +1,280 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.restcomm.media.core.resource.dtmf.detector.DtmfEventObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Inband DTMF detector that analyses many channels (legs) at once.
+ * <p>
+ * Each call to {@link #detect(byte[][], long)} takes one frame per channel and runs the eight Goertzel recurrences of every
+ * channel in lock-step. The recurrence state is kept in struct-of-arrays form (one array per value, indexed by
+ * <code>bin * channels + channel</code>) so the inner loops walk contiguous memory across channels and can be vectorised by
+ * the JIT compiler. Channels are processed in small blocks that keep their state in the first level cache.
+ * <p>
+ * Detection semantics match {@link GoertzelDtmfDetector} in block mode: each channel evaluates consecutive windows of
+ * <code>toneDuration</code> and ignores its audio for <code>toneInterval</code> after reporting a tone. Events are delivered
+ * to the observers of the channel the tone was detected on.
+ * <p>
+ * This class is not thread-safe: batches must be submitted by a single thread at a time.
+ * <p>
+ * <b>Experimental</b>, and package-private until it agrees with {@link GoertzelDtmfDetector}. It only handles 8 kHz audio,
+ * accepts a tone on the dominance of each group alone (without the twist, noise floor and relative energy checks of
+ * {@link GoertzelDtmfDetectorSettings}) and reports each tone once, without the tone state machine of
+ * {@link GoertzelDtmfDetector}, so the same audio can give other results on both. No provider creates it.
+ */
+class MultiChannelGoertzelDetector {
+
+    private static final int SAMPLES_PER_MS = 8;
+    private static final int BINS = DtmfToneClassifier.BINS;
+
+    // Number of channels whose state is updated together, sized to keep the state of a block in L1 cache
+    private static final int CHANNEL_BLOCK = 64;
+
+    private final DtmfToneClassifier classifier;
+    private final double threshold;
+    private final int toneInterval;
+    private final int N;
+    private final int channels;
+    private final double[] coefficients;
+
+    // Per channel state in struct-of-arrays layout
+    private final double[] s1;
+    private final double[] s2;
+    private final int[] maxAmpl;
+    private final int[] offset;
+    private final long[] elapsedTime;
+    private final boolean[] waiting;
+
+    // Scratch buffers reused across batches
+    private final int[] samples;
+    private final boolean[] active;
+    private final double[] saved;
+    private final double[] power;
+
+    private final List<Set<DtmfEventObserver>> observers;
+
+    /**
+     * @param channels the number of channels.
+     * @param toneVolume the minimum tone volume, in dBm0.
+     * @param toneDuration the length of the analysis window, in milliseconds.
+     * @param toneInterval the time after a detected tone during which audio is ignored, in milliseconds.
+     */
+    MultiChannelGoertzelDetector(int channels, int toneVolume, int toneDuration, int toneInterval) {
+        if (channels <= 0) {
+            throw new IllegalArgumentException("Number of channels must be positive: " + channels);
+        }
+
+        // Detector Configuration
+        this.classifier = new DtmfToneClassifier(toneVolume);
+        this.threshold = classifier.getThreshold();
+        this.toneInterval = toneInterval;
+        this.N = SAMPLES_PER_MS * toneDuration;
+        this.channels = channels;
+        this.coefficients = GoertzelFilterBank.dtmf(SAMPLES_PER_MS * 1000, N).getCoefficients();
+
+        // Runtime Detection
+        this.s1 = new double[BINS * channels];
+        this.s2 = new double[BINS * channels];
+        this.maxAmpl = new int[channels];
+        this.offset = new int[channels];
+        this.elapsedTime = new long[channels];
+        this.waiting = new boolean[channels];
+        this.samples = new int[channels];
+        this.active = new boolean[channels];
+        this.saved = new double[2 * BINS * channels];
+        this.power = new double[BINS];
+        this.observers = new ArrayList<>(channels);
+        for (int i = 0; i < channels; i++) {
+            this.observers.add(new CopyOnWriteArraySet<>());
+        }
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public void observe(int channel, DtmfEventObserver observer) {
+        this.observers.get(channel).add(observer);
+    }
+
+    public void forget(int channel, DtmfEventObserver observer) {
+        this.observers.get(channel).remove(observer);
+    }
+
+    /**
+     * Clears the state of a channel, typically when it is assigned to a new leg. Observers are kept.
+     *
+     * @param channel the channel.
+     */
+    public void reset(int channel) {
+        for (int b = 0; b < BINS; b++) {
+            s1[b * channels + channel] = 0;
+            s2[b * channels + channel] = 0;
+        }
+        maxAmpl[channel] = 0;
+        offset[channel] = 0;
+        elapsedTime[channel] = 0;
+        waiting[channel] = false;
+    }
+
+    /**
+     * Runs detection over one frame of every channel.
+     * <p>
+     * Frames hold 16-bit little-endian linear PCM and must all have the same length. A <code>null</code> frame means the
+     * channel has no audio in this batch and leaves its state untouched.
+     *
+     * @param data the frames, indexed by channel.
+     * @param duration the duration of each frame, in milliseconds.
+     */
+    public void detect(byte[][] data, long duration) {
+        if (data.length != channels) {
+            throw new IllegalArgumentException("Expected " + channels + " frames but got " + data.length);
+        }
+
+        int length = -1;
+        for (int ch = 0; ch < channels; ch++) {
+            // Channels in WAITING state drop frames until a period of data elapses
+            if (waiting[ch] && data[ch] != null) {
+                elapsedTime[ch] += duration;
+                waiting[ch] = elapsedTime[ch] < toneInterval;
+            }
+            active[ch] = data[ch] != null && !waiting[ch];
+
+            if (active[ch]) {
+                if (length < 0) {
+                    length = data[ch].length;
+                } else if (data[ch].length != length) {
+                    throw new IllegalArgumentException("Frame of channel " + ch + " has " + data[ch].length + " bytes, expected " + length);
+                }
+            }
+        }
+
+        if (length > 0) {
+            // Trailing odd byte (if any) does not hold a complete sample
+            final int M = length & ~1;
+            for (int from = 0; from < channels; from += CHANNEL_BLOCK) {
+                detect(data, M, from, Math.min(from + CHANNEL_BLOCK, channels));
+            }
+        }
+    }
+
+    private void detect(byte[][] data, int M, int from, int to) {
+        final double[] s1 = this.s1;
+        final double[] s2 = this.s2;
+        final int[] samples = this.samples;
+        final int[] maxAmpl = this.maxAmpl;
+        final int C = this.channels;
+
+        save(from, to);
+
+        for (int k = 0; k < M; k += 2) {
+            for (int ch = from; ch < to; ch++) {
+                final byte[] frame = data[ch];
+                final int sample = active[ch] ? (frame[k] & 0xff) | (frame[k + 1] << 8) : 0;
+                samples[ch] = sample;
+                maxAmpl[ch] = Math.max(maxAmpl[ch], Math.abs(sample));
+            }
+
+            // Single step of all eight Goertzel recurrences of every channel in the block
+            for (int b = 0; b < BINS; b++) {
+                final double c = coefficients[b];
+                final int base = b * C;
+                for (int ch = from; ch < to; ch++) {
+                    final int i = base + ch;
+                    final double s = samples[ch] + c * s1[i] - s2[i];
+                    s2[i] = s1[i];
+                    s1[i] = s;
+                }
+            }
+
+            for (int ch = from; ch < to; ch++) {
+                if (active[ch] && ++offset[ch] == N) {
+                    analyse(ch);
+                }
+            }
+        }
+
+        restore(from, to);
+    }
+
+    /**
+     * Keeps a copy of the state of inactive channels, which is updated with silence by the lock-step loops.
+     */
+    private void save(int from, int to) {
+        for (int ch = from; ch < to; ch++) {
+            if (!active[ch]) {
+                for (int b = 0; b < BINS; b++) {
+                    saved[2 * (b * channels + ch)] = s1[b * channels + ch];
+                    saved[2 * (b * channels + ch) + 1] = s2[b * channels + ch];
+                }
+            }
+        }
+    }
+
+    private void restore(int from, int to) {
+        for (int ch = from; ch < to; ch++) {
+            if (!active[ch]) {
+                for (int b = 0; b < BINS; b++) {
+                    s1[b * channels + ch] = saved[2 * (b * channels + ch)];
+                    s2[b * channels + ch] = saved[2 * (b * channels + ch) + 1];
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates the window a channel has just completed and resets the channel for the next window.
+     */
+    private void analyse(int channel) {
+        if (maxAmpl[channel] >= threshold) {
+            for (int b = 0; b < BINS; b++) {
+                final int i = b * channels + channel;
+                power[b] = s1[i] * s1[i] + s2[i] * s2[i] - coefficients[b] * s1[i] * s2[i];
+            }
+
+            final int tone = classifier.getTone(power);
+            if (tone >= 0) {
+                elapsedTime[channel] = 0;
+                waiting[channel] = true;
+
+                // Inform listeners of the channel about DTMF tone detection
+                for (DtmfEventObserver observer : observers.get(channel)) {
+                    observer.onDtmfEvent(DtmfToneClassifier.getEvent(tone));
+                }
+            }
+        }
+
+        for (int b = 0; b < BINS; b++) {
+            s1[b * channels + channel] = 0;
+            s2[b * channels + channel] = 0;
+        }
+        maxAmpl[channel] = 0;
+        offset[channel] = 0;
+    }
+
+}
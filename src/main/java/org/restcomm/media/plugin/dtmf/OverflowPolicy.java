@@ -0,0 +1,41 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+/**
+ * What a {@link DtmfEventDispatcher} does with an event when its ring buffer is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The event is discarded and counted, so the media thread never waits for observers.
+     */
+    DROP,
+
+    /**
+     * The event is delivered on the media thread, as if the dispatcher was not used. No event is lost, but the media thread
+     * pays for the observers while the buffer stays full, and the event may overtake events of the same leg that are still
+     * queued.
+     */
+    INLINE
+
+}
@@ -0,0 +1,105 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+/**
+ * Encodings of the audio payloads a detector accepts.
+ * <p>
+ * G.711 payloads are expanded through a 256-entry lookup table as they are fed to the Goertzel recurrences, so they need no
+ * separate decoding pass.
+ */
+public enum SampleEncoding {
+
+    /**
+     * 16-bit signed linear PCM, little-endian.
+     */
+    LINEAR,
+
+    /**
+     * G.711 A-law, one byte per sample.
+     */
+    ALAW,
+
+    /**
+     * G.711 mu-law, one byte per sample.
+     */
+    ULAW;
+
+    private static final short[] alaw = new short[256];
+    private static final short[] ulaw = new short[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            alaw[i] = alaw2linear(i);
+            ulaw[i] = ulaw2linear(i);
+        }
+    }
+
+    /**
+     * Gets the table that expands each 8-bit code word of a G.711 encoding into a linear sample.
+     *
+     * @return the expansion table, which must not be modified, or null for linear PCM.
+     */
+    short[] getExpansionTable() {
+        switch (this) {
+            case ALAW:
+                return alaw;
+            case ULAW:
+                return ulaw;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Expands an A-law code word as specified by ITU-T G.711.
+     */
+    private static short alaw2linear(int code) {
+        code ^= 0x55;
+        int t = (code & 0x0f) << 4;
+        final int segment = (code & 0x70) >> 4;
+        switch (segment) {
+            case 0:
+                t += 8;
+                break;
+            case 1:
+                t += 0x108;
+                break;
+            default:
+                t += 0x108;
+                t <<= segment - 1;
+                break;
+        }
+        return (short) (((code & 0x80) != 0) ? t : -t);
+    }
+
+    /**
+     * Expands a mu-law code word as specified by ITU-T G.711.
+     */
+    private static short ulaw2linear(int code) {
+        code = ~code;
+        int t = ((code & 0x0f) << 3) + 0x84;
+        t <<= (code & 0x70) >> 4;
+        return (short) (((code & 0x80) != 0) ? (0x84 - t) : (t - 0x84));
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.restcomm.media.core.resource.dtmf.detector.DtmfDetector;
+import org.restcomm.media.core.resource.dtmf.detector.DtmfEventObserver;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Detector of a leg attached to {@link DtmfDetectorShards}.
+ * <p>
+ * Frames passed to {@link #detect(byte[], long)} are copied into the queue of the leg and analysed later by the shard that
+ * owns the underlying {@link GoertzelDtmfDetector}, so observers are called from that shard thread (or from the event
+ * dispatcher, if the detector uses one). Once {@link #close() closed}, frames are ignored and the shard detaches the leg.
+ * A leg that gets no frame for the idle timeout of the shards is set aside, so that the shard no longer holds it and it is
+ * garbage collected along with its detector once its owner drops it, and attached again by its next frame.
+ * Legs that move to another node are ended through {@link #migrate(ByteBuffer)} instead, which keeps the state of the
+ * detector.
+ */
+public class ShardedDtmfDetector implements DtmfDetector {
+
+    private static final long MIGRATION_TIMEOUT_MILLIS = 1000;
+
+    // Whether the leg is in the legs of its shard: it is marked idle first, and only removed once it stayed idle
+    static final int ATTACHED = 0;
+    static final int IDLE = 1;
+    static final int DETACHED = 2;
+
+    private final GoertzelDtmfDetector detector;
+    private final SampleEncoding encoding;
+    private final FrameQueue queue;
+    private final DtmfDetectorShards.Shard shard;
+    private final Consumer<GoertzelDtmfDetector> onDetach;
+
+    private volatile boolean closed;
+
+    private final AtomicInteger attachment;
+    // Time the shard last analysed a frame of the leg or marked it idle, from System.nanoTime(). Owned by the shard
+    private long lastActive;
+
+    // Buffer the shard writes the snapshot of a migrating leg into, taken by whichever of the shard or a timed out
+    // migration gets to it first, and the outcome of writing it
+    private final AtomicReference<ByteBuffer> snapshot = new AtomicReference<>();
+    private final CountDownLatch migrated = new CountDownLatch(1);
+    private RuntimeException migrationFailure;
+
+    ShardedDtmfDetector(GoertzelDtmfDetector detector, FrameQueue queue, DtmfDetectorShards.Shard shard,
+            Consumer<GoertzelDtmfDetector> onDetach) {
+        this.detector = detector;
+        this.encoding = detector.getEncoding();
+        this.queue = queue;
+        this.shard = shard;
+        this.onDetach = onDetach;
+        this.attachment = new AtomicInteger(ATTACHED);
+        this.lastActive = System.nanoTime();
+    }
+
+    /**
+     * Queues a frame for detection on the shard of the leg. The frame is copied, so the caller may reuse it.
+     * <p>
+     * When the queue is full the frame is dropped and counted by {@link DtmfDetectorShards#getDroppedFrames()}.
+     *
+     * @param data the frame.
+     * @param duration the duration of the frame, in milliseconds.
+     */
+    @Override
+    public void detect(byte[] data, long duration) {
+        if (closed) {
+            return;
+        }
+        if (!queue.offer(data, 0, data.length, duration)) {
+            shard.frameDropped();
+            return;
+        }
+        if (attachment.get() != ATTACHED) {
+            resume();
+        }
+        shard.wake();
+    }
+
+    @Override
+    public void observe(DtmfEventObserver observer) {
+        detector.observe(observer);
+    }
+
+    @Override
+    public void forget(DtmfEventObserver observer) {
+        detector.forget(observer);
+    }
+
+    /**
+     * Registers an observer of the begin and end of tones.
+     *
+     * @param observer the observer.
+     */
+    public void observeTones(DtmfToneObserver observer) {
+        detector.observeTones(observer);
+    }
+
+    /**
+     * Unregisters an observer of the begin and end of tones.
+     *
+     * @param observer the observer.
+     */
+    public void forgetTones(DtmfToneObserver observer) {
+        detector.forgetTones(observer);
+    }
+
+    /**
+     * Gets the underlying detector. Its counters can be read from any thread, but detection must only be run by the shard.
+     *
+     * @return the detector.
+     */
+    public GoertzelDtmfDetector getDetector() {
+        return detector;
+    }
+
+    /**
+     * Ends the leg. Frames still queued are discarded and the shard detaches the leg.
+     */
+    public void close() {
+        this.closed = true;
+        if (attachment.get() != ATTACHED) {
+            // The shard only detaches the legs it holds
+            resume();
+        }
+        shard.wake();
+    }
+
+    /**
+     * Ends the leg so that it can carry on in another node, waiting at most a second for the shard and a second for the
+     * events of the leg.
+     *
+     * @param buffer the buffer the snapshot is written into.
+     * @throws java.nio.BufferOverflowException if the buffer is too small for the snapshot.
+     * @throws IllegalStateException if the leg was already closed, if its shard is not running, if the shard did not take the
+     *         snapshot in time or if the caller was interrupted while waiting.
+     * @see #migrate(ByteBuffer, long, TimeUnit)
+     */
+    public void migrate(ByteBuffer buffer) {
+        migrate(buffer, MIGRATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ends the leg so that it can carry on in another node. The shard analyses the frames still queued, writes the state of
+     * the detector into the buffer as {@link GoertzelDtmfDetector#snapshot(ByteBuffer)} does and detaches the leg, while the
+     * caller waits.
+     * <p>
+     * The snapshot counts the tones confirmed so far as reported, so the caller then also waits for their events to reach
+     * the observers of the leg, which must only be forgotten afterwards. The detector is only handed to the callback given
+     * to {@link DtmfDetectorShards#attach(GoertzelDtmfDetector, long, Consumer)} once they did, on the calling thread. If
+     * they were not delivered in time, the detector is left to the garbage collector instead, so that they still are.
+     * <p>
+     * If the shard did not get to the leg in time, the leg is closed instead and its detector is handed to the callback by
+     * the shard as usual.
+     * <p>
+     * Must not be called from an observer of the leg, which runs on the shard thread or on the event dispatcher.
+     *
+     * @param buffer the buffer the snapshot is written into.
+     * @param timeout the longest time to wait for the shard, and then for the events of the leg.
+     * @param unit the unit of the timeout.
+     * @throws java.nio.BufferOverflowException if the buffer is too small for the snapshot.
+     * @throws IllegalStateException if the leg was already closed, if its shard is not running, if the shard did not take the
+     *         snapshot in time or if the caller was interrupted while waiting.
+     */
+    public void migrate(ByteBuffer buffer, long timeout, TimeUnit unit) {
+        if (closed) {
+            throw new IllegalStateException("Leg is closed");
+        }
+        if (!shard.isRunning()) {
+            throw new IllegalStateException("Shard of the leg is not running");
+        }
+        this.snapshot.set(buffer);
+        close();
+
+        boolean delivered;
+        try {
+            if (!migrated.await(timeout, unit)) {
+                if (snapshot.getAndSet(null) != null) {
+                    throw new IllegalStateException("Shard did not take the snapshot of the leg in time");
+                }
+                // The shard took the buffer just before the timeout and is still writing the snapshot
+                if (!migrated.await(timeout, unit)) {
+                    throw new IllegalStateException("Shard did not write the snapshot of the leg in time");
+                }
+            }
+            delivered = detector.awaitEvents(timeout, unit);
+        } catch (InterruptedException e) {
+            snapshot.set(null);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the snapshot of the leg", e);
+        }
+        if (delivered && onDetach != null) {
+            onDetach.accept(detector);
+        }
+        if (migrationFailure != null) {
+            throw migrationFailure;
+        }
+    }
+
+    private void resume() {
+        // A leg marked idle is still in the legs of its shard, while a detached one has to be added again
+        if (!attachment.compareAndSet(IDLE, ATTACHED) && attachment.compareAndSet(DETACHED, ATTACHED)) {
+            shard.reattach(this);
+        }
+    }
+
+    int getAttachment() {
+        return attachment.get();
+    }
+
+    boolean setAttachment(int expected, int attachment) {
+        return this.attachment.compareAndSet(expected, attachment);
+    }
+
+    long getLastActive() {
+        return lastActive;
+    }
+
+    void setLastActive(long lastActive) {
+        this.lastActive = lastActive;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    boolean isIdle() {
+        return queue.isEmpty();
+    }
+
+    int drain(int max) {
+        return queue.drain(detector, encoding, max);
+    }
+
+    /**
+     * @return the number of frames processed before taking the snapshot of a migrating leg.
+     */
+    int detach() {
+        final ByteBuffer snapshot = this.snapshot.getAndSet(null);
+        if (snapshot == null) {
+            queue.clear();
+            if (onDetach != null) {
+                onDetach.accept(detector);
+            }
+            return 0;
+        }
+
+        // The migrating caller hands the detector over once the events of the leg are delivered
+        int count = 0;
+        try {
+            for (int drained = drain(Integer.MAX_VALUE); drained > 0; drained = drain(Integer.MAX_VALUE)) {
+                count += drained;
+            }
+            detector.snapshot(snapshot);
+        } catch (RuntimeException e) {
+            this.migrationFailure = e;
+        } finally {
+            queue.clear();
+            migrated.countDown();
+        }
+        return count;
+    }
+
+}
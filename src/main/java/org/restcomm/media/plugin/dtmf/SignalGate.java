@@ -0,0 +1,83 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+/**
+ * Immutable parameters of the pre-filter that decides whether a window is worth running the Goertzel recurrences over.
+ * <p>
+ * Audio is split into blocks of {@link #getBlockLength()} samples. A block passes the gate when its energy can carry a tone of
+ * the configured volume and its zero-crossing count matches what a dual tone made of the analysed frequencies produces: a sum
+ * of two sinusoids crosses zero roughly as often as the stronger of them, that is between twice the lowest and twice the
+ * highest frequency per second. Both limits are widened so that twist and noise never push a real tone out of range.
+ */
+final class SignalGate {
+
+    // Length of a gate block, in milliseconds
+    private static final int BLOCK_DURATION = 10;
+
+    // Safety margins applied to the zero-crossing range
+    private static final double LOW_CROSSING_MARGIN = 0.7;
+    private static final double HIGH_CROSSING_MARGIN = 1.5;
+
+    private final int blockLength;
+    private final double minEnergy;
+    private final int minCrossings;
+    private final int maxCrossings;
+
+    /**
+     * @param threshold the minimum peak amplitude of a window that can carry a tone.
+     * @param bank the frequencies that are analysed.
+     */
+    SignalGate(double threshold, GoertzelFilterBank bank) {
+        int lowest = Integer.MAX_VALUE;
+        int highest = 0;
+        for (int i = 0; i < bank.getBins(); i++) {
+            lowest = Math.min(lowest, bank.getFrequency(i));
+            highest = Math.max(highest, bank.getFrequency(i));
+        }
+
+        final double seconds = BLOCK_DURATION / 1000.0;
+        this.blockLength = bank.getSampleRate() * BLOCK_DURATION / 1000;
+
+        // A dual tone whose peak reaches the threshold has a mean energy of at least threshold^2 / 4 per sample
+        this.minEnergy = blockLength * threshold * threshold / 8;
+        this.minCrossings = (int) Math.floor(2 * lowest * seconds * LOW_CROSSING_MARGIN);
+        this.maxCrossings = (int) Math.ceil(2 * highest * seconds * HIGH_CROSSING_MARGIN);
+    }
+
+    int getBlockLength() {
+        return blockLength;
+    }
+
+    double getMinEnergy() {
+        return minEnergy;
+    }
+
+    int getMinCrossings() {
+        return minCrossings;
+    }
+
+    int getMaxCrossings() {
+        return maxCrossings;
+    }
+
+}
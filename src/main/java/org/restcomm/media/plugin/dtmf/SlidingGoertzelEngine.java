@@ -0,0 +1,205 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sliding DFT engine that evaluates a window of the last <code>N</code> samples every <code>hop</code> samples.
+ * <p>
+ * Each bin is updated with the recurrence <code>Y(n) = e^(jw) * (Y(n-1) - x(n-N)) + x(n) * e^(-jw(N-1))</code>, which
+ * keeps the per sample cost constant regardless of how much consecutive windows overlap. The power of each bin equals the one
+ * a Goertzel filter would compute over the same window.
+ */
+class SlidingGoertzelEngine extends GoertzelEngine {
+
+    private final int N;
+    private final int hop;
+    private final int bins;
+
+    // Rotation applied to the previous state (e^jw) and to the incoming sample (e^-jw(N-1))
+    private final double[] rotationRe;
+    private final double[] rotationIm;
+    private final double[] inputRe;
+    private final double[] inputIm;
+
+    private final double[] re;
+    private final double[] im;
+
+    // Last N samples and the peak amplitude of each hop they span
+    private final short[] history;
+    private final int[] hopPeaks;
+    private long windowEnergy;
+    private int position;
+    private int filled;
+    private int hopOffset;
+    private int hopIndex;
+
+    /**
+     * @param bank the shared coefficients of the frequencies to analyse.
+     * @param hop the number of samples between two consecutive evaluations.
+     */
+    SlidingGoertzelEngine(GoertzelFilterBank bank, int hop) {
+        this.N = bank.getN();
+        this.hop = hop;
+        this.bins = bank.getBins();
+        this.rotationRe = bank.getRotationRe();
+        this.rotationIm = bank.getRotationIm();
+        this.inputRe = bank.getInputRe();
+        this.inputIm = bank.getInputIm();
+        this.re = new double[bins];
+        this.im = new double[bins];
+        this.history = new short[N];
+        this.hopPeaks = new int[(N + hop - 1) / hop];
+    }
+
+    @Override
+    boolean process(int sample) {
+        final int amplitude = Math.abs(sample);
+        if (amplitude > hopPeaks[hopIndex]) {
+            hopPeaks[hopIndex] = amplitude;
+        }
+
+        final int old = history[position];
+        history[position] = (short) sample;
+        windowEnergy += sample * sample - old * old;
+        if (++position == N) {
+            position = 0;
+        }
+
+        final double[] re = this.re;
+        final double[] im = this.im;
+        for (int i = 0; i < bins; i++) {
+            final double r = re[i] - old;
+            final double m = im[i];
+            re[i] = r * rotationRe[i] - m * rotationIm[i] + sample * inputRe[i];
+            im[i] = r * rotationIm[i] + m * rotationRe[i] + sample * inputIm[i];
+        }
+
+        if (filled < N) {
+            filled++;
+        }
+        if (++hopOffset < hop) {
+            return false;
+        }
+        if (filled < N) {
+            // The first window is not full yet, so there is nothing to evaluate
+            nextHop();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    double peak() {
+        int max = 0;
+        for (int i = 0; i < hopPeaks.length; i++) {
+            if (hopPeaks[i] > max) {
+                max = hopPeaks[i];
+            }
+        }
+        return max;
+    }
+
+    @Override
+    double energy() {
+        return (double) windowEnergy * N / 2;
+    }
+
+    @Override
+    void power(double[] power) {
+        for (int i = 0; i < bins; i++) {
+            power[i] = re[i] * re[i] + im[i] * im[i];
+        }
+    }
+
+    @Override
+    void nextWindow() {
+        nextHop();
+    }
+
+    private void nextHop() {
+        hopOffset = 0;
+        if (++hopIndex == hopPeaks.length) {
+            hopIndex = 0;
+        }
+        hopPeaks[hopIndex] = 0;
+    }
+
+    @Override
+    void reset() {
+        for (int i = 0; i < bins; i++) {
+            re[i] = 0;
+            im[i] = 0;
+        }
+        for (int i = 0; i < N; i++) {
+            history[i] = 0;
+        }
+        for (int i = 0; i < hopPeaks.length; i++) {
+            hopPeaks[i] = 0;
+        }
+        windowEnergy = 0;
+        position = 0;
+        filled = 0;
+        hopOffset = 0;
+        hopIndex = 0;
+    }
+
+    @Override
+    int getSnapshotSize() {
+        return 16 * bins + 2 * N + 4 * hopPeaks.length + 24;
+    }
+
+    @Override
+    void save(ByteBuffer buffer) {
+        for (int i = 0; i < bins; i++) {
+            buffer.putDouble(re[i]).putDouble(im[i]);
+        }
+        for (int i = 0; i < N; i++) {
+            buffer.putShort(history[i]);
+        }
+        for (int i = 0; i < hopPeaks.length; i++) {
+            buffer.putInt(hopPeaks[i]);
+        }
+        buffer.putLong(windowEnergy).putInt(position).putInt(filled).putInt(hopOffset).putInt(hopIndex);
+    }
+
+    @Override
+    void restore(ByteBuffer buffer) {
+        for (int i = 0; i < bins; i++) {
+            re[i] = buffer.getDouble();
+            im[i] = buffer.getDouble();
+        }
+        for (int i = 0; i < N; i++) {
+            history[i] = buffer.getShort();
+        }
+        for (int i = 0; i < hopPeaks.length; i++) {
+            hopPeaks[i] = buffer.getInt();
+        }
+        windowEnergy = buffer.getLong();
+        position = checkPosition(buffer.getInt(), N);
+        filled = checkPosition(buffer.getInt(), N + 1);
+        hopOffset = checkPosition(buffer.getInt(), hop);
+        hopIndex = checkPosition(buffer.getInt(), hopPeaks.length);
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.restcomm.media.core.resource.dtmf.detector.DtmfEvent;
+
+/**
+ * Families of tones a {@link GoertzelDtmfDetector} can recognise besides DTMF, in the same pass over the audio.
+ * <p>
+ * The frequencies of every enabled family are appended to the filter bank of the detector, so that a family costs one more
+ * Goertzel recurrence per frequency and sample, and nothing else while the leg is quiet. Each family decides on its tones with
+ * its own rules: a single frequency tone must hold most of the window energy, while the two frequencies of a dual tone must
+ * hold it together, stay within the twist limit of the family and stand above the other frequencies of the family. A tone
+ * is only reported once it lasted for the minimum duration of the family, which keeps speech from passing for signalling.
+ * <p>
+ * Tones are reported to observers under the names listed for each family. Their edges are accurate to a window, so families
+ * of short tones such as MF need a tone duration of about 40 milliseconds or a hop size.
+ */
+public enum ToneFamily {
+
+    /**
+     * Fax calling tone (CNG, 1100 Hz) and answer tone (CED, 2100 Hz), as specified by ITU-T T.30.
+     */
+    FAX(400, 0, new String[]{"CNG", "CED"}, null, 1100, 2100),
+
+    /**
+     * North American precise call progress tones: dial tone (DIAL, 350 + 440 Hz), ringback (RINGBACK, 440 + 480 Hz) and busy
+     * or reorder (BUSY, 480 + 620 Hz). Busy and reorder only differ by their cadence, which follows from the durations of
+     * consecutive tones.
+     */
+    CALL_PROGRESS(200, 6, new String[]{"DIAL", "RINGBACK", "BUSY"}, new int[]{0, 1, 1, 2, 2, 3}, 350, 440, 480, 620),
+
+    /**
+     * MF R1 line signalling, ITU-T Q.320: digits <code>MF0</code> to <code>MF9</code>, <code>MFKP</code>, <code>MFST</code>,
+     * <code>MFSTP</code>, <code>MFST2P</code> and <code>MFST3P</code>.
+     */
+    MF_R1(30, 6, new String[]{"MF1", "MF2", "MF3", "MF4", "MF5", "MF6", "MF7", "MF8", "MF9", "MF0", "MFST3P", "MFSTP", "MFKP",
+            "MFST2P", "MFST"}, twoOfSix(), 700, 900, 1100, 1300, 1500, 1700),
+
+    /**
+     * MFC R2 forward signals, ITU-T Q.441: <code>R2F1</code> to <code>R2F15</code>.
+     */
+    MF_R2_FORWARD(30, 7, signals("R2F"), twoOfSix(), 1380, 1500, 1620, 1740, 1860, 1980),
+
+    /**
+     * MFC R2 backward signals, ITU-T Q.441: <code>R2B1</code> to <code>R2B15</code>.
+     */
+    MF_R2_BACKWARD(30, 7, signals("R2B"), twoOfSix(), 1140, 1020, 900, 780, 660, 540);
+
+    private static final DtmfEvent[] events;
+
+    static {
+        int first = DtmfToneClassifier.TONES;
+        for (ToneFamily family : values()) {
+            family.firstTone = first;
+            first += family.names.length;
+        }
+        events = new DtmfEvent[first - DtmfToneClassifier.TONES];
+        for (ToneFamily family : values()) {
+            for (int i = 0; i < family.names.length; i++) {
+                events[family.firstTone - DtmfToneClassifier.TONES + i] = new DtmfEvent(family.names[i]);
+            }
+        }
+    }
+
+    private final int minDuration;
+    private final int maxTwist;
+    private final String[] names;
+    private final int[] pairs;
+    private final int[] frequencies;
+    private int firstTone;
+
+    /**
+     * @param minDuration how long a tone must last to be reported, in milliseconds.
+     * @param maxTwist how much stronger one frequency of a dual tone may be than the other, in dB.
+     * @param names the names of the tones.
+     * @param pairs the indexes of the two frequencies of each tone, or null if every frequency is a tone of its own.
+     * @param frequencies the frequencies of the family, in Hz.
+     */
+    ToneFamily(int minDuration, int maxTwist, String[] names, int[] pairs, int... frequencies) {
+        this.minDuration = minDuration;
+        this.maxTwist = maxTwist;
+        this.names = names;
+        this.pairs = pairs;
+        this.frequencies = frequencies;
+    }
+
+    /**
+     * Lists the fifteen combinations of two out of six frequencies in the order MF signals are numbered.
+     */
+    private static int[] twoOfSix() {
+        final int[] pairs = new int[30];
+        int k = 0;
+        for (int high = 1; high < 6; high++) {
+            for (int low = 0; low < high; low++) {
+                pairs[k++] = low;
+                pairs[k++] = high;
+            }
+        }
+        return pairs;
+    }
+
+    private static String[] signals(String prefix) {
+        final String[] names = new String[15];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = prefix + (i + 1);
+        }
+        return names;
+    }
+
+    /**
+     * @return how long a tone must last to be reported, in milliseconds.
+     */
+    int getMinDuration() {
+        return minDuration;
+    }
+
+    /**
+     * @return how much stronger one frequency of a dual tone may be than the other, in dB.
+     */
+    int getMaxTwist() {
+        return maxTwist;
+    }
+
+    /**
+     * @return whether every tone of the family is made of two frequencies, rather than one.
+     */
+    boolean isDual() {
+        return pairs != null;
+    }
+
+    /**
+     * @return the frequencies of the family, in Hz. The array must not be modified.
+     */
+    int[] getFrequencies() {
+        return frequencies;
+    }
+
+    /**
+     * @return the number of tones of the family.
+     */
+    int getToneCount() {
+        return names.length;
+    }
+
+    /**
+     * Gets a frequency of a dual tone.
+     *
+     * @param tone the index of the tone in the family.
+     * @param high whether to get the second frequency of the tone rather than the first one.
+     * @return the index of the frequency in {@link #getFrequencies()}.
+     */
+    int getFrequencyIndex(int tone, boolean high) {
+        return pairs[2 * tone + (high ? 1 : 0)];
+    }
+
+    /**
+     * Gets the identifier a tone of the family is reported under, which follows the identifiers of DTMF tones and of the
+     * tones of the families declared before.
+     *
+     * @param tone the index of the tone in the family.
+     * @return the tone identifier.
+     */
+    int getTone(int tone) {
+        return firstTone + tone;
+    }
+
+    /**
+     * @return the number of tone identifiers, DTMF tones included.
+     */
+    static int getTones() {
+        return DtmfToneClassifier.TONES + events.length;
+    }
+
+    /**
+     * Gets the name of a tone.
+     *
+     * @param tone the tone identifier, either a DTMF tone or one returned by {@link #getTone(int)}.
+     * @return the tone name.
+     */
+    static String getName(int tone) {
+        return getEvent(tone).getTone();
+    }
+
+    /**
+     * Gets the shared event that reports a tone.
+     *
+     * @param tone the tone identifier, either a DTMF tone or one returned by {@link #getTone(int)}.
+     * @return the event.
+     */
+    static DtmfEvent getEvent(int tone) {
+        return (tone < DtmfToneClassifier.TONES) ? DtmfToneClassifier.getEvent(tone) : events[tone - DtmfToneClassifier.TONES];
+    }
+
+    /**
+     * Looks up a tone by name.
+     *
+     * @param name the name of a DTMF digit or of a tone of any family.
+     * @return the tone identifier, or -1 if no tone has that name.
+     */
+    static int getTone(String name) {
+        final int tone = DtmfToneClassifier.getTone(name);
+        if (tone >= 0) {
+            return tone;
+        }
+        for (ToneFamily family : values()) {
+            for (int i = 0; i < family.names.length; i++) {
+                if (family.names[i].equals(name)) {
+                    return family.firstTone + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import java.util.Arrays;
+
+/**
+ * Decides which tone of a {@link ToneFamily}, if any, is present in a window given the bin powers of a filter bank that holds
+ * the frequencies of the family.
+ * <p>
+ * The tone must hold {@link #MIN_SHARE} of the window energy, which a tone filling the window does in full whatever its level,
+ * while speech and noise spread their energy far beyond the analysed frequencies. The two frequencies of a dual tone share
+ * the requirement, must stay within the twist limit of the family, and the next strongest frequency of the family must be
+ * weaker than both by the same limit.
+ */
+final class ToneFamilyClassifier {
+
+    // Share of the window energy a tone must hold
+    static final double MIN_SHARE = 0.6;
+
+    private final ToneFamily family;
+
+    // Bank bin of each frequency of the family
+    private final int[] bins;
+
+    // Tone made of each pair of frequencies (lower index first), or of each frequency for single frequency families
+    private final int[] tones;
+
+    private final double maxTwist;
+
+    /**
+     * @param family the tone family.
+     * @param bank a filter bank that holds every frequency of the family.
+     * @throws IllegalArgumentException if a frequency of the family is missing from the bank.
+     */
+    ToneFamilyClassifier(ToneFamily family, GoertzelFilterBank bank) {
+        final int[] frequencies = family.getFrequencies();
+        final int count = frequencies.length;
+        this.family = family;
+        this.bins = new int[count];
+        for (int i = 0; i < count; i++) {
+            bins[i] = bank.getBin(frequencies[i]);
+            if (bins[i] < 0) {
+                throw new IllegalArgumentException("Filter bank does not analyse " + frequencies[i] + " Hz");
+            }
+        }
+
+        if (family.isDual()) {
+            this.tones = new int[count * count];
+            Arrays.fill(tones, -1);
+            for (int tone = 0; tone < family.getToneCount(); tone++) {
+                final int a = family.getFrequencyIndex(tone, false);
+                final int b = family.getFrequencyIndex(tone, true);
+                tones[Math.min(a, b) * count + Math.max(a, b)] = tone;
+            }
+        } else {
+            this.tones = new int[count];
+            for (int i = 0; i < count; i++) {
+                tones[i] = i;
+            }
+        }
+        this.maxTwist = Math.pow(10, family.getMaxTwist() / 10.0);
+    }
+
+    ToneFamily getFamily() {
+        return family;
+    }
+
+    /**
+     * Searches a tone of the family.
+     *
+     * @param power the bin powers of the bank.
+     * @param energy the window energy, in the scale of the bin powers.
+     * @return the index of the tone in the family, or -1 if no tone is present.
+     */
+    int getTone(double[] power, double energy) {
+        if (energy <= 0) {
+            return -1;
+        }
+
+        // Three strongest frequencies of the family
+        int first = -1;
+        int second = -1;
+        double p1 = -1;
+        double p2 = -1;
+        double p3 = -1;
+        for (int i = 0; i < bins.length; i++) {
+            final double p = power[bins[i]];
+            if (p > p1) {
+                p3 = p2;
+                second = first;
+                p2 = p1;
+                first = i;
+                p1 = p;
+            } else if (p > p2) {
+                p3 = p2;
+                second = i;
+                p2 = p;
+            } else if (p > p3) {
+                p3 = p;
+            }
+        }
+
+        if (!family.isDual()) {
+            return (p1 >= energy * MIN_SHARE) ? tones[first] : -1;
+        }
+        if (p1 + p2 < energy * MIN_SHARE || p1 > p2 * maxTwist || p3 * maxTwist > p2) {
+            return -1;
+        }
+        return tones[Math.min(first, second) * bins.length + Math.max(first, second)];
+    }
+
+}
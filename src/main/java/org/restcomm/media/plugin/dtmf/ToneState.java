@@ -0,0 +1,52 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+/**
+ * States a {@link GoertzelDtmfDetector} goes through while it tracks a tone.
+ * <p>
+ * The state changes once per analysed window, and once per frame when the windows that follow a tone are dropped by the
+ * pre-filter.
+ */
+public enum ToneState {
+
+    /**
+     * No window is loud enough to carry a tone.
+     */
+    IDLE,
+
+    /**
+     * Windows are loud enough to carry a tone, but none was recognised as a DTMF tone yet.
+     */
+    CANDIDATE,
+
+    /**
+     * A tone is present and its begin was reported.
+     */
+    CONFIRMED,
+
+    /**
+     * The confirmed tone is no longer present. Its end is reported unless it resumes within the tone interval.
+     */
+    RELEASE
+
+}
@@ -0,0 +1,66 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.analyzer;
+
+/**
+ * A DTMF digit found in a recording, located by the first and the last analysis windows that carried it.
+ */
+public final class DetectedDigit {
+
+    private final String tone;
+    private final long startSample;
+    private final long endSample;
+
+    public DetectedDigit(String tone, long startSample, long endSample) {
+        this.tone = tone;
+        this.startSample = startSample;
+        this.endSample = endSample;
+    }
+
+    /**
+     * Gets the digit.
+     */
+    public String getTone() {
+        return tone;
+    }
+
+    /**
+     * Gets the offset of the first sample of the first window in which the digit was detected, counted from the start of
+     * the call.
+     */
+    public long getStartSample() {
+        return startSample;
+    }
+
+    /**
+     * Gets the offset of the sample that follows the last window that carried the digit, counted from the start of the call.
+     */
+    public long getEndSample() {
+        return endSample;
+    }
+
+    @Override
+    public String toString() {
+        return tone + " [" + startSample + ", " + endSample + ")";
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.analyzer;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Digits detected in one call of a recording, in order of appearance.
+ * <p>
+ * A call is a single RTP stream of a pcap capture or a single channel of a WAV file. Sample offsets are counted from the
+ * first sample of the call at its own sample rate.
+ */
+public final class DtmfTimeline {
+
+    private final Path recording;
+    private final String call;
+    private final int sampleRate;
+    private final long startTime;
+    private final List<DetectedDigit> digits;
+
+    DtmfTimeline(Path recording, String call, int sampleRate, long startTime) {
+        this.recording = recording;
+        this.call = call;
+        this.sampleRate = sampleRate;
+        this.startTime = startTime;
+        this.digits = new ArrayList<>();
+    }
+
+    void add(DetectedDigit digit) {
+        this.digits.add(digit);
+    }
+
+    /**
+     * Gets the file the call was read from.
+     */
+    public Path getRecording() {
+        return recording;
+    }
+
+    /**
+     * Gets a description of the call, unique within its recording.
+     */
+    public String getCall() {
+        return call;
+    }
+
+    /**
+     * Gets the sample rate of the call, in Hz.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the capture time of the first sample of the call, in microseconds since the epoch, or 0 if the recording does
+     * not carry it.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Gets the detected digits.
+     */
+    public List<DetectedDigit> getDigits() {
+        return Collections.unmodifiableList(digits);
+    }
+
+    /**
+     * Gets the detected digits as a single string.
+     */
+    public String getTones() {
+        final StringBuilder tones = new StringBuilder(digits.size());
+        for (DetectedDigit digit : digits) {
+            tones.append(digit.getTone());
+        }
+        return tones.toString();
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.analyzer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file through memory-mapped regions, so recordings of any size can be scanned without loading them into the heap.
+ * <p>
+ * Only one region is mapped at a time. Reading outside of it maps a new region starting at the requested position, which keeps
+ * every record of a file contiguous in the mapped buffer.
+ */
+final class MappedInput implements Closeable {
+
+    static final long DEFAULT_REGION_SIZE = 256L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final long regionSize;
+    private ByteOrder order;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long regionEnd;
+
+    MappedInput(Path path, long regionSize) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.regionSize = regionSize;
+        this.order = ByteOrder.BIG_ENDIAN;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Sets the byte order used to read multi-byte values from the mapped buffer.
+     */
+    void order(ByteOrder order) {
+        this.order = order;
+        if (region != null) {
+            region.order(order);
+        }
+    }
+
+    /**
+     * Maps a range of the file.
+     *
+     * @param position the position of the range in the file.
+     * @param length the length of the range.
+     * @return the index of the range in {@link #buffer()}.
+     * @throws EOFException if the range goes past the end of the file.
+     */
+    int seek(long position, int length) throws IOException {
+        if (position + length > size) {
+            throw new EOFException("Range " + position + "+" + length + " exceeds file size " + size);
+        }
+        if (region == null || position < regionStart || position + length > regionEnd) {
+            final long mapped = Math.min(size - position, Math.max(regionSize, length));
+            this.region = channel.map(FileChannel.MapMode.READ_ONLY, position, mapped);
+            this.region.order(order);
+            this.regionStart = position;
+            this.regionEnd = position + mapped;
+        }
+        return (int) (position - regionStart);
+    }
+
+    /**
+     * Gets the region mapped by the last call to {@link #seek(long, int)}.
+     */
+    MappedByteBuffer buffer() {
+        return region;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.region = null;
+        this.channel.close();
+    }
+
+}
@@ -0,0 +1,316 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.analyzer;
+
+import org.restcomm.media.plugin.dtmf.DtmfToneObserver;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetector;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorSettings;
+import org.restcomm.media.plugin.dtmf.SampleEncoding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scans the G.711 RTP streams of a libpcap capture.
+ * <p>
+ * Every RTP stream carrying PCMU or PCMA is a call of its own, identified by its SSRC and destination port. Packets are
+ * parsed in place from the mapped file and only the RTP payload is copied before detection. Sample offsets follow the RTP
+ * clock of the stream, so packets lost or suppressed during silence do not shift the digits that come after them.
+ */
+final class PcapScanner implements RecordingScanner {
+
+    private static final int MAGIC_MICROS = 0xa1b2c3d4;
+    private static final int MAGIC_MICROS_SWAPPED = 0xd4c3b2a1;
+    private static final int MAGIC_NANOS = 0xa1b23c4d;
+    private static final int MAGIC_NANOS_SWAPPED = 0x4d3cb2a1;
+
+    private static final int GLOBAL_HEADER = 24;
+    private static final int RECORD_HEADER = 16;
+
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int LINKTYPE_LINUX_SLL = 113;
+    private static final int LINKTYPE_IPV4 = 228;
+    private static final int LINKTYPE_IPV6 = 229;
+
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int ETHERTYPE_QINQ = 0x88a8;
+    private static final int PROTOCOL_UDP = 17;
+
+    private static final int PAYLOAD_PCMU = 0;
+    private static final int PAYLOAD_PCMA = 8;
+
+    private static final int SAMPLE_RATE = 8000;
+
+    // Timestamp jumps longer than this are taken as a restart of the RTP clock rather than as a gap
+    private static final int MAX_GAP = 60 * SAMPLE_RATE;
+
+    private final Path recording;
+    private final GoertzelDtmfDetectorSettings settings;
+
+    private final Map<Long, Leg> legs;
+    private final List<DtmfTimeline> timelines;
+    private final byte[] payload;
+    private int linkType;
+
+    PcapScanner(Path recording, GoertzelDtmfDetectorSettings settings) {
+        this.recording = recording;
+        this.settings = settings;
+        this.legs = new HashMap<>();
+        this.timelines = new ArrayList<>();
+        this.payload = new byte[65536];
+    }
+
+    /**
+     * Checks whether the first four bytes of a file, read in big-endian order, are a libpcap magic number.
+     */
+    static boolean isPcap(int magic) {
+        return magic == MAGIC_MICROS || magic == MAGIC_MICROS_SWAPPED || magic == MAGIC_NANOS || magic == MAGIC_NANOS_SWAPPED;
+    }
+
+    @Override
+    public List<DtmfTimeline> scan(MappedInput input) throws IOException {
+        input.order(ByteOrder.BIG_ENDIAN);
+        int index = input.seek(0, GLOBAL_HEADER);
+        final int magic = input.buffer().getInt(index);
+        if (!isPcap(magic)) {
+            throw new IOException("Not a pcap file: " + recording);
+        }
+        final boolean nanos = (magic == MAGIC_NANOS || magic == MAGIC_NANOS_SWAPPED);
+        if (magic == MAGIC_MICROS_SWAPPED || magic == MAGIC_NANOS_SWAPPED) {
+            input.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        index = input.seek(0, GLOBAL_HEADER);
+        this.linkType = input.buffer().getInt(index + 20) & 0xffff;
+
+        final long size = input.size();
+        long position = GLOBAL_HEADER;
+        while (position + RECORD_HEADER <= size) {
+            index = input.seek(position, RECORD_HEADER);
+            ByteBuffer buffer = input.buffer();
+            final long seconds = buffer.getInt(index) & 0xffffffffL;
+            final long fraction = buffer.getInt(index + 4) & 0xffffffffL;
+            final int captured = buffer.getInt(index + 8);
+            if (captured < 0 || position + RECORD_HEADER + captured > size) {
+                // Capture was cut short
+                break;
+            }
+
+            index = input.seek(position + RECORD_HEADER, captured);
+            packet(input.buffer(), index, index + captured, seconds * 1000000L + (nanos ? fraction / 1000 : fraction));
+            position += RECORD_HEADER + captured;
+        }
+        for (Leg leg : legs.values()) {
+            // Digits still held when the capture ends
+            leg.detector.flush();
+        }
+        return timelines;
+    }
+
+    /**
+     * Feeds a captured frame to the detector of its call, if it is a G.711 RTP packet.
+     *
+     * @param buffer the mapped file.
+     * @param start the index of the first byte of the frame.
+     * @param end the index that follows the last byte of the frame.
+     * @param time the capture time, in microseconds since the epoch.
+     */
+    private void packet(ByteBuffer buffer, int start, int end, long time) {
+        int ip;
+        switch (linkType) {
+            case LINKTYPE_ETHERNET:
+                ip = start + 14;
+                if (ip > end) {
+                    return;
+                }
+                int etherType = u16(buffer, ip - 2);
+                while ((etherType == ETHERTYPE_VLAN || etherType == ETHERTYPE_QINQ) && ip + 4 <= end) {
+                    etherType = u16(buffer, ip + 2);
+                    ip += 4;
+                }
+                break;
+            case LINKTYPE_LINUX_SLL:
+                ip = start + 16;
+                break;
+            case LINKTYPE_RAW:
+            case LINKTYPE_IPV4:
+            case LINKTYPE_IPV6:
+                ip = start;
+                break;
+            default:
+                return;
+        }
+        if (ip >= end) {
+            return;
+        }
+
+        // IP
+        final int version = (buffer.get(ip) & 0xff) >> 4;
+        final int udp;
+        if (version == 4) {
+            if (ip + 20 > end || buffer.get(ip + 9) != PROTOCOL_UDP || (u16(buffer, ip + 6) & 0x3fff) != 0) {
+                // Not UDP, or a fragment
+                return;
+            }
+            udp = ip + 4 * (buffer.get(ip) & 0x0f);
+        } else if (version == 6) {
+            if (ip + 40 > end || buffer.get(ip + 6) != PROTOCOL_UDP) {
+                return;
+            }
+            udp = ip + 40;
+        } else {
+            return;
+        }
+
+        // UDP, whose length leaves out the padding of short Ethernet frames
+        final int rtp = udp + 8;
+        if (rtp + 12 > end) {
+            return;
+        }
+        int payloadEnd = Math.min(end, udp + u16(buffer, udp + 4));
+
+        // RTP
+        final int flags = buffer.get(rtp) & 0xff;
+        if ((flags & 0xc0) != 0x80) {
+            return;
+        }
+        final SampleEncoding encoding;
+        switch (buffer.get(rtp + 1) & 0x7f) {
+            case PAYLOAD_PCMU:
+                encoding = SampleEncoding.ULAW;
+                break;
+            case PAYLOAD_PCMA:
+                encoding = SampleEncoding.ALAW;
+                break;
+            default:
+                return;
+        }
+        int payloadStart = rtp + 12 + 4 * (flags & 0x0f);
+        if ((flags & 0x10) != 0 && payloadStart + 4 <= payloadEnd) {
+            payloadStart += 4 + 4 * u16(buffer, payloadStart + 2);
+        }
+        if ((flags & 0x20) != 0 && payloadEnd > payloadStart) {
+            payloadEnd -= buffer.get(payloadEnd - 1) & 0xff;
+        }
+        final int length = payloadEnd - payloadStart;
+        if (length <= 0) {
+            return;
+        }
+
+        final long timestamp = u32(buffer, rtp + 4);
+        final long ssrc = u32(buffer, rtp + 8);
+        final int port = u16(buffer, udp + 2);
+        final Long key = (ssrc << 16) | port;
+        Leg leg = legs.get(key);
+        if (leg == null) {
+            leg = new Leg(describe(buffer, version, ip, udp, ssrc), time);
+            legs.put(key, leg);
+        } else {
+            final int delta = (int) (timestamp - leg.expected);
+            if (delta < 0) {
+                // Duplicate or late packet
+                return;
+            }
+            if (delta <= MAX_GAP) {
+                leg.skew += delta;
+            }
+        }
+        leg.expected = (timestamp + length) & 0xffffffffL;
+
+        buffer.position(payloadStart);
+        buffer.get(payload, 0, length);
+        leg.detector.detect(payload, 0, length, encoding, length * 1000L / SAMPLE_RATE);
+    }
+
+    private String describe(ByteBuffer buffer, int version, int ip, int udp, long ssrc) {
+        final StringBuilder call = new StringBuilder(64).append(String.format("ssrc=0x%08x ", ssrc));
+        if (version == 4) {
+            appendIPv4(call, buffer, ip + 12).append(':').append(u16(buffer, udp)).append(" > ");
+            appendIPv4(call, buffer, ip + 16).append(':').append(u16(buffer, udp + 2));
+        } else {
+            appendIPv6(call, buffer, ip + 8).append(':').append(u16(buffer, udp)).append(" > ");
+            appendIPv6(call, buffer, ip + 24).append(':').append(u16(buffer, udp + 2));
+        }
+        return call.toString();
+    }
+
+    private static StringBuilder appendIPv4(StringBuilder out, ByteBuffer buffer, int index) {
+        for (int i = 0; i < 4; i++) {
+            out.append(i == 0 ? "" : ".").append(buffer.get(index + i) & 0xff);
+        }
+        return out;
+    }
+
+    private static StringBuilder appendIPv6(StringBuilder out, ByteBuffer buffer, int index) {
+        out.append('[');
+        for (int i = 0; i < 8; i++) {
+            out.append(i == 0 ? "" : ":").append(Integer.toHexString(u16(buffer, index + 2 * i)));
+        }
+        return out.append(']');
+    }
+
+    private static int u16(ByteBuffer buffer, int index) {
+        return ((buffer.get(index) & 0xff) << 8) | (buffer.get(index + 1) & 0xff);
+    }
+
+    private static long u32(ByteBuffer buffer, int index) {
+        return ((long) u16(buffer, index) << 16) | u16(buffer, index + 2);
+    }
+
+    /**
+     * Detection state of one RTP stream.
+     */
+    private final class Leg implements DtmfToneObserver {
+
+        private final GoertzelDtmfDetector detector;
+        private final DtmfTimeline timeline;
+
+        // Next expected RTP timestamp, and samples the stream skipped so far
+        private long expected;
+        private long skew;
+
+        Leg(String call, long startTime) {
+            this.detector = new GoertzelDtmfDetector(settings);
+            this.detector.observeTones(this);
+            this.timeline = new DtmfTimeline(recording, call, SAMPLE_RATE, startTime);
+            timelines.add(timeline);
+        }
+
+        @Override
+        public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+            // Digits are recorded once their duration is known
+        }
+
+        @Override
+        public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+            timeline.add(new DetectedDigit(tone, onset + skew, onset + skew + duration));
+        }
+
+    }
+
+}
@@ -0,0 +1,277 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.analyzer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorSettings;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Scans stored call recordings for DTMF digits as fast as the CPU allows.
+ * <p>
+ * Recordings are libpcap captures of G.711 RTP streams or WAVE files at 8 kHz or more. They are read through memory-mapped regions,
+ * so archives of several gigabytes are scanned without being loaded into the heap, and a batch of recordings is spread over
+ * a fork-join pool, one recording per task. Every call of a recording gets its own detector and its own timeline of digits
+ * located with sample accuracy.
+ * <p>
+ * The analyzer can also be run from the command line, see {@link #main(String[])}.
+ */
+public class RecordingAnalyzer {
+
+    private static final Logger logger = LogManager.getLogger(RecordingAnalyzer.class);
+
+    private final GoertzelDtmfDetectorSettings settings;
+    private final ForkJoinPool pool;
+    private final long regionSize;
+
+    /**
+     * Creates an analyzer that runs batches in the common fork-join pool.
+     *
+     * @param settings the settings of the detectors.
+     */
+    public RecordingAnalyzer(GoertzelDtmfDetectorSettings settings) {
+        this(settings, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an analyzer that runs batches in the given fork-join pool.
+     *
+     * @param settings the settings of the detectors.
+     * @param pool the pool batches are analysed in.
+     */
+    public RecordingAnalyzer(GoertzelDtmfDetectorSettings settings, ForkJoinPool pool) {
+        this(settings, pool, MappedInput.DEFAULT_REGION_SIZE);
+    }
+
+    RecordingAnalyzer(GoertzelDtmfDetectorSettings settings, ForkJoinPool pool, long regionSize) {
+        this.settings = new GoertzelDtmfDetectorSettings(settings);
+        this.pool = pool;
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Scans a single recording in the calling thread.
+     *
+     * @param recording the recording.
+     * @return the timeline of every call found in the recording.
+     * @throws IOException if the recording cannot be read or its format is not supported.
+     */
+    public List<DtmfTimeline> analyze(Path recording) throws IOException {
+        try (MappedInput input = new MappedInput(recording, regionSize)) {
+            return scanner(recording, input).scan(input);
+        }
+    }
+
+    /**
+     * Scans a batch of recordings in parallel.
+     * <p>
+     * Recordings that cannot be read are logged and skipped, so a damaged file does not abort the whole batch.
+     *
+     * @param recordings the recordings.
+     * @return the timelines of all calls, in the order of the recordings.
+     */
+    public List<DtmfTimeline> analyze(List<Path> recordings) {
+        if (recordings.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return pool.invoke(new AnalysisTask(recordings, 0, recordings.size()));
+    }
+
+    private RecordingScanner scanner(Path recording, MappedInput input) throws IOException {
+        if (input.size() >= 4) {
+            final int index = input.seek(0, 4);
+            final int magic = input.buffer().getInt(index);
+            if (magic == Integer.reverseBytes(WavScanner.RIFF)) {
+                return new WavScanner(recording, settings);
+            }
+            if (PcapScanner.isPcap(magic)) {
+                return new PcapScanner(recording, settings);
+            }
+        }
+        throw new IOException("Unsupported recording format: " + recording);
+    }
+
+    /**
+     * Analyses a range of a batch, splitting it until every task holds a single recording.
+     */
+    private final class AnalysisTask extends RecursiveTask<List<DtmfTimeline>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> recordings;
+        private final int from;
+        private final int to;
+
+        AnalysisTask(List<Path> recordings, int from, int to) {
+            this.recordings = recordings;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<DtmfTimeline> compute() {
+            if (to - from == 1) {
+                final Path recording = recordings.get(from);
+                try {
+                    return analyze(recording);
+                } catch (IOException e) {
+                    logger.warn("Could not analyse recording " + recording, e);
+                    return Collections.emptyList();
+                }
+            }
+
+            final int middle = (from + to) >>> 1;
+            final AnalysisTask head = new AnalysisTask(recordings, from, middle);
+            head.fork();
+            final List<DtmfTimeline> tail = new AnalysisTask(recordings, middle, to).compute();
+            final List<DtmfTimeline> timelines = new ArrayList<>(head.join());
+            timelines.addAll(tail);
+            return timelines;
+        }
+
+    }
+
+    /**
+     * Writes timelines as tab separated lines: recording, call, digit, first sample and sample after the detection window.
+     * Calls without digits are left out.
+     *
+     * @param timelines the timelines.
+     * @param out the destination.
+     * @throws IOException if the destination cannot be written.
+     */
+    public static void write(List<DtmfTimeline> timelines, Appendable out) throws IOException {
+        for (DtmfTimeline timeline : timelines) {
+            for (DetectedDigit digit : timeline.getDigits()) {
+                out.append(timeline.getRecording().toString()).append('\t').append(timeline.getCall()).append('\t')
+                        .append(digit.getTone()).append('\t').append(Long.toString(digit.getStartSample())).append('\t')
+                        .append(Long.toString(digit.getEndSample())).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Scans recordings from the command line.
+     * <p>
+     * <code>RecordingAnalyzer [-o output-dir] [-v tone-volume] [-d tone-duration] [-i tone-interval] [-p parallelism]
+     * file-or-directory...</code>
+     * <p>
+     * Directories are searched recursively for <code>.pcap</code> and <code>.wav</code> files. Timelines are printed to the
+     * standard output, or written to one <code>.dtmf.tsv</code> file per recording in the output directory.
+     *
+     * @param args the command line arguments.
+     */
+    public static void main(String[] args) throws IOException {
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        Path output = null;
+        final List<Path> recordings = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (arg.startsWith("-") && i + 1 == args.length) {
+                usage(System.err);
+                System.exit(1);
+            }
+            switch (arg) {
+                case "-o":
+                    output = Paths.get(args[++i]);
+                    break;
+                case "-v":
+                    settings.setToneVolume(Integer.parseInt(args[++i]));
+                    break;
+                case "-d":
+                    settings.setToneDuration(Integer.parseInt(args[++i]));
+                    break;
+                case "-i":
+                    settings.setToneInterval(Integer.parseInt(args[++i]));
+                    break;
+                case "-p":
+                    parallelism = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    collect(Paths.get(arg), recordings);
+                    break;
+            }
+        }
+        if (recordings.isEmpty()) {
+            usage(System.err);
+            System.exit(1);
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final List<DtmfTimeline> timelines = new RecordingAnalyzer(settings, pool).analyze(recordings);
+            if (output == null) {
+                write(timelines, System.out);
+                System.out.flush();
+                return;
+            }
+
+            Files.createDirectories(output);
+            for (Path recording : recordings) {
+                final List<DtmfTimeline> calls = timelines.stream().filter(t -> t.getRecording().equals(recording))
+                        .collect(Collectors.toList());
+                final Path file = output.resolve(recording.getFileName() + ".dtmf.tsv");
+                try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    write(calls, writer);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void collect(Path path, List<Path> recordings) throws IOException {
+        if (!Files.isDirectory(path)) {
+            recordings.add(path);
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            files.filter(Files::isRegularFile).filter(file -> {
+                final String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+                return name.endsWith(".pcap") || name.endsWith(".wav");
+            }).sorted().forEach(recordings::add);
+        }
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: RecordingAnalyzer [-o output-dir] [-v tone-volume] [-d tone-duration] [-i tone-interval]"
+                + " [-p parallelism] file-or-directory...");
+    }
+
+}
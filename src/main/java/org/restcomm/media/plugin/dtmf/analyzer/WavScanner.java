@@ -0,0 +1,225 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.analyzer;
+
+import org.restcomm.media.plugin.dtmf.DtmfToneObserver;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetector;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorSettings;
+import org.restcomm.media.plugin.dtmf.SampleEncoding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scans a RIFF WAVE file holding 16-bit linear PCM, A-law or mu-law audio at 8 kHz or more.
+ * <p>
+ * Every channel is a call of its own. Mono linear PCM is handed to the detector straight from the mapped file; other layouts
+ * are de-interleaved one block at a time. Unless the settings ask for a decimation factor, wideband audio is decimated by the
+ * largest factor that keeps the analysis at 8 kHz or more.
+ */
+final class WavScanner implements RecordingScanner {
+
+    // Chunk identifiers, as little-endian integers
+    static final int RIFF = 0x46464952;
+    private static final int WAVE = 0x45564157;
+    private static final int FMT = 0x20746d66;
+    private static final int DATA = 0x61746164;
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_ALAW = 6;
+    private static final int FORMAT_MULAW = 7;
+    private static final int FORMAT_EXTENSIBLE = 0xfffe;
+
+    private static final int MIN_SAMPLE_RATE = 8000;
+    private static final int BLOCK_DURATION = 20;
+
+    private final Path recording;
+    private final GoertzelDtmfDetectorSettings settings;
+
+    WavScanner(Path recording, GoertzelDtmfDetectorSettings settings) {
+        this.recording = recording;
+        this.settings = settings;
+    }
+
+    @Override
+    public List<DtmfTimeline> scan(MappedInput input) throws IOException {
+        input.order(ByteOrder.LITTLE_ENDIAN);
+        int index = input.seek(0, 12);
+        ByteBuffer buffer = input.buffer();
+        if (buffer.getInt(index) != RIFF || buffer.getInt(index + 8) != WAVE) {
+            throw new IOException("Not a WAVE file: " + recording);
+        }
+
+        // Walk the chunks up to the audio data
+        int format = -1;
+        int channels = 0;
+        int sampleRate = 0;
+        int blockAlign = 0;
+        int bitsPerSample = 0;
+        long dataStart = -1;
+        long dataEnd = -1;
+        long position = 12;
+        while (dataStart < 0 && position + 8 <= input.size()) {
+            index = input.seek(position, 8);
+            final int id = input.buffer().getInt(index);
+            final long size = input.buffer().getInt(index + 4) & 0xffffffffL;
+            if (id == FMT && size >= 16) {
+                index = input.seek(position + 8, (int) Math.min(size, 40));
+                buffer = input.buffer();
+                format = buffer.getShort(index) & 0xffff;
+                channels = buffer.getShort(index + 2) & 0xffff;
+                sampleRate = buffer.getInt(index + 4);
+                blockAlign = buffer.getShort(index + 12) & 0xffff;
+                bitsPerSample = buffer.getShort(index + 14) & 0xffff;
+                if (format == FORMAT_EXTENSIBLE && size >= 40) {
+                    // Format code is the first field of the sub-format GUID
+                    format = buffer.getShort(index + 24) & 0xffff;
+                }
+            } else if (id == DATA) {
+                dataStart = position + 8;
+                // Streaming writers leave the size unset
+                dataEnd = Math.min(dataStart + size, input.size());
+            }
+            position += 8 + size + (size & 1);
+        }
+
+        if (format < 0 || dataStart < 0) {
+            throw new IOException("WAVE file has no audio: " + recording);
+        }
+        if (sampleRate < MIN_SAMPLE_RATE) {
+            throw new IOException("Unsupported sample rate " + sampleRate + " Hz: " + recording);
+        }
+        final SampleEncoding encoding;
+        if (format == FORMAT_PCM && bitsPerSample == 16) {
+            encoding = SampleEncoding.LINEAR;
+        } else if (format == FORMAT_ALAW && bitsPerSample == 8) {
+            encoding = SampleEncoding.ALAW;
+        } else if (format == FORMAT_MULAW && bitsPerSample == 8) {
+            encoding = SampleEncoding.ULAW;
+        } else {
+            throw new IOException("Unsupported audio format " + format + " (" + bitsPerSample + " bits): " + recording);
+        }
+        if (channels < 1 || blockAlign != channels * (bitsPerSample / 8)) {
+            throw new IOException("Inconsistent WAVE format: " + recording);
+        }
+
+        final GoertzelDtmfDetectorSettings channelSettings = new GoertzelDtmfDetectorSettings(settings).setSampleRate(sampleRate);
+        if (settings.getDecimation() == 1) {
+            channelSettings.setDecimation(decimation(sampleRate));
+        }
+
+        final List<DtmfTimeline> timelines = new ArrayList<>(channels);
+        final Channel[] legs = new Channel[channels];
+        for (int i = 0; i < channels; i++) {
+            legs[i] = new Channel(channels == 1 ? "mono" : "channel " + i, channelSettings);
+            timelines.add(legs[i].timeline);
+        }
+        stream(input, dataStart, dataEnd, legs, encoding, blockAlign, sampleRate);
+        for (Channel leg : legs) {
+            // Digits still held when the recording ends
+            leg.detector.flush();
+        }
+        return timelines;
+    }
+
+    /**
+     * Gets the largest factor a sample rate can be decimated by while staying at 8 kHz or more.
+     */
+    static int decimation(int sampleRate) {
+        for (int factor = sampleRate / MIN_SAMPLE_RATE; factor > 1; factor--) {
+            if (sampleRate % factor == 0) {
+                return factor;
+            }
+        }
+        return 1;
+    }
+
+    private void stream(MappedInput input, long dataStart, long dataEnd, Channel[] legs, SampleEncoding encoding, int blockAlign,
+            int sampleRate) throws IOException {
+        final boolean linear = (encoding == SampleEncoding.LINEAR);
+        final int blockSamples = sampleRate * BLOCK_DURATION / 1000;
+        final short[] samples = new short[blockSamples];
+        final byte[] codes = new byte[blockSamples];
+        final int blockSize = blockSamples * blockAlign;
+
+        for (long position = dataStart; position + blockAlign <= dataEnd; position += blockSize) {
+            final int count = (int) Math.min(blockSamples, (dataEnd - position) / blockAlign);
+            final int length = count * blockAlign;
+            final int index = input.seek(position, length);
+            final ByteBuffer buffer = input.buffer();
+            final long duration = count * 1000L / sampleRate;
+
+            if (linear && legs.length == 1) {
+                buffer.limit(index + length).position(index);
+                legs[0].detector.detect(buffer, duration);
+                buffer.clear();
+                continue;
+            }
+
+            for (int channel = 0; channel < legs.length; channel++) {
+                final GoertzelDtmfDetector detector = legs[channel].detector;
+                if (linear) {
+                    for (int i = 0, k = index + 2 * channel; i < count; i++, k += blockAlign) {
+                        samples[i] = buffer.getShort(k);
+                    }
+                    detector.detect(samples, 0, count, duration);
+                } else {
+                    for (int i = 0, k = index + channel; i < count; i++, k += blockAlign) {
+                        codes[i] = buffer.get(k);
+                    }
+                    detector.detect(codes, 0, count, encoding, duration);
+                }
+            }
+        }
+    }
+
+    /**
+     * Detection state of one channel.
+     */
+    private final class Channel implements DtmfToneObserver {
+
+        private final GoertzelDtmfDetector detector;
+        private final DtmfTimeline timeline;
+
+        Channel(String call, GoertzelDtmfDetectorSettings settings) {
+            this.detector = new GoertzelDtmfDetector(settings);
+            this.detector.observeTones(this);
+            this.timeline = new DtmfTimeline(recording, call, settings.getSampleRate(), 0);
+        }
+
+        @Override
+        public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+            // Digits are recorded once their duration is known
+        }
+
+        @Override
+        public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+            timeline.add(new DetectedDigit(tone, onset, onset + duration));
+        }
+
+    }
+
+}
@@ -21,11 +21,17 @@
 
 package org.restcomm.media.plugin.dtmf.spring;
 
+import org.restcomm.media.plugin.dtmf.OverflowPolicy;
+import org.restcomm.media.plugin.dtmf.SampleEncoding;
+import org.restcomm.media.plugin.dtmf.ToneFamily;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Vladimir Morosev (vladimir.morosev@telestax.com) created on 15/03/2018
  */
@@ -38,11 +44,57 @@ public class GoertzelDtmfDetectorConfiguration {
     private int toneVolume;
     private int toneDuration;
     private int toneInterval;
+    private int hopSize;
+    private boolean gating;
+    private boolean fixedPoint;
+    private SampleEncoding encoding;
+    private boolean metrics;
+    private int sampleRate;
+    private int decimation;
+    private int maxTwist;
+    private int maxReverseTwist;
+    private int minSignalToNoise;
+    private int minRelativeEnergy;
+    private int hibernateAfter;
+    private List<ToneFamily> toneFamilies;
+    private int eventSampling;
+    private int cascadeDuration;
+    private boolean cascadeBackdating;
+    private boolean asyncDispatch;
+    private int dispatchCapacity;
+    private int dispatchBatchSize;
+    private OverflowPolicy dispatchOverflow;
+    private int shards;
+    private int shardQueueCapacity;
+    private int shardIdleTimeout;
 
     public GoertzelDtmfDetectorConfiguration() {
         this.toneVolume = -30;
         this.toneDuration = 80;
         this.toneInterval = 20;
+        this.hopSize = 0;
+        this.gating = true;
+        this.fixedPoint = false;
+        this.encoding = SampleEncoding.LINEAR;
+        this.metrics = true;
+        this.sampleRate = 8000;
+        this.decimation = 1;
+        this.maxTwist = 4;
+        this.maxReverseTwist = 8;
+        this.minSignalToNoise = 10;
+        this.minRelativeEnergy = 5;
+        this.hibernateAfter = 5000;
+        this.toneFamilies = new ArrayList<>();
+        this.eventSampling = 0;
+        this.cascadeDuration = 0;
+        this.cascadeBackdating = true;
+        this.asyncDispatch = false;
+        this.dispatchCapacity = 4096;
+        this.dispatchBatchSize = 64;
+        this.dispatchOverflow = OverflowPolicy.DROP;
+        this.shards = 0;
+        this.shardQueueCapacity = 32;
+        this.shardIdleTimeout = 10000;
     }
 
     public int getToneVolume() {
@@ -68,4 +120,189 @@ public class GoertzelDtmfDetectorConfiguration {
     public void setToneInterval(int toneInterval) {
         this.toneInterval = toneInterval;
     }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    public void setHopSize(int hopSize) {
+        this.hopSize = hopSize;
+    }
+
+    public boolean isGating() {
+        return gating;
+    }
+
+    public void setGating(boolean gating) {
+        this.gating = gating;
+    }
+
+    public boolean isFixedPoint() {
+        return fixedPoint;
+    }
+
+    public void setFixedPoint(boolean fixedPoint) {
+        this.fixedPoint = fixedPoint;
+    }
+
+    public SampleEncoding getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(SampleEncoding encoding) {
+        this.encoding = encoding;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(boolean metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public int getDecimation() {
+        return decimation;
+    }
+
+    public void setDecimation(int decimation) {
+        this.decimation = decimation;
+    }
+
+    public int getMaxTwist() {
+        return maxTwist;
+    }
+
+    public void setMaxTwist(int maxTwist) {
+        this.maxTwist = maxTwist;
+    }
+
+    public int getMaxReverseTwist() {
+        return maxReverseTwist;
+    }
+
+    public void setMaxReverseTwist(int maxReverseTwist) {
+        this.maxReverseTwist = maxReverseTwist;
+    }
+
+    public int getMinSignalToNoise() {
+        return minSignalToNoise;
+    }
+
+    public void setMinSignalToNoise(int minSignalToNoise) {
+        this.minSignalToNoise = minSignalToNoise;
+    }
+
+    public int getMinRelativeEnergy() {
+        return minRelativeEnergy;
+    }
+
+    public void setMinRelativeEnergy(int minRelativeEnergy) {
+        this.minRelativeEnergy = minRelativeEnergy;
+    }
+
+    public int getHibernateAfter() {
+        return hibernateAfter;
+    }
+
+    public void setHibernateAfter(int hibernateAfter) {
+        this.hibernateAfter = hibernateAfter;
+    }
+
+    public List<ToneFamily> getToneFamilies() {
+        return toneFamilies;
+    }
+
+    public void setToneFamilies(List<ToneFamily> toneFamilies) {
+        this.toneFamilies = toneFamilies;
+    }
+
+    public int getEventSampling() {
+        return eventSampling;
+    }
+
+    public void setEventSampling(int eventSampling) {
+        this.eventSampling = eventSampling;
+    }
+
+    public int getCascadeDuration() {
+        return cascadeDuration;
+    }
+
+    public void setCascadeDuration(int cascadeDuration) {
+        this.cascadeDuration = cascadeDuration;
+    }
+
+    public boolean isCascadeBackdating() {
+        return cascadeBackdating;
+    }
+
+    public void setCascadeBackdating(boolean cascadeBackdating) {
+        this.cascadeBackdating = cascadeBackdating;
+    }
+
+    public boolean isAsyncDispatch() {
+        return asyncDispatch;
+    }
+
+    public void setAsyncDispatch(boolean asyncDispatch) {
+        this.asyncDispatch = asyncDispatch;
+    }
+
+    public int getDispatchCapacity() {
+        return dispatchCapacity;
+    }
+
+    public void setDispatchCapacity(int dispatchCapacity) {
+        this.dispatchCapacity = dispatchCapacity;
+    }
+
+    public int getDispatchBatchSize() {
+        return dispatchBatchSize;
+    }
+
+    public void setDispatchBatchSize(int dispatchBatchSize) {
+        this.dispatchBatchSize = dispatchBatchSize;
+    }
+
+    public OverflowPolicy getDispatchOverflow() {
+        return dispatchOverflow;
+    }
+
+    public void setDispatchOverflow(OverflowPolicy dispatchOverflow) {
+        this.dispatchOverflow = dispatchOverflow;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    public int getShardQueueCapacity() {
+        return shardQueueCapacity;
+    }
+
+    public void setShardQueueCapacity(int shardQueueCapacity) {
+        this.shardQueueCapacity = shardQueueCapacity;
+    }
+
+    public int getShardIdleTimeout() {
+        return shardIdleTimeout;
+    }
+
+    public void setShardIdleTimeout(int shardIdleTimeout) {
+        this.shardIdleTimeout = shardIdleTimeout;
+    }
+
 }
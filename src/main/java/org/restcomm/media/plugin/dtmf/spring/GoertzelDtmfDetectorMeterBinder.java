@@ -0,0 +1,135 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.spring;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.restcomm.media.plugin.dtmf.DtmfDetectorShards;
+import org.restcomm.media.plugin.dtmf.DtmfEventDispatcher;
+import org.restcomm.media.plugin.dtmf.GateStage;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the aggregate metrics of the Goertzel DTMF detectors, and of their event dispatcher and shards if any, as
+ * Micrometer meters.
+ * <p>
+ * Only active when Micrometer is on the class path. Meters read the detector counters when the registry is scraped, so
+ * detection itself is not slowed down by the registry.
+ */
+@Component
+@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+@ConditionalOnBean(GoertzelDtmfDetectorSpringProvider.class)
+public class GoertzelDtmfDetectorMeterBinder implements MeterBinder {
+
+    private static final String PREFIX = "media.plugin.dtmf.goertzel";
+    private static final String DIGITS = "123A456B789C*0#D";
+
+    private final GoertzelDtmfDetectorSpringProvider provider;
+
+    public GoertzelDtmfDetectorMeterBinder(GoertzelDtmfDetectorSpringProvider provider) {
+        this.provider = provider;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        final GoertzelDtmfDetectorMetrics metrics = provider.getMetrics();
+        if (metrics != null) {
+            bindDetectors(registry, metrics);
+        }
+        final DtmfEventDispatcher dispatcher = provider.getDispatcher();
+        if (dispatcher != null) {
+            bindDispatcher(registry, dispatcher);
+        }
+        final DtmfDetectorShards shards = provider.getShards();
+        if (shards != null) {
+            bindShards(registry, shards);
+        }
+    }
+
+    private void bindDetectors(MeterRegistry registry, GoertzelDtmfDetectorMetrics metrics) {
+        FunctionCounter.builder(PREFIX + ".frames", metrics, GoertzelDtmfDetectorMetrics::getProcessedFrames)
+                .description("Frames handed to the detectors").register(registry);
+        FunctionCounter.builder(PREFIX + ".windows.analysed", metrics, GoertzelDtmfDetectorMetrics::getAnalysedWindows)
+                .description("Windows that went through the Goertzel analysis").register(registry);
+        for (GateStage stage : GateStage.values()) {
+            FunctionCounter.builder(PREFIX + ".windows.gated", metrics, m -> m.getRejectedWindows(stage))
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .description("Windows dropped by the pre-filter").register(registry);
+        }
+        FunctionCounter.builder(PREFIX + ".candidates.rejected", metrics, GoertzelDtmfDetectorMetrics::getRejectedCandidates)
+                .description("Windows loud enough to be classified that held no DTMF tone").register(registry);
+        Gauge.builder(PREFIX + ".detectors.active", metrics, GoertzelDtmfDetectorMetrics::getActiveDetectors)
+                .description("Detectors holding their analysis state").register(registry);
+        FunctionCounter.builder(PREFIX + ".hibernations", metrics, GoertzelDtmfDetectorMetrics::getHibernations)
+                .description("Times a detector released its analysis state").register(registry);
+        FunctionCounter.builder(PREFIX + ".detectors.abandoned", metrics, GoertzelDtmfDetectorMetrics::getAbandonedDetectors)
+                .description("Detectors garbage collected while holding their analysis state").register(registry);
+        for (int i = 0; i < DIGITS.length(); i++) {
+            final String digit = String.valueOf(DIGITS.charAt(i));
+            FunctionCounter.builder(PREFIX + ".tones", metrics, m -> m.getDetectedTones(digit)).tag("digit", digit)
+                    .description("Detected DTMF tones").register(registry);
+        }
+
+        FunctionTimer.builder(PREFIX + ".latency", metrics, GoertzelDtmfDetectorMetrics::getDetectedTones,
+                GoertzelDtmfDetectorMetrics::getLatencySum, TimeUnit.MILLISECONDS)
+                .description("Time from the first loud window to the detection of a tone").register(registry);
+        final long[] bounds = metrics.getLatencyBounds();
+        for (int i = 0; i < bounds.length; i++) {
+            final int bucket = i;
+            final String le = (bounds[i] == Long.MAX_VALUE) ? "+Inf" : Long.toString(bounds[i]);
+            FunctionCounter.builder(PREFIX + ".latency.bucket", metrics, m -> m.getLatencyCount(bucket)).tag("le", le)
+                    .baseUnit("milliseconds").description("Detections per latency bucket").register(registry);
+        }
+    }
+
+    private void bindDispatcher(MeterRegistry registry, DtmfEventDispatcher dispatcher) {
+        Gauge.builder(PREFIX + ".dispatch.pending", dispatcher, DtmfEventDispatcher::getPending)
+                .description("Events waiting to be delivered to observers").register(registry);
+        FunctionCounter.builder(PREFIX + ".dispatch.delivered", dispatcher, DtmfEventDispatcher::getDelivered)
+                .description("Events delivered to observers by the dispatcher thread").register(registry);
+        FunctionCounter.builder(PREFIX + ".dispatch.batches", dispatcher, DtmfEventDispatcher::getBatches)
+                .description("Batches of events delivered by the dispatcher thread").register(registry);
+        FunctionCounter.builder(PREFIX + ".dispatch.overflow", dispatcher, DtmfEventDispatcher::getDropped).tag("policy", "drop")
+                .description("Events that did not fit in the dispatch buffer").register(registry);
+        FunctionCounter.builder(PREFIX + ".dispatch.overflow", dispatcher, DtmfEventDispatcher::getInlined).tag("policy", "inline")
+                .description("Events that did not fit in the dispatch buffer").register(registry);
+    }
+
+    private void bindShards(MeterRegistry registry, DtmfDetectorShards shards) {
+        Gauge.builder(PREFIX + ".shards.legs", shards, DtmfDetectorShards::getLegs)
+                .description("Legs attached to the detection shards").register(registry);
+        FunctionCounter.builder(PREFIX + ".shards.frames", shards, DtmfDetectorShards::getProcessedFrames)
+                .description("Frames analysed by the detection shards").register(registry);
+        FunctionCounter.builder(PREFIX + ".shards.dropped", shards, DtmfDetectorShards::getDroppedFrames)
+                .description("Frames dropped because the queue of their leg was full").register(registry);
+    }
+
+}
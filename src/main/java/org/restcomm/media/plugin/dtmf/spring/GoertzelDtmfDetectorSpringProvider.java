@@ -23,10 +23,21 @@ package org.restcomm.media.plugin.dtmf.spring;
 
 import org.restcomm.media.core.resource.dtmf.detector.DtmfDetector;
 import org.restcomm.media.core.resource.dtmf.detector.DtmfDetectorProvider;
+import org.restcomm.media.plugin.dtmf.DtmfDetectorShards;
+import org.restcomm.media.plugin.dtmf.DtmfEventDispatcher;
 import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetector;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorMetrics;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorFactory;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorSettings;
+import org.restcomm.media.plugin.dtmf.ShardedDtmfDetector;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Goertzel DTMF detector implemented as Spring Boot plugin component.
  *
@@ -36,19 +47,176 @@ import org.springframework.stereotype.Component;
 @ConditionalOnBean(GoertzelDtmfDetectorSpringProvider.class)
 public class GoertzelDtmfDetectorSpringProvider implements DtmfDetectorProvider {
 
-    private int toneVolume;
-    private int toneDuration;
-    private int toneInterval;
+    private static final long MIGRATION_TIMEOUT_MILLIS = 1000;
+
+    private final GoertzelDtmfDetectorFactory factory;
+    private final DtmfDetectorShards shards;
+    private final AtomicLong legs;
 
     public GoertzelDtmfDetectorSpringProvider(GoertzelDtmfDetectorConfiguration configuration) {
-        this.toneVolume = configuration.getToneVolume();
-        this.toneDuration = configuration.getToneDuration();
-        this.toneInterval = configuration.getToneInterval();
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings()
+                .setToneVolume(configuration.getToneVolume())
+                .setToneDuration(configuration.getToneDuration())
+                .setToneInterval(configuration.getToneInterval())
+                .setHopSize(configuration.getHopSize())
+                .setGating(configuration.isGating())
+                .setFixedPoint(configuration.isFixedPoint())
+                .setEncoding(configuration.getEncoding())
+                .setSampleRate(configuration.getSampleRate())
+                .setDecimation(configuration.getDecimation())
+                .setMaxTwist(configuration.getMaxTwist())
+                .setMaxReverseTwist(configuration.getMaxReverseTwist())
+                .setMinSignalToNoise(configuration.getMinSignalToNoise())
+                .setMinRelativeEnergy(configuration.getMinRelativeEnergy())
+                .setHibernateAfter(configuration.getHibernateAfter())
+                .setToneFamilies(configuration.getToneFamilies())
+                .setEventSampling(configuration.getEventSampling())
+                .setCascadeDuration(configuration.getCascadeDuration())
+                .setCascadeBackdating(configuration.isCascadeBackdating());
+        final GoertzelDtmfDetectorMetrics metrics = configuration.isMetrics() ? new GoertzelDtmfDetectorMetrics() : null;
+        final DtmfEventDispatcher dispatcher = configuration.isAsyncDispatch() ? new DtmfEventDispatcher(
+                configuration.getDispatchCapacity(), configuration.getDispatchBatchSize(), configuration.getDispatchOverflow())
+                : null;
+        if (dispatcher != null) {
+            dispatcher.start();
+        }
+        this.factory = new GoertzelDtmfDetectorFactory(settings, metrics, dispatcher);
+        this.shards = (configuration.getShards() > 0)
+                ? new DtmfDetectorShards(configuration.getShards(), configuration.getShardQueueCapacity(),
+                        configuration.getShardIdleTimeout()) : null;
+        if (shards != null) {
+            shards.start();
+        }
+        this.legs = new AtomicLong();
     }
 
+    /**
+     * Provides the detector of a new leg. When shards are configured, the detector is attached to one of them and frames are
+     * analysed on the shard thread.
+     * <p>
+     * Detectors share their classifier and filter bank, but each leg gets a new one: media-core does not tell when a leg has
+     * ended, so its detector is left to the garbage collector. With shards configured, the leg is removed from its shard once
+     * it gets no frame for twice <code>shardIdleTimeout</code>, and attached again if it gets one later.
+     */
     public DtmfDetector provide() {
-        return new GoertzelDtmfDetector(toneVolume, toneDuration, toneInterval);
+        return attach(factory.create());
     }
 
-}
+    /**
+     * Ends a leg obtained from {@link #provide()}: the detector releases its analysis state, so it stops being counted as
+     * active, and a sharded leg is detached from its shard.
+     * <p>
+     * The caller must have forgotten all of its observers and must not use the detector afterwards.
+     * <p>
+     * This is not part of media-core's <code>DtmfDetectorProvider</code>. Detectors that are dropped without being released
+     * stop being counted as active once they are garbage collected.
+     *
+     * @param detector the detector of the leg.
+     */
+    public void release(DtmfDetector detector) {
+        if (detector instanceof ShardedDtmfDetector) {
+            // The shard resets the detector once it stopped using it
+            ((ShardedDtmfDetector) detector).close();
+        } else if (detector instanceof GoertzelDtmfDetector) {
+            ((GoertzelDtmfDetector) detector).reset();
+        }
+    }
+
+    /**
+     * Ends a leg obtained from {@link #provide()} or {@link #restore(ByteBuffer)} that moves to another node: writes the state
+     * of its detector into a buffer and releases the detector, as {@link #release(DtmfDetector)} does.
+     * <p>
+     * The snapshot counts the tones confirmed so far as reported, so this waits for their events to reach the observers of
+     * the leg, which the caller must only forget once it returns. A detector whose events were not delivered within a second
+     * is not reset, so that they still are. The caller must no longer pass frames to the detector and must not use it
+     * afterwards. The snapshot is carried on by {@link #restore(ByteBuffer)} on a node with the same configuration.
+     *
+     * @param detector the detector of the leg.
+     * @param snapshot the buffer the state is written into, from its position. It must have at least
+     *        {@link GoertzelDtmfDetector#getSnapshotSize()} bytes remaining.
+     * @throws IllegalStateException if the leg is sharded and its shard did not take the snapshot in time.
+     */
+    public void migrate(DtmfDetector detector, ByteBuffer snapshot) {
+        if (detector instanceof ShardedDtmfDetector) {
+            // Queued frames are analysed first, then the detector is reset once its events are delivered
+            ((ShardedDtmfDetector) detector).migrate(snapshot, MIGRATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } else if (detector instanceof GoertzelDtmfDetector) {
+            // A detector whose snapshot did not fit is kept, so the caller can try again with a larger buffer
+            final GoertzelDtmfDetector goertzel = (GoertzelDtmfDetector) detector;
+            goertzel.snapshot(snapshot);
+            try {
+                // Resetting the detector would discard the events it still has queued
+                if (goertzel.awaitEvents(MIGRATION_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    goertzel.reset();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            throw new IllegalArgumentException("Detector was not provided by this provider: " + detector);
+        }
+    }
+
+    /**
+     * Provides the detector of a leg that moved from another node, carrying on with the state written there by
+     * {@link #migrate(DtmfDetector, ByteBuffer)}. A digit pressed while the leg moved is reported once, by whichever node
+     * confirmed it: the other node delivers the events of the digits it confirmed before its migration returned.
+     *
+     * @param snapshot the buffer holding the snapshot, read from its position.
+     * @return the detector, to be returned through {@link #release(DtmfDetector)} or {@link #migrate(DtmfDetector, ByteBuffer)}.
+     * @throws IllegalArgumentException if the snapshot was written with another configuration or another version, is truncated
+     *         or holds values out of range.
+     */
+    public DtmfDetector restore(ByteBuffer snapshot) {
+        final GoertzelDtmfDetector detector = factory.create();
+        detector.restore(snapshot);
+        return attach(detector);
+    }
+
+    private DtmfDetector attach(GoertzelDtmfDetector detector) {
+        return (shards == null) ? detector : shards.attach(detector, legs.getAndIncrement(), GoertzelDtmfDetector::reset);
+    }
 
+    /**
+     * Gets the aggregate metrics of all detectors handed out by the provider.
+     *
+     * @return the metrics, or null if metrics are disabled.
+     */
+    public GoertzelDtmfDetectorMetrics getMetrics() {
+        return factory.getMetrics();
+    }
+
+    /**
+     * Gets the dispatcher that delivers the events of all detectors handed out by the provider.
+     *
+     * @return the dispatcher, or null if events are delivered on the media threads.
+     */
+    public DtmfEventDispatcher getDispatcher() {
+        return factory.getDispatcher();
+    }
+
+    /**
+     * Gets the shards that run detection.
+     *
+     * @return the shards, or null if detection runs on the media threads.
+     */
+    public DtmfDetectorShards getShards() {
+        return shards;
+    }
+
+    /**
+     * Stops the shards, if any, once the frames they hold are analysed, then the event dispatcher, if any, once the events it
+     * holds are delivered.
+     */
+    @PreDestroy
+    public void close() {
+        if (shards != null) {
+            shards.close();
+        }
+        final DtmfEventDispatcher dispatcher = factory.getDispatcher();
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.restcomm.media.plugin.dtmf.TestTones.play;
+import static org.restcomm.media.plugin.dtmf.TestTones.tone;
+
+public class DetectorEventsTest {
+
+    private static final String PREFIX = "org.restcomm.media.plugin.dtmf.";
+
+    @Test
+    public void testTracedLegRecordsTone() throws IOException {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings().setEventSampling(1));
+        final short[] audio = new short[8000];
+        tone(audio, 800, 1600, 852, 1336); // 8
+
+        // when
+        final List<RecordedEvent> events = record(detector, audio);
+
+        // then
+        assertTrue(detector.isTraced());
+        assertEquals(1, count(events, "ToneConfirmed"));
+        assertEquals(1, count(events, "ToneEnded"));
+        assertTrue(count(events, "StateChanged") >= 2);
+        assertTrue(count(events, "WindowAnalysed") > 0);
+        for (RecordedEvent event : events) {
+            assertEquals(detector.getTraceId(), event.getLong("leg"));
+            assertNull(event.getStackTrace());
+            if (event.getEventType().getName().equals(PREFIX + "ToneConfirmed")) {
+                assertEquals("8", event.getString("tone"));
+                assertEquals(800, event.getLong("onset"), 160);
+            }
+        }
+    }
+
+    @Test
+    public void testUntracedLegRecordsNothing() throws IOException {
+        // given
+        final GoertzelDtmfDetector sampledOut = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings());
+        final GoertzelDtmfDetector untraced = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings().setEventSampling(1));
+        untraced.setTraced(false);
+        final short[] audio = new short[8000];
+        tone(audio, 800, 1600, 697, 1209); // 1
+
+        // when
+        final List<RecordedEvent> sampledOutEvents = record(sampledOut, audio);
+        final List<RecordedEvent> untracedEvents = record(untraced, audio);
+
+        // then
+        assertFalse(sampledOut.isTraced());
+        assertTrue(sampledOutEvents.isEmpty());
+        assertTrue(untracedEvents.isEmpty());
+        assertEquals(1, sampledOut.getDetectedTones());
+        assertEquals(1, untraced.getDetectedTones());
+    }
+
+    @Test
+    public void testTracedLegAllocatesNothingWithoutRecording() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings().setEventSampling(1));
+        final short[] audio = new short[8000];
+        tone(audio, 0, 8000, 941, 1477); // #
+        for (int i = 0; i < 2; i++) {
+            play(detector, audio);
+        }
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+
+        // when
+        final long before = threads.getThreadAllocatedBytes(thread);
+        play(detector, audio);
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        // then
+        assertTrue(detector.isTraced());
+        assertEquals(0, allocated, 256);
+    }
+
+    @Test
+    public void testSamplingTracesOneLegInN() {
+        // given
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings().setEventSampling(4);
+        int traced = 0;
+
+        // when
+        for (int i = 0; i < 40; i++) {
+            if (new GoertzelDtmfDetector(settings).isTraced()) {
+                traced++;
+            }
+        }
+
+        // then
+        assertEquals(10, traced);
+    }
+
+    private static List<RecordedEvent> record(GoertzelDtmfDetector detector, short[] audio) throws IOException {
+        final Path file = Files.createTempFile("dtmf", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : new String[] { "WindowAnalysed", "CandidateRejected", "ToneConfirmed", "ToneEnded",
+                    "StateChanged" }) {
+                recording.enable(PREFIX + name);
+            }
+            recording.start();
+            play(detector, audio);
+            recording.stop();
+            recording.dump(file);
+
+            final List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().startsWith(PREFIX)) {
+                    events.add(event);
+                }
+            }
+            return events;
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static int count(List<RecordedEvent> events, String name) {
+        int count = 0;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(PREFIX + name)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,466 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DtmfDetectorShardsTest {
+
+    // Digits 1 to 4, 100ms each with 100ms pauses, as little-endian linear frames of 20ms
+    private static final byte[][] FRAMES = frames(digits(697, 1209, 697, 1336, 697, 1477, 770, 1209));
+
+    private DtmfDetectorShards shards;
+    private DtmfEventDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (shards != null) {
+            shards.close();
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void testFramesAreAnalysedOnTheShardThread() throws Exception {
+        // given
+        shards = new DtmfDetectorShards(2, 64);
+        shards.start();
+        final ShardedDtmfDetector detector = shards.attach(new GoertzelDtmfDetector(), 7);
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        detector.observe(event -> {
+            events.add(event.getTone());
+            threads.add(Thread.currentThread());
+        });
+
+        // when
+        final byte[] frame = new byte[320];
+        for (byte[] source : FRAMES) {
+            // The caller reuses its buffer, as media threads do
+            System.arraycopy(source, 0, frame, 0, frame.length);
+            detector.detect(frame, 20);
+        }
+        await(() -> shards.getProcessedFrames() == FRAMES.length);
+
+        // then
+        assertEquals("[1, 2, 3, 4]", events.toString());
+        for (Thread thread : threads) {
+            assertEquals("dtmf-detector-shard-" + shards.getShard(7), thread.getName());
+        }
+        assertEquals(FRAMES.length, detector.getDetector().getProcessedFrames());
+        assertEquals(0, shards.getDroppedFrames());
+    }
+
+    @Test
+    public void testLegsAreSpreadOverShards() {
+        // given
+        shards = new DtmfDetectorShards(4, 8);
+
+        // when
+        for (long key = 0; key < 400; key++) {
+            shards.attach(new GoertzelDtmfDetector(), key);
+        }
+
+        // then
+        assertEquals(400, shards.getLegs());
+        for (int shard = 0; shard < 4; shard++) {
+            assertEquals(100, shards.getLegs(shard), 10);
+        }
+        assertEquals(shards.getShard(12345), shards.getShard(12345));
+    }
+
+    @Test
+    public void testFullQueueDropsFrames() {
+        // given
+        shards = new DtmfDetectorShards(1, 4);
+        final ShardedDtmfDetector detector = shards.attach(new GoertzelDtmfDetector(), 0);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            detector.detect(FRAMES[i], 20);
+        }
+
+        // then
+        assertEquals(6, shards.getDroppedFrames());
+        assertEquals(0, detector.getDetector().getProcessedFrames());
+    }
+
+    @Test
+    public void testClosedLegIsDetachedOnTheShardThread() throws Exception {
+        // given
+        shards = new DtmfDetectorShards(1, 64);
+        shards.start();
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        final List<GoertzelDtmfDetector> detached = Collections.synchronizedList(new ArrayList<>());
+        final GoertzelDtmfDetector underlying = new GoertzelDtmfDetector();
+        final ShardedDtmfDetector detector = shards.attach(underlying, 0, d -> {
+            threads.add(Thread.currentThread());
+            detached.add(d);
+        });
+
+        // when
+        detector.detect(FRAMES[0], 20);
+        detector.close();
+        detector.detect(FRAMES[1], 20);
+        await(() -> shards.getLegs() == 0);
+
+        // then
+        assertEquals(1, detached.size());
+        assertSame(underlying, detached.get(0));
+        assertEquals("dtmf-detector-shard-0", threads.get(0).getName());
+        assertTrue(underlying.getProcessedFrames() <= 1);
+    }
+
+    @Test
+    public void testLegsFedConcurrentlyKeepTheirTimelines() throws Exception {
+        // given
+        shards = new DtmfDetectorShards(2, 256);
+        shards.start();
+        final int legs = 6;
+        final List<Thread> threads = new ArrayList<>();
+        final List<StringBuffer> timelines = new ArrayList<>();
+        for (int i = 0; i < legs; i++) {
+            final ShardedDtmfDetector detector = shards.attach(new GoertzelDtmfDetector(), i);
+            final StringBuffer timeline = new StringBuffer();
+            detector.observe(event -> timeline.append(event.getTone()));
+            timelines.add(timeline);
+            threads.add(new Thread(() -> {
+                for (int k = 0; k < 3; k++) {
+                    for (byte[] frame : FRAMES) {
+                        detector.detect(frame, 20);
+                    }
+                }
+            }));
+        }
+
+        // when
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        await(() -> shards.getProcessedFrames() + shards.getDroppedFrames() == 3L * legs * FRAMES.length);
+
+        // then
+        assertEquals(0, shards.getDroppedFrames());
+        for (StringBuffer timeline : timelines) {
+            assertEquals("123412341234", timeline.toString());
+        }
+    }
+
+    @Test
+    public void testMigratedLegCarriesOnWithQueuedFrames() throws Exception {
+        // given
+        shards = new DtmfDetectorShards(2, 64);
+        shards.start();
+        final StringBuffer timeline = new StringBuffer();
+        final GoertzelDtmfDetector underlying = new GoertzelDtmfDetector();
+        underlying.observeTones(new Timeline(timeline));
+        final ShardedDtmfDetector detector = shards.attach(underlying, 3);
+        // Stops in the middle of the third digit, before it is confirmed
+        final int split = 27;
+        for (int i = 0; i < split; i++) {
+            detector.detect(FRAMES[i], 20);
+        }
+
+        // when
+        final ByteBuffer snapshot = ByteBuffer.allocate(underlying.getSnapshotSize());
+        detector.migrate(snapshot);
+        snapshot.flip();
+        final GoertzelDtmfDetector restored = new GoertzelDtmfDetector();
+        restored.observeTones(new Timeline(timeline));
+        restored.restore(snapshot);
+        final ShardedDtmfDetector moved = shards.attach(restored, 4);
+        for (int i = split; i < FRAMES.length; i++) {
+            moved.detect(FRAMES[i], 20);
+        }
+        await(() -> shards.getProcessedFrames() == FRAMES.length);
+
+        // then
+        assertEquals(split, underlying.getProcessedFrames());
+        assertEquals(1, shards.getLegs());
+        assertEquals("1234", timeline.toString());
+        try {
+            detector.migrate(ByteBuffer.allocate(underlying.getSnapshotSize()));
+            fail("Closed legs cannot migrate");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDigitConfirmedBeforeMigrationIsDeliveredOnce() throws Exception {
+        // given
+        shards = new DtmfDetectorShards(2, 64);
+        shards.start();
+        dispatcher = new DtmfEventDispatcher(16);
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final List<GoertzelDtmfDetector> detached = Collections.synchronizedList(new ArrayList<>());
+        final GoertzelDtmfDetector underlying = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), null, dispatcher);
+        underlying.observe(event -> events.add(event.getTone()));
+        final ShardedDtmfDetector detector = shards.attach(underlying, 3, d -> {
+            // Resets the detector, as the provider does
+            d.reset();
+            detached.add(d);
+        });
+        // Digits 1 and 2 are confirmed, but the dispatcher has not delivered them yet
+        final int split = 27;
+        for (int i = 0; i < split; i++) {
+            detector.detect(FRAMES[i], 20);
+        }
+        await(() -> shards.getProcessedFrames() == split);
+        assertTrue(events.isEmpty());
+
+        // when
+        final Thread starter = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            dispatcher.start();
+        });
+        starter.start();
+        final ByteBuffer snapshot = ByteBuffer.allocate(underlying.getSnapshotSize());
+        detector.migrate(snapshot);
+        final List<String> delivered = new ArrayList<>(events);
+        snapshot.flip();
+        final GoertzelDtmfDetector restored = new GoertzelDtmfDetector();
+        restored.observe(event -> events.add(event.getTone()));
+        restored.restore(snapshot);
+        final ShardedDtmfDetector moved = shards.attach(restored, 4);
+        for (int i = split; i < FRAMES.length; i++) {
+            moved.detect(FRAMES[i], 20);
+        }
+        await(() -> shards.getProcessedFrames() == FRAMES.length);
+        starter.join();
+
+        // then
+        assertEquals("[1, 2]", delivered.toString());
+        assertEquals("[1, 2, 3, 4]", events.toString());
+        assertEquals(1, detached.size());
+        assertSame(underlying, detached.get(0));
+    }
+
+    @Test
+    public void testMigrationFailsWhenTheShardIsNotRunning() {
+        // given
+        shards = new DtmfDetectorShards(1, 64);
+        final GoertzelDtmfDetector underlying = new GoertzelDtmfDetector();
+        final ShardedDtmfDetector detector = shards.attach(underlying, 0);
+
+        // when
+        try {
+            detector.migrate(ByteBuffer.allocate(underlying.getSnapshotSize()), 50, TimeUnit.MILLISECONDS);
+            fail("Legs of stopped shards cannot migrate");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        // then
+        assertFalse(detector.isClosed());
+    }
+
+    @Test
+    public void testMigrationTimesOutWhenTheShardIsBusy() throws Exception {
+        // given
+        shards = new DtmfDetectorShards(1, 64);
+        shards.start();
+        final CountDownLatch busy = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        final ShardedDtmfDetector blocking = shards.attach(new GoertzelDtmfDetector(), 0);
+        blocking.observe(event -> {
+            busy.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final List<GoertzelDtmfDetector> detached = Collections.synchronizedList(new ArrayList<>());
+        final GoertzelDtmfDetector underlying = new GoertzelDtmfDetector();
+        final ShardedDtmfDetector detector = shards.attach(underlying, 1, detached::add);
+        for (int i = 0; i < 10; i++) {
+            blocking.detect(FRAMES[i], 20);
+        }
+        assertTrue(busy.await(5, TimeUnit.SECONDS));
+
+        // when
+        final long start = System.nanoTime();
+        try {
+            detector.migrate(ByteBuffer.allocate(underlying.getSnapshotSize()), 50, TimeUnit.MILLISECONDS);
+            fail("Shard is busy");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        final long waited = System.nanoTime() - start;
+        released.countDown();
+        await(() -> detached.size() == 1);
+
+        // then
+        assertTrue(waited < TimeUnit.SECONDS.toNanos(1));
+        assertSame(underlying, detached.get(0));
+        assertEquals(0, underlying.getProcessedFrames());
+    }
+
+    @Test
+    public void testIdleLegIsRemovedAndAttachedAgainByItsNextFrame() throws Exception {
+        // given
+        shards = new DtmfDetectorShards(1, 64, 20);
+        shards.start();
+        final StringBuffer timeline = new StringBuffer();
+        final GoertzelDtmfDetector underlying = new GoertzelDtmfDetector();
+        underlying.observeTones(new Timeline(timeline));
+        final ShardedDtmfDetector detector = shards.attach(underlying, 0);
+        // Stops in the pause after the second digit
+        final int split = 20;
+        for (int i = 0; i < split; i++) {
+            detector.detect(FRAMES[i], 20);
+        }
+        await(() -> shards.getProcessedFrames() == split);
+
+        // when
+        await(() -> shards.getLegs() == 0);
+        for (int i = split; i < FRAMES.length; i++) {
+            detector.detect(FRAMES[i], 20);
+        }
+        await(() -> shards.getProcessedFrames() == FRAMES.length);
+
+        // then
+        assertEquals(1, shards.getLegs());
+        assertEquals("1234", timeline.toString());
+        assertEquals(FRAMES.length, underlying.getProcessedFrames());
+    }
+
+    @Test
+    public void testRemovedLegIsGarbageCollected() throws Exception {
+        // given
+        shards = new DtmfDetectorShards(1, 64, 20);
+        shards.start();
+        ShardedDtmfDetector detector = shards.attach(new GoertzelDtmfDetector(), 0);
+        final WeakReference<GoertzelDtmfDetector> underlying = new WeakReference<>(detector.getDetector());
+        for (byte[] frame : FRAMES) {
+            detector.detect(frame, 20);
+        }
+        await(() -> shards.getProcessedFrames() == FRAMES.length);
+
+        // when
+        detector = null;
+        await(() -> shards.getLegs() == 0);
+
+        // then
+        await(() -> {
+            System.gc();
+            return underlying.get() == null;
+        });
+    }
+
+    @Test
+    public void testClosingRemovedLegDetachesIt() throws Exception {
+        // given
+        shards = new DtmfDetectorShards(1, 64, 20);
+        shards.start();
+        final List<GoertzelDtmfDetector> detached = Collections.synchronizedList(new ArrayList<>());
+        final GoertzelDtmfDetector underlying = new GoertzelDtmfDetector();
+        final ShardedDtmfDetector detector = shards.attach(underlying, 0, detached::add);
+        await(() -> shards.getLegs() == 0);
+
+        // when
+        detector.close();
+        await(() -> detached.size() == 1);
+
+        // then
+        assertSame(underlying, detached.get(0));
+        assertEquals(0, shards.getLegs());
+    }
+
+    private static short[] digits(double... frequencies) {
+        final short[] audio = new short[frequencies.length / 2 * 1600 + 800];
+        for (int d = 0; d < frequencies.length / 2; d++) {
+            for (int i = 800 + d * 1600; i < 1600 + d * 1600; i++) {
+                final double t = i / 8000.0;
+                audio[i] = (short) (6000 * Math.sin(2 * Math.PI * frequencies[2 * d] * t)
+                        + 6000 * Math.sin(2 * Math.PI * frequencies[2 * d + 1] * t));
+            }
+        }
+        return audio;
+    }
+
+    private static byte[][] frames(short[] audio) {
+        final byte[][] frames = new byte[audio.length / 160][];
+        for (int f = 0; f < frames.length; f++) {
+            frames[f] = new byte[320];
+            for (int i = 0; i < 160; i++) {
+                final short sample = audio[f * 160 + i];
+                frames[f][2 * i] = (byte) sample;
+                frames[f][2 * i + 1] = (byte) (sample >> 8);
+            }
+        }
+        return frames;
+    }
+
+    private static void await(Condition condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.isMet()) {
+            assertTrue("Timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static class Timeline implements DtmfToneObserver {
+
+        private final StringBuffer tones;
+
+        private Timeline(StringBuffer tones) {
+            this.tones = tones;
+        }
+
+        @Override
+        public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+            tones.append(tone);
+        }
+
+        @Override
+        public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+        }
+
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.restcomm.media.plugin.dtmf.TestTones.play;
+import static org.restcomm.media.plugin.dtmf.TestTones.tone;
+
+public class DtmfEventDispatcherTest {
+
+    // Digits 1 to 4, 100ms each with 100ms pauses
+    private static final short[] DIGITS = digits(697, 1209, 697, 1336, 697, 1477, 770, 1209);
+
+    private DtmfEventDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    @Test
+    public void testEventsAreDeliveredOnTheDispatcherThread() throws Exception {
+        // given
+        dispatcher = new DtmfEventDispatcher(16);
+        dispatcher.start();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), null, dispatcher);
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        detector.observe(event -> {
+            events.add(event.getTone());
+            threads.add(Thread.currentThread());
+        });
+
+        // when
+        play(detector, DIGITS);
+        detector.flush();
+        await(() -> dispatcher.getDelivered() == 8);
+
+        // then
+        assertEquals("[1, 2, 3, 4]", events.toString());
+        for (Thread thread : threads) {
+            assertNotSame(Thread.currentThread(), thread);
+        }
+        assertEquals(0, dispatcher.getDropped());
+        assertEquals(0, dispatcher.getPending());
+    }
+
+    @Test
+    public void testSlowObserverDoesNotBlockDetection() throws Exception {
+        // given
+        dispatcher = new DtmfEventDispatcher(2, 64, OverflowPolicy.DROP);
+        dispatcher.start();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), null, dispatcher);
+        final CountDownLatch latch = new CountDownLatch(1);
+        detector.observe(event -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // when
+        play(detector, DIGITS);
+        detector.flush();
+        final long dropped = dispatcher.getDropped();
+        latch.countDown();
+        await(() -> dispatcher.getPending() == 0);
+
+        // then
+        assertTrue(dropped > 0);
+        assertEquals(8, dispatcher.getDelivered() + dispatcher.getDropped());
+        assertEquals(0, dispatcher.getInlined());
+    }
+
+    @Test
+    public void testInlineOverflowKeepsEveryEvent() throws Exception {
+        // given
+        dispatcher = new DtmfEventDispatcher(1, 1, OverflowPolicy.INLINE);
+        dispatcher.start();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), null, dispatcher);
+        final Thread media = Thread.currentThread();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        detector.observe(event -> {
+            events.add(event.getTone());
+            if (Thread.currentThread() != media) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        // when
+        play(detector, DIGITS);
+        detector.flush();
+        latch.countDown();
+        await(() -> dispatcher.getPending() == 0);
+
+        // then
+        assertTrue(dispatcher.getInlined() > 0);
+        assertEquals(0, dispatcher.getDropped());
+        assertEquals(8, dispatcher.getDelivered() + dispatcher.getInlined());
+        assertEquals(4, events.size());
+    }
+
+    @Test
+    public void testQueuedEventsOfResetDetectorAreDiscarded() throws Exception {
+        // given
+        dispatcher = new DtmfEventDispatcher(16);
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), null, dispatcher);
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        detector.observe(event -> events.add(event.getTone()));
+
+        // when
+        play(detector, DIGITS);
+        detector.reset();
+        dispatcher.start();
+        await(() -> dispatcher.getPending() == 0);
+
+        // then
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testLegsPublishingConcurrentlyKeepTheirOrder() throws Exception {
+        // given
+        dispatcher = new DtmfEventDispatcher(256, 4, OverflowPolicy.DROP);
+        dispatcher.start();
+        final int legs = 4;
+        final List<Thread> threads = new ArrayList<>();
+        final List<StringBuffer> timelines = new ArrayList<>();
+        for (int i = 0; i < legs; i++) {
+            final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), null, dispatcher);
+            final StringBuffer timeline = new StringBuffer();
+            detector.observeTones(new DtmfToneObserver() {
+                @Override
+                public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+                    timeline.append('+').append(tone);
+                }
+
+                @Override
+                public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+                    timeline.append('-').append(tone);
+                }
+            });
+            timelines.add(timeline);
+            threads.add(new Thread(() -> {
+                for (int k = 0; k < 5; k++) {
+                    play(detector, DIGITS);
+                }
+                detector.flush();
+            }));
+        }
+
+        // when
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        await(() -> dispatcher.getPending() == 0);
+
+        // then
+        assertEquals(0, dispatcher.getDropped());
+        assertTrue(dispatcher.getBatches() >= 160 / 4);
+        for (StringBuffer timeline : timelines) {
+            assertEquals("+1-1+2-2+3-3+4-4+1-1+2-2+3-3+4-4+1-1+2-2+3-3+4-4+1-1+2-2+3-3+4-4+1-1+2-2+3-3+4-4",
+                    timeline.toString());
+        }
+    }
+
+    private static short[] digits(double... frequencies) {
+        final short[] audio = new short[frequencies.length / 2 * 1600 + 800];
+        for (int d = 0; d < frequencies.length / 2; d++) {
+            tone(audio, 800 + d * 1600, 800, frequencies[2 * d], frequencies[2 * d + 1]);
+        }
+        return audio;
+    }
+
+    private static void await(Condition condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.isMet()) {
+            assertTrue("Timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.restcomm.media.plugin.dtmf.TestTones.play;
+
+public class DtmfToneClassifierTest {
+
+    // Digit 9: 852 Hz and 1477 Hz
+    private static final int NINE = (2 << 2) | 2;
+
+    private final DtmfToneClassifier classifier = new DtmfToneClassifier(new GoertzelDtmfDetectorSettings());
+
+    @Test
+    public void testDominantPairIsDetected() {
+        assertEquals(NINE, classifier.getTone(power(1e6, 1e6), 2.2e6, 0));
+        assertEquals("9", DtmfToneClassifier.getName(NINE));
+    }
+
+    @Test
+    public void testTwistLimits() {
+        // High group up to 4 dB stronger
+        assertEquals(NINE, classifier.getTone(power(1e6, 2e6), 0, 0));
+        assertEquals(-1, classifier.getTone(power(1e6, 3e6), 0, 0));
+
+        // Low group up to 8 dB stronger, as line loss attenuates the high group
+        assertEquals(NINE, classifier.getTone(power(4e6, 1e6), 0, 0));
+        assertEquals(NINE, classifier.getTone(power(6e6, 1e6), 0, 0));
+        assertEquals(-1, classifier.getTone(power(7e6, 1e6), 0, 0));
+    }
+
+    @Test
+    public void testTwistLimitsAreAsymmetric() {
+        // 4 dB of twist when the high group is stronger
+        assertEquals(NINE, classifier.getTone(power(1e6, 1e6 * decibels(4)), 0, 0));
+        assertEquals(-1, classifier.getTone(power(1e6, 1e6 * decibels(4.5)), 0, 0));
+
+        // 8 dB of reverse twist when the low group is stronger
+        assertEquals(NINE, classifier.getTone(power(1e6 * decibels(8), 1e6), 0, 0));
+        assertEquals(-1, classifier.getTone(power(1e6 * decibels(8.5), 1e6), 0, 0));
+    }
+
+    @Test
+    public void testTonesMustStandAboveNoiseFloor() {
+        assertEquals(NINE, classifier.getTone(power(1e6, 2e6), 0, 1e5));
+        assertEquals(-1, classifier.getTone(power(1e6, 2e6), 0, 2e5));
+    }
+
+    @Test
+    public void testTonesMustHoldShareOfWindowEnergy() {
+        assertEquals(NINE, classifier.getTone(power(1e6, 1e6), 3e7, 0));
+        assertEquals(-1, classifier.getTone(power(1e6, 1e6), 5e7, 0));
+    }
+
+    @Test
+    public void testRejectionNamesFailedCheck() {
+        assertNull(classifier.getRejection(power(1e6, 1e6), 2.2e6, 0));
+        assertEquals("twist", classifier.getRejection(power(1e6, 3e6), 0, 0));
+        assertEquals("reverse twist", classifier.getRejection(power(7e6, 1e6), 0, 0));
+        assertEquals("noise floor", classifier.getRejection(power(1e6, 2e6), 0, 2e5));
+        assertEquals("relative energy", classifier.getRejection(power(1e6, 1e6), 5e7, 0));
+    }
+
+    @Test
+    public void testDominanceOnlyClassifier() {
+        final DtmfToneClassifier dominanceOnly = new DtmfToneClassifier(-35);
+
+        assertEquals(NINE, dominanceOnly.getTone(power(1e6, 1e8)));
+        assertEquals(NINE, dominanceOnly.getTone(power(1e6, 1e6), 5e7, 1e6));
+    }
+
+    @Test
+    public void testDisabledChecks() {
+        final DtmfToneClassifier unchecked = new DtmfToneClassifier(new GoertzelDtmfDetectorSettings().setMaxTwist(0)
+                .setMaxReverseTwist(0).setMinSignalToNoise(0).setMinRelativeEnergy(0));
+
+        assertEquals(NINE, unchecked.getTone(power(1e6, 1e8), 1e12, 1e6));
+    }
+
+    @Test
+    public void testVoiceIsRejected() {
+        // given
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings().setToneDuration(40).setToneInterval(100);
+        final GoertzelDtmfDetector checked = new GoertzelDtmfDetector(settings);
+        final GoertzelDtmfDetector unchecked = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(settings).setMaxTwist(0)
+                .setMaxReverseTwist(0).setMinSignalToNoise(0).setMinRelativeEnergy(0));
+
+        // when
+        play(checked, voice(376.5));
+        play(unchecked, voice(376.5));
+
+        // then
+        assertEquals(0, checked.getDetectedTones());
+        assertTrue(unchecked.getDetectedTones() > 0);
+    }
+
+    @Test
+    public void testNoisyToneIsDetected() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneDuration(40).setToneInterval(100));
+        final Random random = new Random(1);
+        final short[] audio = new short[8000];
+        for (int i = 0; i < audio.length; i++) {
+            final double t = i / 8000.0;
+            final double tone = ((i / 800) % 2 == 0) ? 6000 * (Math.sin(2 * Math.PI * 852 * t) + Math.sin(2 * Math.PI * 1477 * t)) : 0;
+            audio[i] = (short) (tone + random.nextGaussian() * 2000);
+        }
+
+        // when
+        play(detector, audio);
+
+        // then
+        assertEquals(5, detector.getDetectedTones());
+    }
+
+    private static double decibels(double decibels) {
+        return Math.pow(10, decibels / 10);
+    }
+
+    private static double[] power(double low, double high) {
+        final double[] power = new double[]{1, 1, 1, 1, 1, 1, 1, 1};
+        power[2] = low;
+        power[6] = high;
+        return power;
+    }
+
+    /**
+     * Builds one second of a voiced sound: a harmonic series falling at 6 dB per octave, with a slight vibrato.
+     */
+    private static short[] voice(double pitch) {
+        final Random random = new Random(1);
+        final short[] audio = new short[8000];
+        for (int i = 0; i < audio.length; i++) {
+            final double t = i / 8000.0;
+            final double f0 = pitch * (1 + 0.01 * Math.sin(2 * Math.PI * 5 * t));
+            double x = 0;
+            for (int k = 1; k * pitch < 3800; k++) {
+                x += Math.sin(2 * Math.PI * k * f0 * t + k) / k;
+            }
+            audio[i] = (short) (x * 6000 + random.nextGaussian() * 50);
+        }
+        return audio;
+    }
+
+}
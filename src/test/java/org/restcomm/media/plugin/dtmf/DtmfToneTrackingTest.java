@@ -0,0 +1,190 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.restcomm.media.plugin.dtmf.TestTones.play;
+import static org.restcomm.media.plugin.dtmf.TestTones.tone;
+
+public class DtmfToneTrackingTest {
+
+    @Test
+    public void testHeldToneIsReportedOnce() {
+        // given
+        final short[] audio = new short[16000];
+        tone(audio, 800, 12000, 852, 1477); // 9, held for 1.5s
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings());
+        final List<String> events = new ArrayList<>();
+        detector.observe(event -> events.add(event.getTone()));
+        final Recorder recorder = new Recorder();
+        detector.observeTones(recorder);
+
+        // when
+        play(detector, audio);
+
+        // then
+        assertEquals(1, events.size());
+        assertEquals("9", events.get(0));
+        assertEquals("+9 -9", recorder.toString());
+        assertEquals(800, recorder.onsets.get(0), 10);
+        assertEquals(12000, recorder.durations.get(0), 10);
+        assertEquals(ToneState.IDLE, detector.getToneState());
+    }
+
+    @Test
+    public void testShortDropoutIsBridged() {
+        // given
+        final short[] audio = new short[16000];
+        tone(audio, 800, 800, 697, 1209); // 1
+        tone(audio, 1680, 800, 697, 1209); // 10ms dropout
+        tone(audio, 4000, 800, 697, 1209); // 100ms pause
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings().setToneInterval(40));
+        final Recorder recorder = new Recorder();
+        detector.observeTones(recorder);
+
+        // when
+        play(detector, audio);
+
+        // then
+        assertEquals("+1 -1 +1 -1", recorder.toString());
+        assertEquals(800, recorder.onsets.get(0), 10);
+        assertEquals(1680, recorder.durations.get(0), 10);
+        assertEquals(4000, recorder.onsets.get(1), 10);
+        assertEquals(800, recorder.durations.get(1), 10);
+    }
+
+    @Test
+    public void testAnotherDigitEndsTheTone() {
+        // given
+        final short[] audio = new short[8000];
+        tone(audio, 800, 1000, 770, 1336); // 5
+        tone(audio, 1960, 1000, 941, 1336); // 0, after a pause shorter than the tone interval
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneDuration(40).setToneInterval(100));
+        final Recorder recorder = new Recorder();
+        detector.observeTones(recorder);
+
+        // when
+        play(detector, audio);
+
+        // then
+        assertEquals("+5 -5 +0 -0", recorder.toString());
+        assertEquals(800, recorder.onsets.get(0), 10);
+        assertEquals(1000, recorder.durations.get(0), 10);
+        assertEquals(1960, recorder.onsets.get(1), 10);
+        assertEquals(1000, recorder.durations.get(1), 10);
+    }
+
+    @Test
+    public void testOverlappingWindowsLocateTheSameEdges() {
+        // given
+        final short[] audio = new short[8000];
+        tone(audio, 1234, 2345, 941, 1633); // D
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings().setHopSize(10));
+        final Recorder recorder = new Recorder();
+        detector.observeTones(recorder);
+
+        // when
+        play(detector, audio);
+
+        // then
+        assertEquals("+D -D", recorder.toString());
+        assertEquals(1234, recorder.onsets.get(0), 10);
+        assertEquals(2345, recorder.durations.get(0), 10);
+    }
+
+    @Test
+    public void testStatesAndFlush() {
+        // given
+        final short[] audio = new short[4480];
+        tone(audio, 800, 3680, 697, 1477); // 3, still held at the end
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings());
+        final Recorder recorder = new Recorder();
+        detector.observeTones(recorder);
+
+        // when
+        detector.detect(audio, 0, 800, 100);
+        final ToneState silent = detector.getToneState();
+        detector.detect(audio, 800, 3680, 460);
+        final ToneState held = detector.getToneState();
+        detector.flush();
+
+        // then
+        assertEquals(ToneState.IDLE, silent);
+        assertEquals(ToneState.CONFIRMED, held);
+        assertEquals(ToneState.IDLE, detector.getToneState());
+        assertEquals("+3 -3", recorder.toString());
+        assertEquals(3680, recorder.durations.get(0), 10);
+    }
+
+    @Test
+    public void testForgottenObserverIsNotCalled() {
+        // given
+        final short[] audio = new short[8000];
+        tone(audio, 800, 800, 852, 1209); // 7
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings());
+        final Recorder first = new Recorder();
+        final Recorder second = new Recorder();
+        detector.observeTones(first);
+        detector.observeTones(second);
+        detector.forgetTones(first);
+
+        // when
+        play(detector, audio);
+
+        // then
+        assertEquals("", first.toString());
+        assertEquals("+7 -7", second.toString());
+    }
+
+    private static class Recorder implements DtmfToneObserver {
+
+        private final StringBuilder events = new StringBuilder();
+        private final List<Long> onsets = new ArrayList<>();
+        private final List<Long> durations = new ArrayList<>();
+
+        @Override
+        public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+            events.append(events.length() == 0 ? "+" : " +").append(tone);
+            onsets.add(onset);
+        }
+
+        @Override
+        public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+            events.append(" -").append(tone);
+            assertEquals(onsets.get(onsets.size() - 1).longValue(), onset);
+            durations.add(duration);
+        }
+
+        @Override
+        public String toString() {
+            return events.toString();
+        }
+
+    }
+
+}
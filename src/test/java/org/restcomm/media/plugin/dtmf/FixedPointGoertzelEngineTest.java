@@ -0,0 +1,119 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FixedPointGoertzelEngineTest {
+
+    @Test
+    public void testPowersMatchFloatingPoint() {
+        assertSamePowers(GoertzelFilterBank.dtmf(8000, 800), 852, 1477, 6000);
+        assertSamePowers(GoertzelFilterBank.dtmf(8000, 320), 941, 1633, 12000);
+    }
+
+    @Test
+    public void testLongWindowsAreScaledDown() {
+        // given
+        final GoertzelFilterBank bank = GoertzelFilterBank.dtmf(48000, 48000);
+
+        // then
+        assertTrue(bank.getFixedShift() > 0);
+        assertSamePowers(bank, 697, 1209, 16000);
+    }
+
+    @Test
+    public void testDetectionMatchesFloatingPoint() {
+        // given
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings().setToneDuration(40).setToneInterval(100);
+        final GoertzelDtmfDetector floating = new GoertzelDtmfDetector(settings);
+        final GoertzelDtmfDetector fixed = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(settings).setFixedPoint(true));
+        final StringBuilder floatingTones = new StringBuilder();
+        final StringBuilder fixedTones = new StringBuilder();
+        floating.observe(event -> floatingTones.append(event.getTone()));
+        fixed.observe(event -> fixedTones.append(event.getTone()));
+        final short[] audio = digits();
+
+        // when
+        for (int offset = 0; offset < audio.length; offset += 160) {
+            floating.detect(audio, offset, 160, 20);
+            fixed.detect(audio, offset, 160, 20);
+        }
+
+        // then
+        assertEquals("159D", floatingTones.toString());
+        assertEquals(floatingTones.toString(), fixedTones.toString());
+    }
+
+    private static void assertSamePowers(GoertzelFilterBank bank, int low, int high, double amplitude) {
+        // given
+        final GoertzelEngine floating = new FloatingPointGoertzelEngine(bank);
+        final GoertzelEngine fixed = new FixedPointGoertzelEngine(bank);
+        final Random random = new Random(1);
+        final double rate = bank.getSampleRate();
+
+        // when
+        for (int i = 0; i < bank.getN(); i++) {
+            final double t = i / rate;
+            final double x = amplitude * (Math.sin(2 * Math.PI * low * t) + Math.sin(2 * Math.PI * high * t)) + random.nextGaussian() * 500;
+            final int sample = (int) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, x));
+            floating.process(sample);
+            fixed.process(sample);
+        }
+
+        // then
+        final double[] expected = new double[bank.getBins()];
+        final double[] actual = new double[bank.getBins()];
+        floating.power(expected);
+        fixed.power(actual);
+        double max = 0;
+        for (double p : expected) {
+            max = Math.max(max, p);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Bin " + bank.getFrequency(i) + " Hz", expected[i], actual[i], max * 1e-3);
+        }
+        assertEquals(floating.energy(), fixed.energy(), 0);
+        assertEquals(floating.peak(), fixed.peak(), 0);
+    }
+
+    /**
+     * Builds digits 1, 5, 9 and D, each 80 ms long and followed by 80 ms of silence.
+     */
+    private static short[] digits() {
+        final int[][] pairs = {{697, 1209}, {770, 1336}, {852, 1477}, {941, 1633}};
+        final short[] audio = new short[pairs.length * 1280];
+        for (int i = 0; i < audio.length; i++) {
+            final int[] pair = pairs[i / 1280];
+            if (i % 1280 < 640) {
+                final double t = i / 8000.0;
+                audio[i] = (short) (6000 * (Math.sin(2 * Math.PI * pair[0] * t) + Math.sin(2 * Math.PI * pair[1] * t)));
+            }
+        }
+        return audio;
+    }
+
+}
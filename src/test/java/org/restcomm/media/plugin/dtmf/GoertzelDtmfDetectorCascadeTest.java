@@ -0,0 +1,142 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.restcomm.media.plugin.dtmf.TestTones.play;
+import static org.restcomm.media.plugin.dtmf.TestTones.tone;
+
+public class GoertzelDtmfDetectorCascadeTest {
+
+    // Onsets of the digits played, deliberately off the grid of 40 ms windows
+    private static final int[] ONSETS = { 1234, 4567, 7777, 10101, 13013 };
+    private static final double[][] DIGITS = { { 697, 1209 }, { 770, 1336 }, { 852, 1477 }, { 941, 1633 }, { 941, 1336 } };
+    private static final String[] NAMES = { "1", "5", "9", "D", "0" };
+
+    @Test
+    public void testCascadeConfirmsDigitsSooner() {
+        // given
+        final GoertzelDtmfDetector plain = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings().setToneDuration(40));
+        final GoertzelDtmfDetector cascade = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneDuration(40).setCascadeDuration(10));
+        final Recorder plainTones = new Recorder();
+        final Recorder cascadeTones = new Recorder();
+        plain.observeTones(plainTones);
+        cascade.observeTones(cascadeTones);
+        final short[] audio = digits();
+
+        // when
+        play(plain, audio);
+        play(cascade, audio);
+
+        // then
+        assertEquals(plainTones.names, cascadeTones.names);
+        long plainDelay = 0;
+        long cascadeDelay = 0;
+        for (int i = 0; i < ONSETS.length; i++) {
+            assertEquals(NAMES[i], cascadeTones.names.get(i));
+            assertEquals(ONSETS[i], cascadeTones.onsets.get(i), 80);
+            plainDelay += plainTones.reported.get(i) - ONSETS[i];
+            cascadeDelay += cascadeTones.reported.get(i) - ONSETS[i];
+        }
+        assertTrue(cascadeDelay < plainDelay);
+    }
+
+    @Test
+    public void testNoiseIsScreenedOut() {
+        // given
+        final GoertzelDtmfDetector cascade = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneDuration(40).setCascadeDuration(10).setGating(false));
+        final Random random = new Random(7);
+        final short[] audio = new short[16000];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (short) (random.nextGaussian() * 3000);
+        }
+
+        // when
+        play(cascade, audio);
+
+        // then
+        assertEquals(0, cascade.getDetectedTones());
+        assertEquals(0, cascade.getAnalysedWindows());
+    }
+
+    @Test
+    public void testBackdatingLocatesOnset() {
+        // given
+        final GoertzelDtmfDetector backdated = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneDuration(40).setCascadeDuration(10));
+        final GoertzelDtmfDetector late = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneDuration(40).setCascadeDuration(10).setCascadeBackdating(false));
+        final Recorder backdatedTones = new Recorder();
+        final Recorder lateTones = new Recorder();
+        backdated.observeTones(backdatedTones);
+        late.observeTones(lateTones);
+        final short[] audio = digits();
+
+        // when
+        play(backdated, audio);
+        play(late, audio);
+
+        // then
+        assertEquals(backdatedTones.names, lateTones.names);
+        for (int i = 0; i < ONSETS.length; i++) {
+            assertEquals(ONSETS[i], backdatedTones.onsets.get(i), 16);
+            assertTrue(lateTones.onsets.get(i) > backdatedTones.onsets.get(i));
+            assertTrue(lateTones.reported.get(i) > backdatedTones.reported.get(i));
+        }
+    }
+
+    private static short[] digits() {
+        final short[] audio = new short[16000];
+        for (int i = 0; i < ONSETS.length; i++) {
+            tone(audio, ONSETS[i], 800, DIGITS[i][0], DIGITS[i][1]);
+        }
+        return audio;
+    }
+
+    private static class Recorder implements DtmfToneObserver {
+
+        private final List<String> names = new ArrayList<>();
+        private final List<Long> onsets = new ArrayList<>();
+        private final List<Long> reported = new ArrayList<>();
+
+        @Override
+        public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+            names.add(tone);
+            onsets.add(onset);
+            reported.add(detector.getLastToneOffset());
+        }
+
+        @Override
+        public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+        }
+
+    }
+
+}
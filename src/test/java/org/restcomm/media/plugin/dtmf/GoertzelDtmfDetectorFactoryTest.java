@@ -0,0 +1,64 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GoertzelDtmfDetectorFactoryTest {
+
+    @Test
+    public void testEveryLegGetsItsOwnDetector() {
+        // given
+        final GoertzelDtmfDetectorFactory factory = new GoertzelDtmfDetectorFactory(settings(-35, 100, 100));
+
+        // when
+        final GoertzelDtmfDetector detector1 = factory.create();
+        final GoertzelDtmfDetector detector2 = factory.create();
+
+        // then
+        assertNotSame(detector1, detector2);
+        assertTrue(detector1.getTraceId() != detector2.getTraceId());
+    }
+
+    @Test
+    public void testDetectorsReportToTheMetricsOfTheFactory() {
+        // given
+        final GoertzelDtmfDetectorMetrics metrics = new GoertzelDtmfDetectorMetrics();
+        final GoertzelDtmfDetectorFactory factory = new GoertzelDtmfDetectorFactory(settings(-35, 100, 100), metrics);
+
+        // when
+        factory.create().detect(new byte[320], 20);
+        factory.create().detect(new byte[320], 20);
+
+        // then
+        assertSame(metrics, factory.getMetrics());
+        assertNull(factory.getDispatcher());
+        assertEquals(2, metrics.getProcessedFrames());
+    }
+
+    private GoertzelDtmfDetectorSettings settings(int toneVolume, int toneDuration, int toneInterval) {
+        return new GoertzelDtmfDetectorSettings().setToneVolume(toneVolume).setToneDuration(toneDuration).setToneInterval(toneInterval);
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.restcomm.media.plugin.dtmf.TestTones.play;
+import static org.restcomm.media.plugin.dtmf.TestTones.tone;
+
+public class GoertzelDtmfDetectorHibernationTest {
+
+    @Test
+    public void testQuietLegStaysHibernating() {
+        // given
+        final GoertzelDtmfDetectorMetrics metrics = new GoertzelDtmfDetectorMetrics();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), metrics);
+        final short[] audio = new short[16000];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (short) ((i % 7) - 3);
+        }
+
+        // when
+        play(detector, audio);
+
+        // then
+        assertTrue(detector.isHibernating());
+        assertEquals(100, detector.getProcessedFrames());
+        assertEquals(0, detector.getAnalysedWindows());
+        assertEquals(0, metrics.getActiveDetectors());
+    }
+
+    @Test
+    public void testToneWakesAndSilenceHibernates() {
+        // given
+        final GoertzelDtmfDetectorMetrics metrics = new GoertzelDtmfDetectorMetrics();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneInterval(100).setHibernateAfter(200), metrics);
+        final GoertzelDtmfDetector awake = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneInterval(100).setHibernateAfter(0));
+        final List<Long> edges = new ArrayList<>();
+        final List<Long> awakeEdges = new ArrayList<>();
+        detector.observeTones(new EdgeRecorder(edges));
+        awake.observeTones(new EdgeRecorder(awakeEdges));
+        final short[] audio = new short[40000];
+        tone(audio, 12345, 1000, 852, 1336); // 8
+        tone(audio, 28765, 1000, 941, 1209); // *
+
+        // when
+        final boolean[] hibernating = new boolean[audio.length / 160];
+        for (int i = 0; i < hibernating.length; i++) {
+            detector.detect(audio, i * 160, 160, 20);
+            awake.detect(audio, i * 160, 160, 20);
+            hibernating[i] = detector.isHibernating();
+        }
+
+        // then
+        assertEquals(4, edges.size());
+        assertEquals(awakeEdges, edges);
+        assertTrue(hibernating[12345 / 160 - 1]);
+        assertFalse(hibernating[12345 / 160 + 10]);
+        assertTrue(hibernating[28765 / 160 - 1]);
+        assertTrue(detector.isHibernating());
+        assertFalse(awake.isHibernating());
+        assertEquals(0, metrics.getActiveDetectors());
+        assertEquals(2, metrics.getHibernations());
+    }
+
+    @Test
+    public void testToneIsReleasedBeforeHibernating() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneInterval(100).setHibernateAfter(20));
+        final List<Long> edges = new ArrayList<>();
+        detector.observeTones(new EdgeRecorder(edges));
+        final short[] audio = new short[8000];
+        tone(audio, 800, 1600, 770, 1477); // 6
+
+        // when
+        play(detector, audio);
+
+        // then
+        assertEquals(2, edges.size());
+        assertEquals(800, edges.get(0), 10);
+        assertEquals(2400, edges.get(1), 10);
+        assertTrue(detector.isHibernating());
+    }
+
+    @Test
+    public void testSkippedSilenceIsNotCountedAsRejectedWindows() {
+        // given
+        final GoertzelDtmfDetectorMetrics metrics = new GoertzelDtmfDetectorMetrics();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), metrics);
+        // The tone starts in the middle of the eighth window and the audio stops at the end of the ninth
+        final short[] audio = new short[5760];
+        tone(audio, 4800, 800, 852, 1209); // 7
+
+        // when
+        play(detector, audio);
+
+        // then
+        assertEquals(1, detector.getDetectedTones());
+        assertEquals(2, detector.getAnalysedWindows());
+        assertEquals(0, metrics.getRejectedWindows(GateStage.ENERGY) + metrics.getRejectedWindows(GateStage.ZERO_CROSSING));
+    }
+
+    @Test
+    public void testResetReleasesState() {
+        // given
+        final GoertzelDtmfDetectorMetrics metrics = new GoertzelDtmfDetectorMetrics();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), metrics);
+        final short[] audio = new short[1600];
+        tone(audio, 0, 1600, 697, 1633); // A
+        play(detector, audio);
+        final boolean hibernating = detector.isHibernating();
+
+        // when
+        detector.reset();
+
+        // then
+        assertFalse(hibernating);
+        assertTrue(detector.isHibernating());
+        assertEquals(0, metrics.getActiveDetectors());
+        assertEquals(1, metrics.getHibernations());
+    }
+
+    private static class EdgeRecorder implements DtmfToneObserver {
+
+        private final List<Long> edges;
+
+        private EdgeRecorder(List<Long> edges) {
+            this.edges = edges;
+        }
+
+        @Override
+        public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+            edges.add(onset);
+        }
+
+        @Override
+        public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+            edges.add(onset + duration);
+        }
+
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.restcomm.media.plugin.dtmf.TestTones.FRAME;
+import static org.restcomm.media.plugin.dtmf.TestTones.tone;
+
+public class GoertzelDtmfDetectorInputTest {
+
+    private static final double[][] PAIRS = {{697, 1209}, {770, 1336}, {852, 1477}, {941, 1633}, {941, 1477}, {941, 1336}};
+    private static final String DIGITS = "159D#0";
+
+    /**
+     * Bytes ahead of the samples when the frame does not start at the beginning of its array or buffer. The count is odd so
+     * that samples are not aligned either.
+     */
+    private static final int PADDING = 7;
+
+    @Test
+    public void testArraysDetectTheSameDigits() {
+        assertEquals(DIGITS, run((detector, audio, offset) -> detector.detect(audio, offset, FRAME, 20)));
+        assertEquals(DIGITS, run((detector, audio, offset) -> detector.detect(bytes(audio, offset, ByteOrder.LITTLE_ENDIAN), 20)));
+        assertEquals(DIGITS, run((detector, audio, offset) -> detector.detect(padded(audio, offset, ByteOrder.LITTLE_ENDIAN),
+                PADDING, 2 * FRAME, SampleEncoding.LINEAR, 20)));
+    }
+
+    @Test
+    public void testShortBuffersDetectTheSameDigits() {
+        // heap
+        assertEquals(DIGITS, run((detector, audio, offset) ->
+                detector.detect(ShortBuffer.wrap(Arrays.copyOfRange(audio, offset, offset + FRAME)), 20)));
+        // non-zero position
+        assertEquals(DIGITS, run((detector, audio, offset) -> detector.detect(ShortBuffer.wrap(audio, offset, FRAME), 20)));
+        // read-only
+        assertEquals(DIGITS, run((detector, audio, offset) ->
+                detector.detect(ShortBuffer.wrap(audio, offset, FRAME).asReadOnlyBuffer(), 20)));
+        // direct, in both byte orders
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            assertEquals(order.toString(), DIGITS, run((detector, audio, offset) -> {
+                final ByteBuffer buffer = direct(bytes(audio, offset, order)).order(order);
+                detector.detect(buffer.asShortBuffer(), 20);
+            }));
+        }
+    }
+
+    @Test
+    public void testByteBuffersDetectTheSameDigits() {
+        // heap, in both byte orders
+        assertEquals(DIGITS, run((detector, audio, offset) ->
+                detector.detect(ByteBuffer.wrap(bytes(audio, offset, ByteOrder.LITTLE_ENDIAN)).order(ByteOrder.LITTLE_ENDIAN), 20)));
+        assertEquals(DIGITS, run((detector, audio, offset) ->
+                detector.detect(ByteBuffer.wrap(bytes(audio, offset, ByteOrder.BIG_ENDIAN)), 20)));
+        // direct
+        assertEquals(DIGITS, run((detector, audio, offset) ->
+                detector.detect(direct(bytes(audio, offset, ByteOrder.LITTLE_ENDIAN)).order(ByteOrder.LITTLE_ENDIAN), 20)));
+        // read-only, whose byte order is reset to big-endian by asReadOnlyBuffer()
+        assertEquals(DIGITS, run((detector, audio, offset) -> detector.detect(ByteBuffer.wrap(
+                bytes(audio, offset, ByteOrder.LITTLE_ENDIAN)).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN), 20)));
+        // non-zero position, with trailing bytes past the limit
+        assertEquals(DIGITS, run((detector, audio, offset) -> {
+            final ByteBuffer buffer = ByteBuffer.wrap(padded(audio, offset, ByteOrder.LITTLE_ENDIAN)).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(PADDING).limit(PADDING + 2 * FRAME);
+            detector.detect(buffer, 20);
+        }));
+    }
+
+    @Test
+    public void testFreshByteBufferIsBigEndian() {
+        // when
+        final String digits = run((detector, audio, offset) ->
+                detector.detect(ByteBuffer.wrap(bytes(audio, offset, ByteOrder.LITTLE_ENDIAN)), 20));
+
+        // then
+        assertEquals("", digits);
+    }
+
+    @Test
+    public void testBufferPositionIsLeftUntouched() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector();
+        final short[] audio = audio();
+        final ShortBuffer samples = ShortBuffer.wrap(audio, FRAME, FRAME);
+        final ByteBuffer bytes = ByteBuffer.wrap(padded(audio, FRAME, ByteOrder.LITTLE_ENDIAN)).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.position(PADDING).limit(PADDING + 2 * FRAME);
+
+        // when
+        detector.detect(samples, 20);
+        detector.detect(bytes, 20);
+
+        // then
+        assertEquals(FRAME, samples.position());
+        assertEquals(2 * FRAME, samples.limit());
+        assertEquals(PADDING, bytes.position());
+        assertEquals(PADDING + 2 * FRAME, bytes.limit());
+        assertEquals(2 * FRAME, detector.getProcessedSamples());
+    }
+
+    /**
+     * Plays every digit for 100 ms after 100 ms of silence, then feeds the audio to a new detector one 20 ms frame at a time.
+     */
+    private static String run(Input input) {
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector();
+        final List<String> tones = new ArrayList<>();
+        detector.observe(event -> tones.add(event.getTone()));
+        final short[] audio = audio();
+        for (int offset = 0; offset < audio.length; offset += FRAME) {
+            input.detect(detector, audio, offset);
+        }
+        return String.join("", tones);
+    }
+
+    private static short[] audio() {
+        final short[] audio = new short[PAIRS.length * 1600 + 800];
+        for (int d = 0; d < PAIRS.length; d++) {
+            tone(audio, 800 + d * 1600, 800, PAIRS[d][0], PAIRS[d][1]);
+        }
+        return audio;
+    }
+
+    private static byte[] bytes(short[] audio, int offset, ByteOrder order) {
+        final ByteBuffer buffer = ByteBuffer.allocate(2 * FRAME).order(order);
+        buffer.asShortBuffer().put(audio, offset, FRAME);
+        return buffer.array();
+    }
+
+    /**
+     * Encodes a frame between {@link #PADDING} bytes of garbage ahead and one byte of garbage behind.
+     */
+    private static byte[] padded(short[] audio, int offset, ByteOrder order) {
+        final byte[] padded = new byte[PADDING + 2 * FRAME + 1];
+        Arrays.fill(padded, (byte) 0x5a);
+        System.arraycopy(bytes(audio, offset, order), 0, padded, PADDING, 2 * FRAME);
+        return padded;
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).rewind();
+        return buffer;
+    }
+
+    private interface Input {
+        void detect(GoertzelDtmfDetector detector, short[] audio, int offset);
+    }
+
+}
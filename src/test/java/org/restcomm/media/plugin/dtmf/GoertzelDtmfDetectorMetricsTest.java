@@ -0,0 +1,136 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GoertzelDtmfDetectorMetricsTest {
+
+    @Test
+    public void testLegAndAggregateMetrics() {
+        // given
+        final GoertzelDtmfDetectorMetrics metrics = new GoertzelDtmfDetectorMetrics();
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings().setToneVolume(-35)
+                .setToneDuration(100).setToneInterval(100);
+        final GoertzelDtmfDetector detector1 = new GoertzelDtmfDetector(settings, metrics);
+        final GoertzelDtmfDetector detector2 = new GoertzelDtmfDetector(settings, metrics);
+
+        // when
+        for (GoertzelDtmfDetector detector : new GoertzelDtmfDetector[]{detector1, detector2}) {
+            for (int i = 0; i < 10; i++) {
+                detector.detect(new byte[320], 20);
+            }
+            for (int i = 0; i < 10; i++) {
+                detector.detect(tone(i, 770, 1336), 20);
+            }
+        }
+
+        // then
+        assertEquals(20, detector1.getProcessedFrames());
+        assertEquals(1, detector1.getDetectedTones());
+        assertEquals(100, detector1.getLastDetectionLatency());
+
+        assertEquals(40, metrics.getProcessedFrames());
+        assertEquals(2, metrics.getDetectedTones());
+        assertEquals(2, metrics.getDetectedTones("5"));
+        assertEquals(0, metrics.getDetectedTones("1"));
+        // Silence received while hibernating only reaches the pre-filter as part of the window the tone starts in, which passes
+        assertEquals(0, metrics.getRejectedWindows(GateStage.ENERGY));
+        assertEquals(2, metrics.getActiveDetectors());
+        assertEquals(detector1.getAnalysedWindows() + detector2.getAnalysedWindows(), metrics.getAnalysedWindows());
+        assertEquals(200, metrics.getLatencySum());
+        assertEquals(2, metrics.getLatencyCount(4));
+    }
+
+    @Test
+    public void testNoiseIsCountedAsRejectedCandidates() {
+        // given
+        final GoertzelDtmfDetectorMetrics metrics = new GoertzelDtmfDetectorMetrics();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings(), metrics);
+        final Random random = new Random(7);
+
+        // when
+        for (int i = 0; i < 50; i++) {
+            final byte[] frame = new byte[320];
+            for (int k = 0; k < frame.length; k += 2) {
+                final int sample = (int) (random.nextGaussian() * 6000);
+                frame[k] = (byte) sample;
+                frame[k + 1] = (byte) (sample >> 8);
+            }
+            detector.detect(frame, 20);
+        }
+
+        // then
+        assertEquals(0, metrics.getDetectedTones());
+        assertTrue(detector.getRejectedCandidates() > 0);
+        assertEquals(detector.getRejectedCandidates(), metrics.getRejectedCandidates());
+    }
+
+    @Test
+    public void testDetectorsDroppedWhileActiveStopBeingCounted() throws Exception {
+        // given
+        final GoertzelDtmfDetectorMetrics metrics = new GoertzelDtmfDetectorMetrics();
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings();
+        final GoertzelDtmfDetector released = new GoertzelDtmfDetector(settings, metrics);
+        GoertzelDtmfDetector dropped = new GoertzelDtmfDetector(settings, metrics);
+        for (int i = 0; i < 10; i++) {
+            released.detect(tone(i, 770, 1336), 20);
+            dropped.detect(tone(i, 770, 1336), 20);
+        }
+        assertEquals(2, metrics.getActiveDetectors());
+
+        // when
+        released.reset();
+        dropped = null;
+        final long deadline = System.nanoTime() + 5_000_000_000L;
+        while (metrics.getActiveDetectors() > 0 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        // then
+        assertEquals(0, metrics.getActiveDetectors());
+        assertEquals(1, metrics.getHibernations());
+        assertEquals(1, metrics.getAbandonedDetectors());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDigit() {
+        new GoertzelDtmfDetectorMetrics().getDetectedTones("E");
+    }
+
+    private static byte[] tone(int frame, int low, int high) {
+        final byte[] data = new byte[320];
+        for (int i = 0; i < 160; i++) {
+            final double t = (frame * 160 + i) / 8000.0;
+            final int sample = (int) (8000 * Math.sin(2 * Math.PI * low * t) + 8000 * Math.sin(2 * Math.PI * high * t));
+            data[2 * i] = (byte) sample;
+            data[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GoertzelDtmfDetectorSampleRateTest {
+
+    private static final int[] LOW = new int[]{697, 770, 852, 941};
+    private static final int[] HIGH = new int[]{1209, 1336, 1477, 1633};
+    private static final String DIGITS = "123A456B789C*0#D";
+
+    @Test
+    public void testWidebandDetection() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(settings(16000, 1));
+        final List<String> tones = observe(detector);
+
+        // when
+        play(detector, 16000, "5");
+
+        // then
+        assertEquals("[5]", tones.toString());
+        assertEquals(1600, detector.getWindowSize());
+    }
+
+    @Test
+    public void testDecimatedWidebandDetection() {
+        // given
+        final GoertzelDtmfDetector detector16k = new GoertzelDtmfDetector(settings(16000, 2));
+        final GoertzelDtmfDetector detector48k = new GoertzelDtmfDetector(settings(48000, 6));
+        final List<String> tones16k = observe(detector16k);
+        final List<String> tones48k = observe(detector48k);
+
+        // when
+        play(detector16k, 16000, DIGITS);
+        play(detector48k, 48000, DIGITS);
+
+        // then
+        assertEquals(DIGITS, String.join("", tones16k));
+        assertEquals(DIGITS, String.join("", tones48k));
+        assertEquals(4800, detector48k.getWindowSize());
+        // Windows are located in received samples: the last window overlaps the last tone
+        final long toneEnd = 16 * 19200;
+        assertTrue(detector48k.getLastToneOffset() > toneEnd - 5760 && detector48k.getLastToneOffset() <= toneEnd);
+    }
+
+    @Test
+    public void testFilterBanksAreSharedPerSampleRateAndWindow() {
+        assertSame(GoertzelFilterBank.dtmf(16000, 1600), GoertzelFilterBank.dtmf(settings(16000, 1)));
+        assertSame(GoertzelFilterBank.dtmf(8000, 800), GoertzelFilterBank.dtmf(settings(16000, 2)));
+        assertNotSame(GoertzelFilterBank.dtmf(8000, 800), GoertzelFilterBank.dtmf(16000, 800));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecimationMustDivideSampleRate() {
+        new GoertzelDtmfDetector(settings(16000, 3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecimatedRateMustStayNarrowband() {
+        new GoertzelDtmfDetector(settings(16000, 4));
+    }
+
+    private static GoertzelDtmfDetectorSettings settings(int sampleRate, int decimation) {
+        return new GoertzelDtmfDetectorSettings().setToneVolume(-35).setToneDuration(100).setToneInterval(200)
+                .setSampleRate(sampleRate).setDecimation(decimation);
+    }
+
+    private static List<String> observe(GoertzelDtmfDetector detector) {
+        final List<String> tones = new ArrayList<>();
+        detector.observe(event -> tones.add(event.getTone()));
+        return tones;
+    }
+
+    /**
+     * Plays every digit for 120 ms after 280 ms of silence, in frames of 20 ms.
+     */
+    private static void play(GoertzelDtmfDetector detector, int sampleRate, String digits) {
+        final int frame = sampleRate / 50;
+        final short[] samples = new short[frame];
+        long position = 0;
+        for (int d = 0; d < digits.length(); d++) {
+            final int tone = DIGITS.indexOf(digits.charAt(d));
+            for (int f = 0; f < 20; f++) {
+                for (int i = 0; i < frame; i++, position++) {
+                    final double t = (double) position / sampleRate;
+                    samples[i] = (f < 14) ? 0 : (short) (8000 * Math.sin(2 * Math.PI * LOW[tone >> 2] * t)
+                            + 8000 * Math.sin(2 * Math.PI * HIGH[tone & 3] * t));
+                }
+                detector.detect(samples, 0, frame, 20);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.restcomm.media.plugin.dtmf.TestTones.play;
+import static org.restcomm.media.plugin.dtmf.TestTones.tone;
+
+public class GoertzelDtmfDetectorSnapshotTest {
+
+    @Test
+    public void testLegMovedAtAnyFrameKeepsItsTimeline() {
+        final List<GoertzelDtmfDetectorSettings> configurations = Arrays.asList(
+                new GoertzelDtmfDetectorSettings(),
+                new GoertzelDtmfDetectorSettings().setToneDuration(40).setHopSize(10),
+                new GoertzelDtmfDetectorSettings().setFixedPoint(true).setHibernateAfter(100),
+                new GoertzelDtmfDetectorSettings().setSampleRate(16000).setDecimation(2),
+                new GoertzelDtmfDetectorSettings().setToneDuration(40).setCascadeDuration(10),
+                new GoertzelDtmfDetectorSettings().setToneFamilies(EnumSet.of(ToneFamily.FAX)));
+
+        for (GoertzelDtmfDetectorSettings settings : configurations) {
+            // given
+            final int rate = settings.getSampleRate() / 8000;
+            final short[] audio = new short[16000 * rate];
+            tone(audio, 1234 * rate, 800 * rate, 8000 * rate, 5000, 697, 1209);
+            tone(audio, 4321 * rate, 90 * 8 * rate, 8000 * rate, 5000, 852, 1477);
+            tone(audio, 7000 * rate, 4000 * rate, 8000 * rate, 5000, 1100, 1100);
+            final int frame = 160 * rate;
+            final List<String> expected = new ArrayList<>();
+            final GoertzelDtmfDetector reference = new GoertzelDtmfDetector(settings);
+            reference.observeTones(new Timeline(expected));
+            play(reference, audio, 0, audio.length, frame);
+
+            for (int split = 0; split <= audio.length; split += frame) {
+                final List<String> timeline = new ArrayList<>();
+                final GoertzelDtmfDetector source = new GoertzelDtmfDetector(settings);
+                final GoertzelDtmfDetector target = new GoertzelDtmfDetector(settings);
+                source.observeTones(new Timeline(timeline));
+                target.observeTones(new Timeline(timeline));
+                play(source, audio, 0, split, frame);
+
+                // when
+                final ByteBuffer snapshot = ByteBuffer.allocate(source.getSnapshotSize());
+                source.snapshot(snapshot);
+                snapshot.flip();
+                target.restore(snapshot);
+                play(target, audio, split, audio.length, frame);
+
+                // then
+                assertFalse(snapshot.hasRemaining());
+                assertEquals("Moved at " + split, expected, timeline);
+            }
+        }
+    }
+
+    @Test
+    public void testHibernatingDetectorTakesFewBytes() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector();
+        final ByteBuffer snapshot = ByteBuffer.allocate(detector.getSnapshotSize());
+        play(detector, new short[1600], 0, 1600, 160);
+
+        // when
+        detector.snapshot(snapshot);
+
+        // then
+        assertTrue(detector.isHibernating());
+        assertEquals(112, snapshot.position());
+        assertTrue(detector.getSnapshotSize() > snapshot.position());
+    }
+
+    @Test
+    public void testSnapshotIgnoresBufferOrder() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector();
+        final short[] audio = new short[1600];
+        tone(audio, 400, 800, 8000, 5000, 941, 1336);
+        play(detector, audio, 0, 1000, 160);
+        final ByteBuffer big = ByteBuffer.allocate(detector.getSnapshotSize());
+        final ByteBuffer little = ByteBuffer.allocateDirect(detector.getSnapshotSize()).order(ByteOrder.LITTLE_ENDIAN);
+
+        // when
+        detector.snapshot(big);
+        detector.snapshot(little);
+        little.flip();
+        final GoertzelDtmfDetector restored = new GoertzelDtmfDetector();
+        restored.restore(little);
+
+        // then
+        assertEquals(ByteOrder.LITTLE_ENDIAN, little.order());
+        assertEquals(big.position(), little.position());
+        little.rewind();
+        big.flip();
+        assertEquals(big, little);
+        assertFalse(restored.isHibernating());
+        assertEquals(detector.getProcessedSamples(), restored.getProcessedSamples());
+        assertEquals(detector.getToneState(), restored.getToneState());
+    }
+
+    @Test
+    public void testIncompatibleSnapshotIsRejected() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector();
+        final ByteBuffer snapshot = ByteBuffer.allocate(detector.getSnapshotSize());
+        detector.snapshot(snapshot);
+        snapshot.flip();
+
+        // when
+        IllegalArgumentException settings = null;
+        try {
+            new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings().setToneDuration(40)).restore(snapshot.duplicate());
+        } catch (IllegalArgumentException e) {
+            settings = e;
+        }
+        snapshot.put(0, (byte) 0);
+        IllegalArgumentException version = null;
+        try {
+            new GoertzelDtmfDetector().restore(snapshot.duplicate());
+        } catch (IllegalArgumentException e) {
+            version = e;
+        }
+
+        // then
+        assertNotNull(settings);
+        assertEquals("Snapshot was written by a detector with another window length: 640 instead of 320", settings.getMessage());
+        assertNotNull(version);
+    }
+
+    @Test
+    public void testRejectedSnapshotLeavesDetectorUntouched() {
+        // given
+        final GoertzelDtmfDetector source = new GoertzelDtmfDetector();
+        final short[] audio = new short[3200];
+        tone(audio, 400, 800, 8000, 5000, 941, 1336);
+        play(source, audio, 0, 1000, 160);
+        final ByteBuffer snapshot = ByteBuffer.allocate(source.getSnapshotSize());
+        source.snapshot(snapshot);
+        snapshot.flip();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector();
+        play(detector, audio, 0, 2400, 160);
+        final ToneState state = detector.getToneState();
+        // State, tone and engine flag, then the window offset of the engine
+        final ByteBuffer[] corrupted = new ByteBuffer[4];
+        for (int i = 0; i < corrupted.length; i++) {
+            corrupted[i] = ByteBuffer.allocate(snapshot.remaining()).put(snapshot.duplicate());
+            corrupted[i].flip();
+        }
+        corrupted[0].put(54, (byte) ToneState.values().length);
+        corrupted[1].put(55, (byte) DtmfToneClassifier.TONES);
+        corrupted[2].put(37, (byte) 2);
+        corrupted[3].putInt(112, -1);
+
+        // when
+        final List<String> rejections = new ArrayList<>();
+        for (ByteBuffer buffer : corrupted) {
+            try {
+                detector.restore(buffer);
+            } catch (IllegalArgumentException e) {
+                rejections.add(e.getMessage());
+                assertEquals(0, buffer.position());
+            }
+        }
+        final ByteBuffer truncated = (ByteBuffer) snapshot.duplicate().limit(snapshot.limit() - 1);
+        try {
+            detector.restore(truncated);
+        } catch (IllegalArgumentException e) {
+            rejections.add(e.getMessage());
+        }
+
+        // then
+        assertEquals(Arrays.asList("Snapshot holds an invalid tone state: " + ToneState.values().length,
+                "Snapshot holds an invalid tone: 16", "Snapshot holds an invalid flag: 2",
+                "Snapshot holds a position out of range: -1", "Snapshot is truncated"), rejections);
+        assertEquals(2400, detector.getProcessedSamples());
+        assertEquals(state, detector.getToneState());
+        assertFalse(detector.isHibernating());
+    }
+
+    private static class Timeline implements DtmfToneObserver {
+
+        private final List<String> events;
+
+        private Timeline(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+            events.add(tone + "@" + onset);
+        }
+
+        @Override
+        public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+            events.add(tone + "@" + onset + "+" + duration);
+        }
+
+    }
+
+}
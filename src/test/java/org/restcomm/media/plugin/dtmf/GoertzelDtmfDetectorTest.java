@@ -38,6 +38,7 @@ import org.restcomm.media.core.spi.memory.Memory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -115,6 +116,29 @@ public class GoertzelDtmfDetectorTest {
         detector.forget(observer);
     }
 
+    @Test
+    public void testDtmf4DigitsSlowOverlapping() {
+        // given
+        final int duration = 6400;
+        final DtmfEventObserver observer = mock(DtmfEventObserver.class);
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(-35, 100, 500, 20);
+        detector.observe(observer);
+
+        // when
+        playDtmfPcapFile("/dtmf_4_digits_slow.pcap", detector);
+
+        // then
+        ArgumentCaptor<DtmfEvent> argument = ArgumentCaptor.forClass(DtmfEvent.class);
+        verify(observer, after(duration).times(4)).onDtmfEvent(argument.capture());
+        List<DtmfEvent> capturedEvents = argument.getAllValues();
+        assertEquals("1", capturedEvents.get(0).getTone());
+        assertEquals("2", capturedEvents.get(1).getTone());
+        assertEquals("3", capturedEvents.get(2).getTone());
+        assertEquals("4", capturedEvents.get(3).getTone());
+
+        detector.forget(observer);
+    }
+
     @Test
     public void testDtmf2DigitPairs() {
         // given
@@ -138,12 +162,92 @@ public class GoertzelDtmfDetectorTest {
         detector.forget(observer);
     }
 
+    @Test
+    public void testDtmf2DigitPairsAlaw() {
+        // given
+        final int duration = 4100;
+        final DtmfEventObserver observer = mock(DtmfEventObserver.class);
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings().setToneVolume(-35).setToneDuration(100)
+                .setToneInterval(200).setEncoding(SampleEncoding.ALAW);
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(settings);
+        detector.observe(observer);
+
+        // when
+        playDtmfPcapFile("/dtmf_2_digit_pairs.pcap", detector, SampleEncoding.ALAW);
+
+        // then
+        ArgumentCaptor<DtmfEvent> argument = ArgumentCaptor.forClass(DtmfEvent.class);
+        verify(observer, after(duration).times(4)).onDtmfEvent(argument.capture());
+        List<DtmfEvent> capturedEvents = argument.getAllValues();
+        assertEquals("1", capturedEvents.get(0).getTone());
+        assertEquals("1", capturedEvents.get(1).getTone());
+        assertEquals("2", capturedEvents.get(2).getTone());
+        assertEquals("2", capturedEvents.get(3).getTone());
+
+        detector.forget(observer);
+    }
+
+    @Test
+    public void testRawAlawMatchesDecodedPcm() throws IOException {
+        testRawPayloadMatchesDecodedPcm(SampleEncoding.ALAW);
+    }
+
+    @Test
+    public void testRawUlawMatchesDecodedPcm() throws IOException {
+        testRawPayloadMatchesDecodedPcm(SampleEncoding.ULAW);
+    }
+
+    private void testRawPayloadMatchesDecodedPcm(SampleEncoding encoding) throws IOException {
+        final String[] resources = {"/dtmf_4_digits_fast.pcap", "/dtmf_4_digits_slow.pcap", "/dtmf_2_digit_pairs.pcap"};
+        final int[] intervals = {100, 500, 200};
+        final String[] digits = {"1234", "1234", "1122"};
+        for (int i = 0; i < resources.length; i++) {
+            // given
+            final GoertzelDtmfDetectorSettings pcm = settings(intervals[i], SampleEncoding.LINEAR);
+            final GoertzelDtmfDetectorSettings g711 = settings(intervals[i], encoding);
+
+            // when
+            final String decoded = detectDtmfPcapFile(resources[i], pcm);
+            final String raw = detectDtmfPcapFile(resources[i], g711);
+
+            // then
+            assertEquals(resources[i], digits[i], decoded);
+            assertEquals(resources[i], decoded, raw);
+        }
+    }
+
+    @Test
+    public void testSilenceIsGatedOut() {
+        // given
+        final DtmfEventObserver observer = mock(DtmfEventObserver.class);
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(-35, 80, 20);
+        detector.observe(observer);
+
+        // when
+        final byte[] silence = new byte[320];
+        for (int i = 0; i < 40; i++) {
+            detector.detect(silence, 20);
+        }
+
+        // then
+        verify(observer, never()).onDtmfEvent(any(DtmfEvent.class));
+        assertEquals(0, detector.getAnalysedWindows());
+        assertEquals(10, detector.getRejectedWindows(GateStage.ENERGY));
+        assertEquals(0, detector.getRejectedWindows(GateStage.ZERO_CROSSING));
+
+        detector.forget(observer);
+    }
+
     private void playDtmfPcapFile(String resourceName, GoertzelDtmfDetector detector) {
+        playDtmfPcapFile(resourceName, detector, SampleEncoding.LINEAR);
+    }
+
+    private void playDtmfPcapFile(String resourceName, GoertzelDtmfDetector detector, SampleEncoding encoding) {
         final URL inputFileUrl = this.getClass().getResource(resourceName);
         PcapFile pcap = new PcapFile(inputFileUrl);
         try {
             pcap.open();
-            final PlayPacketTask task = new PlayPacketTask(pcap, detector,0.0);
+            final PlayPacketTask task = new PlayPacketTask(pcap, detector, 0.0, encoding);
             scheduler.scheduleAtFixedRate(task, 0L, 20L, TimeUnit.MILLISECONDS);
         } catch (IOException e) {
             log.error("Could not read file", e);
@@ -151,16 +255,60 @@ public class GoertzelDtmfDetectorTest {
         }
     }
 
+    private static GoertzelDtmfDetectorSettings settings(int toneInterval, SampleEncoding encoding) {
+        return new GoertzelDtmfDetectorSettings().setToneVolume(-35).setToneDuration(100).setToneInterval(toneInterval)
+                .setHopSize(100).setEncoding(encoding);
+    }
+
+    /**
+     * Feeds every packet of a capture to a new detector without waiting between packets, in the encoding of the settings.
+     *
+     * @return the digits detected, in order.
+     */
+    private String detectDtmfPcapFile(String resourceName, GoertzelDtmfDetectorSettings settings) throws IOException {
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(settings);
+        final List<String> tones = new ArrayList<>();
+        detector.observe(event -> tones.add(event.getTone()));
+        final PcapFile pcap = new PcapFile(this.getClass().getResource(resourceName));
+        pcap.open();
+        final PlayPacketTask task = new PlayPacketTask(pcap, detector, 0.0, settings.getEncoding());
+        while (!pcap.isComplete()) {
+            task.run();
+        }
+        pcap.close();
+        return String.join("", tones);
+    }
+
+    /**
+     * Compresses a linear sample into a mu-law code word as specified by ITU-T G.711.
+     */
+    private static byte linear2ulaw(int sample) {
+        final int sign = (sample < 0) ? 0x80 : 0;
+        final int magnitude = Math.min(Math.abs(sample), 32635) + 0x84;
+        int exponent = 7;
+        for (int mask = 0x4000; (magnitude & mask) == 0 && exponent > 0; mask >>= 1) {
+            exponent--;
+        }
+        final int mantissa = (magnitude >> (exponent + 3)) & 0x0f;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+
     private class PlayPacketTask implements Runnable {
 
         private PcapFile pcap;
         private GoertzelDtmfDetector detector;
         private double lastPacketTimestamp;
+        private SampleEncoding encoding;
 
-        PlayPacketTask(PcapFile pcap, GoertzelDtmfDetector detector, double timestamp) {
+        /**
+         * @param encoding the encoding the payloads are fed in: {@link SampleEncoding#LINEAR} decodes the A-law payloads of the
+         *        capture first, {@link SampleEncoding#ALAW} feeds them as they are and {@link SampleEncoding#ULAW} transcodes them.
+         */
+        PlayPacketTask(PcapFile pcap, GoertzelDtmfDetector detector, double timestamp, SampleEncoding encoding) {
             this.pcap = pcap;
             this.detector = detector;
             this.lastPacketTimestamp = timestamp;
+            this.encoding = encoding;
         }
 
         public void run() {
@@ -177,6 +325,21 @@ public class GoertzelDtmfDetectorTest {
                 final double timestamp = (double) packet.get(Packet.TIMESTAMP_USEC);
                 final int duration = (lastPacketTimestamp == 0.0) ? 20 : (int) ((timestamp - lastPacketTimestamp) * 1000);
 
+                if (encoding == SampleEncoding.ALAW) {
+                    // Raw G.711 payload goes straight into the detector
+                    this.detector.detect(rtpPayload, duration);
+                    return;
+                }
+                if (encoding == SampleEncoding.ULAW) {
+                    final short[] alaw = SampleEncoding.ALAW.getExpansionTable();
+                    final byte[] ulaw = new byte[rtpPayload.length];
+                    for (int i = 0; i < ulaw.length; i++) {
+                        ulaw[i] = linear2ulaw(alaw[rtpPayload[i] & 0xff]);
+                    }
+                    this.detector.detect(ulaw, duration);
+                    return;
+                }
+
                 Frame encodedFrame = Memory.allocate(rtpPayload.length);
                 encodedFrame.setOffset(0);
                 encodedFrame.setLength(rtpPayload.length);
@@ -0,0 +1,150 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import net.ripe.hadoop.pcap.packet.Packet;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.restcomm.media.core.codec.g711.alaw.Decoder;
+import org.restcomm.media.core.pcap.GenericPcapReader;
+import org.restcomm.media.core.pcap.PcapFile;
+import org.restcomm.media.core.resource.dtmf.detector.DtmfEvent;
+import org.restcomm.media.core.resource.dtmf.detector.DtmfEventObserver;
+import org.restcomm.media.core.rtp.RtpPacket;
+import org.restcomm.media.core.spi.memory.Frame;
+import org.restcomm.media.core.spi.memory.Memory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class MultiChannelGoertzelDetectorTest {
+
+    @Test
+    public void testChannelsAreDetectedIndependently() throws IOException {
+        // given
+        final List<byte[]> fast = readDtmfPcapFile("/dtmf_4_digits_fast.pcap");
+        final List<byte[]> pairs = readDtmfPcapFile("/dtmf_2_digit_pairs.pcap");
+        final DtmfEventObserver fastObserver = mock(DtmfEventObserver.class);
+        final DtmfEventObserver idleObserver = mock(DtmfEventObserver.class);
+        final DtmfEventObserver pairsObserver = mock(DtmfEventObserver.class);
+        final MultiChannelGoertzelDetector detector = new MultiChannelGoertzelDetector(3, -35, 100, 200);
+        detector.observe(0, fastObserver);
+        detector.observe(1, idleObserver);
+        detector.observe(2, pairsObserver);
+
+        // when
+        final int frames = Math.max(fast.size(), pairs.size());
+        for (int i = 0; i < frames; i++) {
+            final byte[][] batch = new byte[3][];
+            batch[0] = (i < fast.size()) ? fast.get(i) : null;
+            batch[2] = (i < pairs.size()) ? pairs.get(i) : null;
+            detector.detect(batch, 20);
+        }
+
+        // then
+        verify(idleObserver, never()).onDtmfEvent(any(DtmfEvent.class));
+
+        ArgumentCaptor<DtmfEvent> argument = ArgumentCaptor.forClass(DtmfEvent.class);
+        verify(pairsObserver, times(4)).onDtmfEvent(argument.capture());
+        List<DtmfEvent> capturedEvents = argument.getAllValues();
+        assertEquals("1", capturedEvents.get(0).getTone());
+        assertEquals("1", capturedEvents.get(1).getTone());
+        assertEquals("2", capturedEvents.get(2).getTone());
+        assertEquals("2", capturedEvents.get(3).getTone());
+
+        argument = ArgumentCaptor.forClass(DtmfEvent.class);
+        verify(fastObserver, atLeast(4)).onDtmfEvent(argument.capture());
+        assertEquals("1", argument.getAllValues().get(0).getTone());
+    }
+
+    @Test
+    public void testChannelMatchesSingleDetector() throws IOException {
+        // given
+        final List<byte[]> slow = readDtmfPcapFile("/dtmf_4_digits_slow.pcap");
+        final DtmfEventObserver multiObserver = mock(DtmfEventObserver.class);
+        final DtmfEventObserver singleObserver = mock(DtmfEventObserver.class);
+        final MultiChannelGoertzelDetector multi = new MultiChannelGoertzelDetector(100, -35, 100, 500);
+        final GoertzelDtmfDetector single = new GoertzelDtmfDetector(-35, 100, 500);
+        multi.observe(42, multiObserver);
+        single.observe(singleObserver);
+
+        // when
+        for (byte[] frame : slow) {
+            final byte[][] batch = new byte[100][];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = frame;
+            }
+            multi.detect(batch, 20);
+            single.detect(frame, 20);
+        }
+
+        // then
+        ArgumentCaptor<DtmfEvent> multiEvents = ArgumentCaptor.forClass(DtmfEvent.class);
+        ArgumentCaptor<DtmfEvent> singleEvents = ArgumentCaptor.forClass(DtmfEvent.class);
+        verify(multiObserver, times(4)).onDtmfEvent(multiEvents.capture());
+        verify(singleObserver, times(4)).onDtmfEvent(singleEvents.capture());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(singleEvents.getAllValues().get(i).getTone(), multiEvents.getAllValues().get(i).getTone());
+        }
+    }
+
+    private List<byte[]> readDtmfPcapFile(String resourceName) throws IOException {
+        final URL inputFileUrl = this.getClass().getResource(resourceName);
+        final Decoder decoder = new Decoder();
+        final List<byte[]> frames = new ArrayList<>();
+        final PcapFile pcap = new PcapFile(inputFileUrl);
+        pcap.open();
+        try {
+            while (!pcap.isComplete()) {
+                final Packet packet = pcap.read();
+                byte[] payload = (byte[]) packet.get(GenericPcapReader.PAYLOAD);
+
+                final RtpPacket rtpPacket = new RtpPacket(false);
+                rtpPacket.wrap(payload);
+
+                final byte[] rtpPayload = new byte[rtpPacket.getPayloadLength()];
+                rtpPacket.getPayload(rtpPayload);
+
+                Frame encodedFrame = Memory.allocate(rtpPayload.length);
+                encodedFrame.setOffset(0);
+                encodedFrame.setLength(rtpPayload.length);
+                encodedFrame.setFormat(decoder.getSupportedInputFormat());
+                encodedFrame.setDuration(20);
+                System.arraycopy(rtpPayload, 0, encodedFrame.getData(), 0, rtpPayload.length);
+                Frame decodedFrame = decoder.process(encodedFrame);
+
+                final byte[] pcm = new byte[decodedFrame.getLength()];
+                System.arraycopy(decodedFrame.getData(), decodedFrame.getOffset(), pcm, 0, pcm.length);
+                frames.add(pcm);
+            }
+        } finally {
+            pcap.close();
+        }
+        return frames;
+    }
+
+}
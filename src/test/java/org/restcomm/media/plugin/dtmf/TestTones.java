@@ -0,0 +1,73 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+/**
+ * Synthetic audio shared by the detector tests.
+ */
+final class TestTones {
+
+    static final int SAMPLE_RATE = 8000;
+    static final int AMPLITUDE = 6000;
+    static final int FRAME = 160;
+
+    private TestTones() {
+    }
+
+    /**
+     * Adds a dual tone of 8 kHz audio, {@value #AMPLITUDE} per component, to {@code length} samples from {@code offset}.
+     */
+    static void tone(short[] audio, int offset, int length, double low, double high) {
+        tone(audio, offset, length, SAMPLE_RATE, AMPLITUDE, low, high);
+    }
+
+    /**
+     * Adds the sum of the frequencies, each of the given amplitude, to {@code length} samples from {@code offset}.
+     */
+    static void tone(short[] audio, int offset, int length, int sampleRate, int amplitude, double... frequencies) {
+        for (int i = offset; i < offset + length; i++) {
+            final double t = i / (double) sampleRate;
+            double sample = 0;
+            for (double frequency : frequencies) {
+                sample += amplitude * Math.sin(2 * Math.PI * frequency * t);
+            }
+            audio[i] += (short) sample;
+        }
+    }
+
+    /**
+     * Feeds the whole signal to the detector in frames of 20 ms of 8 kHz audio.
+     */
+    static void play(GoertzelDtmfDetector detector, short[] audio) {
+        play(detector, audio, 0, audio.length, FRAME);
+    }
+
+    /**
+     * Feeds the samples from {@code from} to {@code to} to the detector in frames of 20 ms.
+     */
+    static void play(GoertzelDtmfDetector detector, short[] audio, int from, int to, int frame) {
+        for (int offset = from; offset < to; offset += frame) {
+            detector.detect(audio, offset, frame, 20);
+        }
+    }
+
+}
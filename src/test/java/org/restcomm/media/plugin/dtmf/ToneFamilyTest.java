@@ -0,0 +1,203 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.restcomm.media.plugin.dtmf.TestTones.play;
+import static org.restcomm.media.plugin.dtmf.TestTones.tone;
+
+public class ToneFamilyTest {
+
+    private static final int SAMPLE_RATE = 8000;
+
+    @Test
+    public void testFaxTones() {
+        // given
+        final GoertzelDtmfDetectorMetrics metrics = new GoertzelDtmfDetectorMetrics();
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneFamilies(EnumSet.of(ToneFamily.FAX)), metrics);
+        final List<String> events = new ArrayList<>();
+        final List<long[]> edges = new ArrayList<>();
+        detector.observe(event -> events.add(event.getTone()));
+        detector.observeTones(new EdgeRecorder(edges));
+        final short[] audio = new short[8 * SAMPLE_RATE];
+        tone(audio, 4000, 4000, SAMPLE_RATE, 6000, 1100); // CNG, 0.5s
+        tone(audio, 32000, 8000, SAMPLE_RATE, 6000, 1100); // CNG
+        tone(audio, 52000, 200, SAMPLE_RATE, 6000, 2100); // Too short for CED
+        tone(audio, 56000, 8000, SAMPLE_RATE, 6000, 2100); // CED, 1s
+
+        // when
+        play(detector, audio);
+        detector.flush();
+
+        // then
+        assertEquals(Arrays.asList("CNG", "CNG", "CED"), events);
+        assertEquals(4000, edges.get(0)[0], 640);
+        assertEquals(4000, edges.get(0)[1], 640);
+        assertEquals(56000, edges.get(2)[0], 640);
+        assertEquals(8000, edges.get(2)[1], 640);
+        assertEquals(2, metrics.getDetectedTones("CNG"));
+        assertEquals(1, metrics.getDetectedTones("CED"));
+        assertEquals(3, metrics.getDetectedTones());
+    }
+
+    @Test
+    public void testBusyCadence() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneFamilies(EnumSet.of(ToneFamily.CALL_PROGRESS)));
+        final List<String> events = new ArrayList<>();
+        final List<long[]> edges = new ArrayList<>();
+        detector.observe(event -> events.add(event.getTone()));
+        detector.observeTones(new EdgeRecorder(edges));
+        final short[] audio = new short[5 * SAMPLE_RATE];
+        tone(audio, 0, 8000, SAMPLE_RATE, 3000, 350, 440); // Dial tone
+        for (int i = 0; i < 3; i++) {
+            tone(audio, 12000 + i * 8000, 4000, SAMPLE_RATE, 3000, 480, 620); // Busy, 0.5s on and 0.5s off
+        }
+
+        // when
+        play(detector, audio);
+        detector.flush();
+
+        // then
+        assertEquals(Arrays.asList("DIAL", "BUSY", "BUSY", "BUSY"), events);
+        for (int i = 1; i < edges.size(); i++) {
+            assertEquals(4000, edges.get(i)[1], 640);
+        }
+    }
+
+    @Test
+    public void testMfDigits() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings().setToneDuration(40)
+                .setToneFamilies(EnumSet.of(ToneFamily.MF_R1, ToneFamily.MF_R2_FORWARD)));
+        final List<String> events = new ArrayList<>();
+        detector.observe(event -> events.add(event.getTone()));
+        final short[] audio = new short[SAMPLE_RATE];
+        int offset = 400;
+        offset = mf(audio, offset, 800, 1100, 1700); // KP
+        offset = mf(audio, offset, 544, 700, 900); // 1
+        offset = mf(audio, offset, 544, 1300, 1500); // 0
+        offset = mf(audio, offset, 544, 900, 1700); // ST'
+        mf(audio, offset, 544, 1500, 1700); // ST
+
+        // when
+        play(detector, audio);
+        detector.flush();
+
+        // then
+        assertEquals(Arrays.asList("MFKP", "MF1", "MF0", "MFSTP", "MFST"), events);
+    }
+
+    @Test
+    public void testDtmfIsNotAffected() {
+        // given
+        final GoertzelDtmfDetector dtmf = new GoertzelDtmfDetector(new GoertzelDtmfDetectorSettings());
+        final GoertzelDtmfDetector all = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneFamilies(EnumSet.allOf(ToneFamily.class)));
+        final List<long[]> dtmfEdges = new ArrayList<>();
+        final List<long[]> allEdges = new ArrayList<>();
+        dtmf.observeTones(new EdgeRecorder(dtmfEdges));
+        all.observeTones(new EdgeRecorder(allEdges));
+        final short[] audio = new short[2 * SAMPLE_RATE];
+        tone(audio, 1000, 800, SAMPLE_RATE, 4000, 697, 1209); // 1
+        tone(audio, 3000, 1200, SAMPLE_RATE, 4000, 941, 1336); // 0
+        tone(audio, 7000, 800, SAMPLE_RATE, 4000, 852, 1477); // 9
+
+        // when
+        play(dtmf, audio);
+        dtmf.flush();
+        play(all, audio);
+        all.flush();
+
+        // then
+        assertEquals(3, allEdges.size());
+        assertEquals(dtmfEdges.size(), allEdges.size());
+        for (int i = 0; i < allEdges.size(); i++) {
+            assertArrayEquals(dtmfEdges.get(i), allEdges.get(i));
+        }
+    }
+
+    @Test
+    public void testNoiseIsNotReported() {
+        // given
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(
+                new GoertzelDtmfDetectorSettings().setToneFamilies(EnumSet.allOf(ToneFamily.class)));
+        final List<String> events = new ArrayList<>();
+        detector.observe(event -> events.add(event.getTone()));
+        final Random random = new Random(7);
+        final short[] audio = new short[10 * SAMPLE_RATE];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (short) (random.nextGaussian() * 3000);
+        }
+
+        // when
+        play(detector, audio);
+        detector.flush();
+
+        // then
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testToneNames() {
+        assertEquals("9", ToneFamily.getName(ToneFamily.getTone("9")));
+        assertEquals("CED", ToneFamily.getName(ToneFamily.getTone("CED")));
+        assertEquals("R2B15", ToneFamily.getName(ToneFamily.MF_R2_BACKWARD.getTone(14)));
+        assertEquals(ToneFamily.getTones() - 1, ToneFamily.MF_R2_BACKWARD.getTone(14));
+        assertEquals(-1, ToneFamily.getTone("X"));
+    }
+
+    private static int mf(short[] audio, int offset, int length, double low, double high) {
+        tone(audio, offset, length, SAMPLE_RATE, 4000, low, high);
+        return offset + 2 * length;
+    }
+
+    private static class EdgeRecorder implements DtmfToneObserver {
+
+        private final List<long[]> edges;
+
+        private EdgeRecorder(List<long[]> edges) {
+            this.edges = edges;
+        }
+
+        @Override
+        public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+        }
+
+        @Override
+        public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+            edges.add(new long[]{onset, duration});
+        }
+
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.analyzer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorSettings;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class RecordingAnalyzerTest {
+
+    private Path wav;
+
+    @After
+    public void after() throws IOException {
+        if (wav != null) {
+            Files.deleteIfExists(wav);
+        }
+    }
+
+    @Test
+    public void testPcapTimeline() throws Exception {
+        // given
+        final RecordingAnalyzer analyzer = new RecordingAnalyzer(settings(-35, 100, 200));
+
+        // when
+        final List<DtmfTimeline> timelines = analyzer.analyze(resource("/dtmf_4_digits_slow.pcap"));
+
+        // then
+        assertEquals(1, timelines.size());
+        final DtmfTimeline timeline = timelines.get(0);
+        assertEquals("ssrc=0x21d94f3a 192.168.1.60:63608 > 54.152.43.232:55920", timeline.getCall());
+        assertEquals(8000, timeline.getSampleRate());
+        assertEquals("1234", timeline.getTones());
+        assertEquals(16000, timeline.getDigits().get(1).getStartSample(), 10);
+        assertEquals(17280, timeline.getDigits().get(1).getEndSample(), 10);
+    }
+
+    @Test
+    public void testPcapTimelineAcrossMappedRegions() throws Exception {
+        // given
+        final GoertzelDtmfDetectorSettings settings = settings(-35, 80, 200);
+        final RecordingAnalyzer analyzer = new RecordingAnalyzer(settings);
+        final RecordingAnalyzer smallRegionAnalyzer = new RecordingAnalyzer(settings, ForkJoinPool.commonPool(), 300);
+
+        // when
+        final List<DtmfTimeline> timelines = analyzer.analyze(resource("/dtmf_2_digit_pairs.pcap"));
+        final List<DtmfTimeline> smallRegionTimelines = smallRegionAnalyzer.analyze(resource("/dtmf_2_digit_pairs.pcap"));
+
+        // then
+        assertEquals("1122", timelines.get(0).getTones());
+        assertEquals(timelines.get(0).getDigits().toString(), smallRegionTimelines.get(0).getDigits().toString());
+    }
+
+    @Test
+    public void testBatchKeepsOrderAndSkipsUnreadableRecordings() throws Exception {
+        // given
+        final RecordingAnalyzer analyzer = new RecordingAnalyzer(settings(-35, 100, 200));
+        final List<Path> recordings = Arrays.asList(resource("/dtmf_4_digits_fast.pcap"), Paths.get("missing.pcap"),
+                resource("/dtmf_2_digit_pairs.pcap"), resource("/dtmf_4_digits_slow.pcap"));
+
+        // when
+        final List<DtmfTimeline> timelines = analyzer.analyze(recordings);
+
+        // then
+        assertEquals(3, timelines.size());
+        assertEquals("1234", timelines.get(0).getTones());
+        assertEquals("1122", timelines.get(1).getTones());
+        assertEquals("1234", timelines.get(2).getTones());
+        assertEquals(recordings.get(3), timelines.get(2).getRecording());
+    }
+
+    @Test
+    public void testMonoWavTimeline() throws Exception {
+        // given
+        final short[] audio = new short[8000];
+        tone(audio, 800, 960, 852, 1477); // 9
+        tone(audio, 4000, 960, 941, 1209); // *
+        wav = writeWav(audio);
+        final RecordingAnalyzer analyzer = new RecordingAnalyzer(settings(-35, 100, 100));
+
+        // when
+        final List<DtmfTimeline> timelines = analyzer.analyze(wav);
+
+        // then
+        assertEquals(1, timelines.size());
+        assertEquals("mono", timelines.get(0).getCall());
+        assertEquals("9*", timelines.get(0).getTones());
+        // Tone edges are located within the windows, not just at their boundaries
+        final DetectedDigit first = timelines.get(0).getDigits().get(0);
+        assertEquals(800, first.getStartSample(), 10);
+        assertEquals(1760, first.getEndSample(), 10);
+        final DetectedDigit second = timelines.get(0).getDigits().get(1);
+        assertEquals(4000, second.getStartSample(), 10);
+        assertEquals(4960, second.getEndSample(), 10);
+    }
+
+    @Test
+    public void testStereoWavHasOneTimelinePerChannel() throws Exception {
+        // given
+        final short[] left = new short[8000];
+        final short[] right = new short[8000];
+        tone(left, 1600, 960, 697, 1336); // 2
+        tone(right, 4800, 960, 770, 1633); // B
+        final short[] audio = new short[16000];
+        for (int i = 0; i < left.length; i++) {
+            audio[2 * i] = left[i];
+            audio[2 * i + 1] = right[i];
+        }
+        wav = writeWav(audio, 2);
+        final RecordingAnalyzer analyzer = new RecordingAnalyzer(settings(-35, 100, 100));
+
+        // when
+        final List<DtmfTimeline> timelines = analyzer.analyze(wav);
+
+        // then
+        assertEquals(2, timelines.size());
+        assertEquals("2", timelines.get(0).getTones());
+        assertEquals(1600, timelines.get(0).getDigits().get(0).getStartSample(), 10);
+        assertEquals("B", timelines.get(1).getTones());
+        assertEquals(4800, timelines.get(1).getDigits().get(0).getStartSample(), 10);
+    }
+
+    @Test
+    public void testWidebandWavIsDecimated() throws Exception {
+        // given
+        final short[] audio = new short[16000];
+        tone(audio, 16000, 3200, 1920, 941, 1477); // #
+        wav = writeWav(audio, 1, 16000);
+        final RecordingAnalyzer analyzer = new RecordingAnalyzer(settings(-35, 100, 100));
+
+        // when
+        final List<DtmfTimeline> timelines = analyzer.analyze(wav);
+
+        // then
+        assertEquals(16000, timelines.get(0).getSampleRate());
+        assertEquals("#", timelines.get(0).getTones());
+        assertEquals(3200, timelines.get(0).getDigits().get(0).getStartSample(), 20);
+        assertEquals(5120, timelines.get(0).getDigits().get(0).getEndSample(), 20);
+    }
+
+    @Test
+    public void testWidebandDecimationFactor() {
+        assertEquals(1, WavScanner.decimation(8000));
+        assertEquals(1, WavScanner.decimation(11025));
+        assertEquals(2, WavScanner.decimation(16000));
+        assertEquals(5, WavScanner.decimation(44100));
+        assertEquals(6, WavScanner.decimation(48000));
+    }
+
+    private Path resource(String name) throws URISyntaxException {
+        return Paths.get(getClass().getResource(name).toURI());
+    }
+
+    private GoertzelDtmfDetectorSettings settings(int toneVolume, int toneDuration, int toneInterval) {
+        return new GoertzelDtmfDetectorSettings().setToneVolume(toneVolume).setToneDuration(toneDuration)
+                .setToneInterval(toneInterval);
+    }
+
+    private static void tone(short[] audio, int offset, int length, int low, int high) {
+        tone(audio, 8000, offset, length, low, high);
+    }
+
+    private static void tone(short[] audio, int sampleRate, int offset, int length, int low, int high) {
+        for (int i = 0; i < length; i++) {
+            final double t = (double) i / sampleRate;
+            audio[offset + i] = (short) (8000 * Math.sin(2 * Math.PI * low * t) + 8000 * Math.sin(2 * Math.PI * high * t));
+        }
+    }
+
+    private static Path writeWav(short[] samples) throws IOException {
+        return writeWav(samples, 1);
+    }
+
+    private static Path writeWav(short[] samples, int channels) throws IOException {
+        return writeWav(samples, channels, 8000);
+    }
+
+    private static Path writeWav(short[] samples, int channels, int sampleRate) throws IOException {
+        final ByteBuffer wav = ByteBuffer.allocate(44 + 2 * samples.length).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes("US-ASCII")).putInt(36 + 2 * samples.length).put("WAVE".getBytes("US-ASCII"));
+        wav.put("fmt ".getBytes("US-ASCII")).putInt(16).putShort((short) 1).putShort((short) channels).putInt(sampleRate)
+                .putInt(2 * sampleRate * channels).putShort((short) (2 * channels)).putShort((short) 16);
+        wav.put("data".getBytes("US-ASCII")).putInt(2 * samples.length);
+        for (short sample : samples) {
+            wav.putShort(sample);
+        }
+
+        final Path file = Files.createTempFile("dtmf", ".wav");
+        Files.write(file, wav.array());
+        return file;
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.benchmark;
+
+import org.restcomm.media.plugin.dtmf.DtmfToneObserver;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetector;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorSettings;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+/**
+ * Measures how accurately and how fast detectors find the digits of synthetic calls.
+ * <p>
+ * Every configuration, a {@link Scenario} run against a set of detector settings, replays a number of calls through fresh
+ * detectors. Calls are spread over the common fork-join pool and fed to the detectors as fast as the CPU allows, one 20 ms
+ * frame after another. A digit is detected when the detector reports the same tone over part of the same samples, any
+ * other report is a false alarm. For every configuration the harness prints:
+ * <ul>
+ * <li>the share of digits detected, in percent;</li>
+ * <li>the number of false alarms per hour of audio;</li>
+ * <li>the number of frames a single core processes per second, counting the time spent in the detector only.</li>
+ * </ul>
+ * Calls are generated from a fixed seed, so accuracy figures only change when the detector does. Every configuration is
+ * preceded by a short warm-up run of other calls that is not reported.
+ * <p>
+ * Configurations are also checked against ITU-T Q.24: a detector must find at least 99% of the digits of scenarios whose
+ * digits Q.24 requires receivers to accept, and at most 1% of the others. Configurations that fall short are reported as not
+ * compliant and recorded as such in the baseline, which keeps tracking them: a configuration known not to comply only
+ * passes as long as it does no worse than its baseline, and one that complied fails as soon as it no longer does.
+ *
+ * @see #main(String[])
+ */
+public final class AccuracyHarness {
+
+    private static final int FRAME_SIZE = 20;
+    private static final int FRAME_LENGTH = Signals.SAMPLE_RATE / 1000 * FRAME_SIZE;
+
+    private static final int WARMUP_CALLS = 200;
+
+    // Share of digits, in percent, a configuration must detect where Q.24 requires acceptance, or may detect where it
+    // requires rejection
+    private static final double MIN_ACCEPTED = 99;
+    private static final double MAX_REJECTED = 1;
+
+    private static final String HEADER = "scenario,toneVolume,toneDuration,toneInterval,calls,detectionRate,falseAlarmsPerHour,framesPerSecond,q24";
+
+    // Values of the q24 column of the baseline
+    private static final String COMPLIANT = "ok";
+    private static final String NON_COMPLIANT = "fails";
+
+    private AccuracyHarness() {
+        super();
+    }
+
+    /**
+     * Outcome of a configuration.
+     */
+    public static final class Result {
+
+        private long calls;
+        private long digits;
+        private long detected;
+        private long falseAlarms;
+        private long samples;
+        private long frames;
+        private long nanos;
+
+        private void merge(Result other) {
+            calls += other.calls;
+            digits += other.digits;
+            detected += other.detected;
+            falseAlarms += other.falseAlarms;
+            samples += other.samples;
+            frames += other.frames;
+            nanos += other.nanos;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getDigits() {
+            return digits;
+        }
+
+        public long getDetected() {
+            return detected;
+        }
+
+        public long getFalseAlarms() {
+            return falseAlarms;
+        }
+
+        /**
+         * @return the share of digits detected, in percent. 100 when the calls hold no digit.
+         */
+        public double getDetectionRate() {
+            return (digits == 0) ? 100 : 100.0 * detected / digits;
+        }
+
+        /**
+         * @return the number of false alarms per hour of audio.
+         */
+        public double getFalseAlarmsPerHour() {
+            return (samples == 0) ? 0 : falseAlarms * 3600.0 * Signals.SAMPLE_RATE / samples;
+        }
+
+        /**
+         * @return the number of frames a single core processes per second.
+         */
+        public double getFramesPerSecond() {
+            return (nanos == 0) ? 0 : frames * 1e9 / nanos;
+        }
+
+    }
+
+    /**
+     * Runs a configuration.
+     *
+     * @param scenario the calls to generate.
+     * @param settings the settings of the detectors.
+     * @param calls the number of calls.
+     * @param seed the seed of the first call, following calls use the next seeds.
+     * @return the outcome.
+     */
+    public static Result run(Scenario scenario, GoertzelDtmfDetectorSettings settings, int calls, long seed) {
+        final GoertzelDtmfDetectorSettings copy = new GoertzelDtmfDetectorSettings(settings);
+        return LongStream.range(seed, seed + calls).parallel()
+                .mapToObj(s -> call(scenario, copy, s))
+                .collect(Result::new, Result::merge, Result::merge);
+    }
+
+    private static Result call(Scenario scenario, GoertzelDtmfDetectorSettings settings, long seed) {
+        final SyntheticCall call = SyntheticCall.generate(scenario, seed);
+        final String tones = call.getTones();
+        final long[] onsets = call.getOnsets();
+        final long[] ends = call.getEnds();
+        final boolean[] matched = new boolean[tones.length()];
+        final Result result = new Result();
+
+        final GoertzelDtmfDetector detector = new GoertzelDtmfDetector(settings);
+        detector.observeTones(new DtmfToneObserver() {
+
+            @Override
+            public void onToneBegin(GoertzelDtmfDetector detector, String tone, long onset) {
+            }
+
+            @Override
+            public void onToneEnd(GoertzelDtmfDetector detector, String tone, long onset, long duration) {
+                for (int i = 0; i < matched.length; i++) {
+                    if (!matched[i] && tone.charAt(0) == tones.charAt(i) && onset < ends[i] && onset + duration > onsets[i]) {
+                        matched[i] = true;
+                        result.detected++;
+                        return;
+                    }
+                }
+                result.falseAlarms++;
+            }
+
+        });
+
+        final short[] samples = call.getSamples();
+        final long start = System.nanoTime();
+        for (int offset = 0; offset < samples.length; offset += FRAME_LENGTH) {
+            detector.detect(samples, offset, Math.min(FRAME_LENGTH, samples.length - offset), FRAME_SIZE);
+            result.frames++;
+        }
+        detector.flush();
+        result.nanos = System.nanoTime() - start;
+
+        result.calls = 1;
+        result.digits = tones.length();
+        result.samples = samples.length;
+        return result;
+    }
+
+    /**
+     * Runs every standard scenario against a grid of detector settings, prints the outcome and optionally checks it against
+     * a baseline.
+     * <p>
+     * Options:
+     * <ul>
+     * <li><code>-calls n</code>: number of calls per configuration, 2000 by default;</li>
+     * <li><code>-seed n</code>: seed of the first call, 1 by default;</li>
+     * <li><code>-scenario a,b</code>: names of the scenarios to run, all standard ones by default;</li>
+     * <li><code>-toneVolume a,b</code>, <code>-toneDuration a,b</code>, <code>-toneInterval a,b</code>: values of the detector
+     * settings to combine, by default -35 dBm0, 40 and 80 ms, and 20 ms;</li>
+     * <li><code>-baseline file</code>: CSV file of results to compare with. The run fails when a configuration of the baseline
+     * detects more than <code>-tolerance</code> percentage points (1 by default) more digits, raises 20% fewer false alarms
+     * (plus one per hour), or processes frames more than <code>-speedTolerance</code> (0.5 by default) times faster. It
+     * also fails when a configuration that complied with Q.24 in the baseline no longer does, while configurations known
+     * not to comply are held to their baseline figures. Accuracy is only compared when the baseline was recorded with as
+     * many calls and the same seed;</li>
+     * <li><code>-write file</code>: CSV file the results are written to, to record a new baseline, with whether every
+     * configuration complies with Q.24.</li>
+     * </ul>
+     *
+     * @param args the options.
+     */
+    public static void main(String[] args) throws IOException {
+        final Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("-")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(1), args[i + 1]);
+        }
+
+        final int calls = Integer.parseInt(options.getOrDefault("calls", "2000"));
+        final long seed = Long.parseLong(options.getOrDefault("seed", "1"));
+        final double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "1"));
+        final double speedTolerance = Double.parseDouble(options.getOrDefault("speedTolerance", "0.5"));
+        final List<Scenario> scenarios = new ArrayList<>();
+        final String names = options.get("scenario");
+        for (Scenario scenario : Scenario.standard()) {
+            if (names == null || ("," + names + ",").contains("," + scenario.getName() + ",")) {
+                scenarios.add(scenario);
+            }
+        }
+
+        final Map<String, String[]> baseline = options.containsKey("baseline") ? read(Paths.get(options.get("baseline")))
+                : new HashMap<>();
+        final List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        int regressions = 0;
+        int nonCompliant = 0;
+        int knownNonCompliant = 0;
+
+        System.out.println(String.format(Locale.ROOT, "%-12s %6s %6s %6s %8s %10s %12s %12s  %-6s %s", "scenario", "volume",
+                "window", "gap", "calls", "detected%", "false/hour", "frames/s", "Q.24", "baseline"));
+        for (Scenario scenario : scenarios) {
+            for (int toneVolume : ints(options.getOrDefault("toneVolume", "-35"))) {
+                for (int toneDuration : ints(options.getOrDefault("toneDuration", "40,80"))) {
+                    for (int toneInterval : ints(options.getOrDefault("toneInterval", "20"))) {
+                        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings()
+                                .setToneVolume(toneVolume).setToneDuration(toneDuration).setToneInterval(toneInterval);
+                        // Warm up with calls of other seeds so the first configurations are not timed in the interpreter
+                        run(scenario, settings, Math.min(calls, WARMUP_CALLS), seed - WARMUP_CALLS);
+                        final Result result = run(scenario, settings, calls, seed);
+
+                        final String key = scenario.getName() + "," + toneVolume + "," + toneDuration + "," + toneInterval;
+                        final String[] reference = baseline.get(key);
+                        final boolean compliant = isCompliant(scenario, result);
+                        final String verdict = compare(result, compliant, reference, tolerance, speedTolerance);
+                        if (verdict.startsWith("REGRESSION")) {
+                            regressions++;
+                        }
+                        if (!compliant) {
+                            nonCompliant++;
+                            if (reference != null && NON_COMPLIANT.equals(reference[8])) {
+                                knownNonCompliant++;
+                            }
+                        }
+                        lines.add(String.format(Locale.ROOT, "%s,%d,%.2f,%.1f,%.0f,%s", key, result.getCalls(),
+                                result.getDetectionRate(), result.getFalseAlarmsPerHour(), result.getFramesPerSecond(),
+                                compliant ? COMPLIANT : NON_COMPLIANT));
+                        System.out.println(String.format(Locale.ROOT, "%-12s %6d %6d %6d %8d %10.2f %12.1f %12.0f  %-6s %s",
+                                scenario.getName(), toneVolume, toneDuration, toneInterval, result.getCalls(),
+                                result.getDetectionRate(), result.getFalseAlarmsPerHour(), result.getFramesPerSecond(),
+                                compliant ? "ok" : "FAILS", verdict));
+                    }
+                }
+            }
+        }
+
+        if (options.containsKey("write")) {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(options.get("write")), StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        }
+        if (nonCompliant > 0) {
+            System.out.println(nonCompliant + " configuration(s) do not comply with ITU-T Q.24, " + knownNonCompliant
+                    + " of them known from the baseline");
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " configuration(s) regressed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Checks a configuration against the frequency tolerance and signal conditions of ITU-T Q.24.
+     *
+     * @param scenario the scenario the calls were generated from.
+     * @param result the outcome of the configuration.
+     * @return whether the detector accepted the digits it had to accept, or rejected the ones it had to reject.
+     */
+    static boolean isCompliant(Scenario scenario, Result result) {
+        if (result.getDigits() == 0) {
+            return true;
+        }
+        return scenario.isAccepted() ? result.getDetectionRate() >= MIN_ACCEPTED : result.getDetectionRate() <= MAX_REJECTED;
+    }
+
+    /**
+     * Compares the outcome of a configuration with its baseline.
+     *
+     * @param result the outcome of the configuration.
+     * @param compliant whether the outcome complies with Q.24.
+     * @param baseline the columns of the baseline of the configuration. May be null.
+     * @param tolerance the drop in detection rate allowed, in percentage points.
+     * @param speedTolerance the share of throughput that may be lost.
+     * @return the verdict, which starts with <code>REGRESSION</code> if the configuration does worse than its baseline.
+     */
+    static String compare(Result result, boolean compliant, String[] baseline, double tolerance, double speedTolerance) {
+        if (baseline == null) {
+            return "-";
+        }
+
+        final long calls = Long.parseLong(baseline[4]);
+        final double detectionRate = Double.parseDouble(baseline[5]);
+        final double falseAlarms = Double.parseDouble(baseline[6]);
+        final double framesPerSecond = Double.parseDouble(baseline[7]);
+        final boolean wasCompliant = !NON_COMPLIANT.equals(baseline[8]);
+        final StringBuilder verdict = new StringBuilder();
+        // Accuracy is only comparable over the same calls
+        if (result.getCalls() == calls) {
+            if (wasCompliant && !compliant) {
+                verdict.append(" no longer complies with Q.24");
+            }
+            if (result.getDetectionRate() < detectionRate - tolerance) {
+                verdict.append(String.format(Locale.ROOT, " detection %.2f%% < %.2f%%", result.getDetectionRate(), detectionRate));
+            }
+            if (result.getFalseAlarmsPerHour() > falseAlarms * 1.2 + 1) {
+                verdict.append(String.format(Locale.ROOT, " false alarms %.1f > %.1f", result.getFalseAlarmsPerHour(), falseAlarms));
+            }
+        }
+        if (result.getFramesPerSecond() < framesPerSecond * (1 - speedTolerance)) {
+            verdict.append(String.format(Locale.ROOT, " speed %.0f < %.0f", result.getFramesPerSecond(), framesPerSecond));
+        }
+        if (verdict.length() > 0) {
+            return "REGRESSION" + verdict;
+        }
+        if (result.getCalls() != calls) {
+            return "ok (speed only, baseline has " + calls + " calls)";
+        }
+        return (!wasCompliant && compliant) ? "ok (now complies with Q.24)" : "ok";
+    }
+
+    private static Map<String, String[]> read(Path path) throws IOException {
+        final Map<String, String[]> baseline = new HashMap<>();
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#") || line.equals(HEADER)) {
+                continue;
+            }
+            final String[] columns = line.split(",");
+            baseline.put(columns[0] + "," + columns[1] + "," + columns[2] + "," + columns[3], columns);
+        }
+        return baseline;
+    }
+
+    private static int[] ints(String values) {
+        final String[] parts = values.split(",");
+        final int[] ints = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            ints[i] = Integer.parseInt(parts[i].trim());
+        }
+        return ints;
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.benchmark;
+
+import org.junit.Test;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorSettings;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class AccuracyHarnessTest {
+
+    @Test
+    public void testSyntheticCallsAreReproducible() {
+        // given
+        final Scenario scenario = new Scenario("test").setDigits(3).setOverlay(Scenario.Overlay.SPEECH).setOverlayLevel(-30);
+
+        // when
+        final SyntheticCall first = SyntheticCall.generate(scenario, 7);
+        final SyntheticCall second = SyntheticCall.generate(scenario, 7);
+
+        // then
+        assertArrayEquals(first.getSamples(), second.getSamples());
+        assertEquals(3, first.getTones().length());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(800, first.getEnds()[i] - first.getOnsets()[i]);
+        }
+        assertEquals(800, first.getOnsets()[1] - first.getEnds()[0]);
+        assertEquals(first.getSamples().length, first.getEnds()[2] + 800);
+    }
+
+    @Test
+    public void testNominalDigitsAreDetected() {
+        // given
+        final Scenario scenario = Scenario.standard().get(0);
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings();
+
+        // when
+        final AccuracyHarness.Result result = AccuracyHarness.run(scenario, settings, 50, 1);
+
+        // then
+        assertEquals(50, result.getCalls());
+        assertEquals(200, result.getDigits());
+        assertEquals(100, result.getDetectionRate(), 0);
+        assertEquals(0, result.getFalseAlarms());
+        assertTrue(result.getFramesPerSecond() > 0);
+    }
+
+    @Test
+    public void testRepeatedDigitsAreCountedOnce() {
+        // given
+        final Scenario scenario = new Scenario("repeated").setDigits(8).setPause(40);
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings().setToneDuration(40);
+
+        // when
+        final AccuracyHarness.Result result = AccuracyHarness.run(scenario, settings, 20, 1);
+
+        // then
+        assertEquals(160, result.getDigits());
+        assertEquals(result.getDigits(), result.getDetected());
+        assertEquals(0, result.getFalseAlarms());
+    }
+
+    @Test
+    public void testDigitsOffTheirFrequencyToleranceAreNotCompliant() {
+        // given
+        final Scenario nominal = Scenario.standard().get(0);
+        final Scenario offset = new Scenario("offset").setFrequencyOffset(1.5);
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings();
+
+        // when
+        final AccuracyHarness.Result detected = AccuracyHarness.run(nominal, settings, 20, 1);
+        final AccuracyHarness.Result missed = AccuracyHarness.run(offset, settings, 20, 1);
+
+        // then
+        assertTrue(AccuracyHarness.isCompliant(nominal, detected));
+        assertFalse(AccuracyHarness.isCompliant(offset, missed));
+        assertFalse(AccuracyHarness.isCompliant(new Scenario("rejected").setAccepted(false), detected));
+    }
+
+    @Test
+    public void testKnownNonCompliantConfigurationIsHeldToItsBaseline() {
+        // given
+        final Scenario offset = new Scenario("offset").setFrequencyOffset(1.5);
+        final AccuracyHarness.Result result = AccuracyHarness.run(offset, new GoertzelDtmfDetectorSettings(), 20, 1);
+        final boolean compliant = AccuracyHarness.isCompliant(offset, result);
+        final String rate = String.format(Locale.ROOT, "%.2f", result.getDetectionRate());
+        final String higherRate = String.format(Locale.ROOT, "%.2f", result.getDetectionRate() + 5);
+        final String falseAlarms = String.format(Locale.ROOT, "%.1f", result.getFalseAlarmsPerHour());
+
+        // when
+        final String same = AccuracyHarness.compare(result, compliant, row(rate, falseAlarms, "fails"), 1, 0.5);
+        final String worse = AccuracyHarness.compare(result, compliant, row(higherRate, falseAlarms, "fails"), 1, 0.5);
+        final String broken = AccuracyHarness.compare(result, compliant, row(rate, falseAlarms, "ok"), 1, 0.5);
+
+        // then
+        assertFalse(compliant);
+        assertEquals("ok", same);
+        assertTrue(worse, worse.startsWith("REGRESSION detection"));
+        assertTrue(broken, broken.contains("no longer complies with Q.24"));
+    }
+
+    private static String[] row(String detectionRate, String falseAlarmsPerHour, String q24) {
+        return new String[]{"offset", "-35", "80", "20", "20", detectionRate, falseAlarmsPerHour, "0", q24};
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Runs the detector benchmarks with the GC profiler and summarises every result as cost per frame, number of legs a single
+ * core can sustain in real time and bytes allocated per frame.
+ * <p>
+ * Accepts the usual JMH command line options, for instance a regular expression selecting the benchmarks to run. Raw results
+ * are also written in JSON format to the file given by the <code>-rff</code> option.
+ */
+public final class BenchmarkRunner {
+
+    private static final String ALLOCATION = "\u00b7gc.alloc.rate.norm";
+
+    private BenchmarkRunner() {
+        super();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .build();
+        final Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-90s %12s %14s %12s", "Benchmark", "ns/frame", "channels/core", "B/frame"));
+        for (RunResult result : results) {
+            final String name = result.getParams().getBenchmark().replaceFirst(".*\\.benchmark\\.", "");
+            final StringBuilder label = new StringBuilder(name);
+            for (String key : result.getParams().getParamsKeys()) {
+                label.append(' ').append(key).append('=').append(result.getParams().getParam(key));
+            }
+
+            final double nanosPerFrame = result.getPrimaryResult().getScore();
+            final double frameNanos = frameSize(result) * 1000000.0;
+            final Result allocation = result.getSecondaryResults().get(ALLOCATION);
+            System.out.println(String.format(Locale.ROOT, "%-90s %12.1f %14.0f %12.1f", label, nanosPerFrame,
+                    frameNanos / nanosPerFrame, allocation == null ? Double.NaN : allocation.getScore()));
+        }
+    }
+
+    private static int frameSize(RunResult result) {
+        final String frameSize = result.getParams().getParam("frameSize");
+        return (frameSize == null) ? 20 : Integer.parseInt(frameSize);
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetector;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorSettings;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of {@link GoertzelDtmfDetector#detect(byte[], long)} per frame.
+ * <p>
+ * Every invocation feeds the next frame of the signal to the next detector in a round robin, so that a large number of
+ * detectors reproduces the cache pressure of many concurrent legs sharing a core.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DetectorBenchmark {
+
+    private static final int SIGNAL_FRAMES = 500;
+
+    @Param({"SILENCE", "SPEECH", "DTMF"})
+    public Signals.Kind signal;
+
+    @Param({"40", "80"})
+    public int toneDuration;
+
+    @Param({"20"})
+    public int frameSize;
+
+    @Param({"1", "1000"})
+    public int detectors;
+
+    @Param({"false", "true"})
+    public boolean fixedPoint;
+
+    private GoertzelDtmfDetector[] channels;
+    private int[] positions;
+    private byte[][] frames;
+    private int channel;
+
+    @Setup
+    public void setUp() {
+        this.frames = Signals.generate(signal, SIGNAL_FRAMES, frameSize, 42L);
+        this.channels = new GoertzelDtmfDetector[detectors];
+        this.positions = new int[detectors];
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings().setToneVolume(-35)
+                .setToneDuration(toneDuration).setToneInterval(20).setFixedPoint(fixedPoint);
+        for (int i = 0; i < detectors; i++) {
+            this.channels[i] = new GoertzelDtmfDetector(settings);
+            // Spread legs over the signal so they do not all reach a window boundary on the same frame
+            this.positions[i] = (i * 7) % SIGNAL_FRAMES;
+        }
+    }
+
+    @Benchmark
+    public GoertzelDtmfDetector detect() {
+        final int i = channel;
+        channel = (i + 1 == detectors) ? 0 : i + 1;
+
+        final GoertzelDtmfDetector detector = channels[i];
+        final int position = positions[i];
+        positions[i] = (position + 1 == SIGNAL_FRAMES) ? 0 : position + 1;
+
+        detector.detect(frames[position], frameSize);
+        return detector;
+    }
+
+}
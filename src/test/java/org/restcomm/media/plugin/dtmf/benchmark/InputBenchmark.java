@@ -0,0 +1,111 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetector;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of feeding the same 20 ms DTMF frame to the detector through each of its input paths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InputBenchmark {
+
+    private static final int FRAME_SAMPLES = 160;
+
+    private GoertzelDtmfDetector detector;
+
+    private byte[] bytes;
+    private short[] shorts;
+    private ByteBuffer heapBytes;
+    private ByteBuffer directBytes;
+    private ByteBuffer readOnlyBytes;
+    private ShortBuffer directShorts;
+
+    @Setup
+    public void setUp() {
+        this.detector = new GoertzelDtmfDetector(-35, 80, 20);
+
+        this.shorts = new short[FRAME_SAMPLES];
+        this.bytes = new byte[2 * FRAME_SAMPLES];
+        for (int i = 0; i < FRAME_SAMPLES; i++) {
+            final double t = i / 8000.0;
+            final short sample = (short) (8000 * Math.sin(2 * Math.PI * 770 * t) + 8000 * Math.sin(2 * Math.PI * 1336 * t));
+            this.shorts[i] = sample;
+            this.bytes[2 * i] = (byte) sample;
+            this.bytes[2 * i + 1] = (byte) (sample >> 8);
+        }
+
+        this.heapBytes = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        this.directBytes = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        this.directBytes.put(bytes).flip();
+        this.readOnlyBytes = directBytes.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        this.directShorts = directBytes.duplicate().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+    }
+
+    @Benchmark
+    public GoertzelDtmfDetector byteArray() {
+        detector.detect(bytes, 20);
+        return detector;
+    }
+
+    @Benchmark
+    public GoertzelDtmfDetector shortArray() {
+        detector.detect(shorts, 0, FRAME_SAMPLES, 20);
+        return detector;
+    }
+
+    @Benchmark
+    public GoertzelDtmfDetector heapByteBuffer() {
+        detector.detect(heapBytes, 20);
+        return detector;
+    }
+
+    @Benchmark
+    public GoertzelDtmfDetector directByteBuffer() {
+        detector.detect(directBytes, 20);
+        return detector;
+    }
+
+    @Benchmark
+    public GoertzelDtmfDetector readOnlyByteBuffer() {
+        detector.detect(readOnlyBytes, 20);
+        return detector;
+    }
+
+    @Benchmark
+    public GoertzelDtmfDetector directShortBuffer() {
+        detector.detect(directShorts, 20);
+        return detector;
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.benchmark;
+
+import net.ripe.hadoop.pcap.packet.Packet;
+import org.openjdk.jmh.annotations.*;
+import org.restcomm.media.core.codec.g711.alaw.Decoder;
+import org.restcomm.media.core.pcap.GenericPcapReader;
+import org.restcomm.media.core.pcap.PcapFile;
+import org.restcomm.media.core.rtp.RtpPacket;
+import org.restcomm.media.core.spi.memory.Frame;
+import org.restcomm.media.core.spi.memory.Memory;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetector;
+import org.restcomm.media.plugin.dtmf.GoertzelDtmfDetectorSettings;
+import org.restcomm.media.plugin.dtmf.SampleEncoding;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost per frame of replaying the DTMF pcap fixtures through the detector, either as decoded linear PCM or as the
+ * raw A-law payloads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcapBenchmark {
+
+    @Param({"/dtmf_4_digits_fast.pcap", "/dtmf_4_digits_slow.pcap", "/dtmf_2_digit_pairs.pcap"})
+    public String file;
+
+    @Param({"LINEAR", "ALAW"})
+    public SampleEncoding encoding;
+
+    @Param({"100"})
+    public int toneDuration;
+
+    private GoertzelDtmfDetector detector;
+    private byte[][] frames;
+    private int position;
+
+    @Setup
+    public void setUp() throws IOException {
+        final GoertzelDtmfDetectorSettings settings = new GoertzelDtmfDetectorSettings().setToneVolume(-35)
+                .setToneDuration(toneDuration).setToneInterval(100).setEncoding(encoding);
+        this.detector = new GoertzelDtmfDetector(settings);
+        this.frames = readFrames(file, encoding == SampleEncoding.LINEAR);
+    }
+
+    @Benchmark
+    public GoertzelDtmfDetector detect() {
+        final int i = position;
+        position = (i + 1 == frames.length) ? 0 : i + 1;
+        detector.detect(frames[i], 20);
+        return detector;
+    }
+
+    private byte[][] readFrames(String resourceName, boolean decode) throws IOException {
+        final Decoder decoder = new Decoder();
+        final List<byte[]> payloads = new ArrayList<>();
+        final PcapFile pcap = new PcapFile(getClass().getResource(resourceName));
+        pcap.open();
+        try {
+            while (!pcap.isComplete()) {
+                final Packet packet = pcap.read();
+                final RtpPacket rtpPacket = new RtpPacket(false);
+                rtpPacket.wrap((byte[]) packet.get(GenericPcapReader.PAYLOAD));
+
+                final byte[] rtpPayload = new byte[rtpPacket.getPayloadLength()];
+                rtpPacket.getPayload(rtpPayload);
+                if (!decode) {
+                    payloads.add(rtpPayload);
+                    continue;
+                }
+
+                final Frame encodedFrame = Memory.allocate(rtpPayload.length);
+                encodedFrame.setOffset(0);
+                encodedFrame.setLength(rtpPayload.length);
+                encodedFrame.setFormat(decoder.getSupportedInputFormat());
+                System.arraycopy(rtpPayload, 0, encodedFrame.getData(), 0, rtpPayload.length);
+                final Frame decodedFrame = decoder.process(encodedFrame);
+
+                final byte[] pcm = new byte[decodedFrame.getLength()];
+                System.arraycopy(decodedFrame.getData(), decodedFrame.getOffset(), pcm, 0, pcm.length);
+                payloads.add(pcm);
+            }
+        } finally {
+            pcap.close();
+        }
+        return payloads.toArray(new byte[payloads.size()][]);
+    }
+
+}
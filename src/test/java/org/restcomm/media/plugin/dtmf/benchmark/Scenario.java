@@ -0,0 +1,207 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.benchmark;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes the synthetic calls of an accuracy run: how digits are dialled and what they are mixed with.
+ * <p>
+ * Levels are in dBm0, where 0 dBm0 is a sine wave 3.14 dB below the full scale of 16-bit linear audio.
+ */
+public final class Scenario {
+
+    /**
+     * Audio the digits are mixed with.
+     */
+    public enum Overlay {
+        /** Nothing, the digits are surrounded by digital silence. */
+        NONE,
+        /** White noise. */
+        NOISE,
+        /** Speech-like noise, see {@link Signals.Kind#SPEECH}. */
+        SPEECH
+    }
+
+    private final String name;
+    private int digits;
+    private double level;
+    private double twist;
+    private double frequencyOffset;
+    private Overlay overlay;
+    private double overlayLevel;
+    private int toneDuration;
+    private int pause;
+    private boolean accepted;
+
+    public Scenario(String name) {
+        this.name = name;
+        this.digits = 4;
+        this.level = -10;
+        this.twist = 0;
+        this.frequencyOffset = 0;
+        this.overlay = Overlay.NONE;
+        this.overlayLevel = -60;
+        this.toneDuration = 100;
+        this.pause = 100;
+        this.accepted = true;
+    }
+
+    /**
+     * Gets the scenarios the baselines are recorded for.
+     *
+     * @return the standard scenarios.
+     */
+    public static List<Scenario> standard() {
+        return Arrays.asList(
+                new Scenario("nominal").setOverlay(Overlay.NOISE).setOverlayLevel(-40),
+                new Scenario("fast").setOverlay(Overlay.NOISE).setOverlayLevel(-40).setToneDuration(50).setPause(50),
+                new Scenario("weak").setLevel(-30).setOverlay(Overlay.NOISE).setOverlayLevel(-55),
+                new Scenario("twist-high").setTwist(3).setOverlay(Overlay.NOISE).setOverlayLevel(-40),
+                new Scenario("twist-low").setTwist(-3).setOverlay(Overlay.NOISE).setOverlayLevel(-40),
+                new Scenario("twist-low-6").setTwist(-6).setOverlay(Overlay.NOISE).setOverlayLevel(-40),
+                new Scenario("offset-1.5").setFrequencyOffset(1.5).setOverlay(Overlay.NOISE).setOverlayLevel(-40),
+                new Scenario("offset-3.5").setFrequencyOffset(3.5).setOverlay(Overlay.NOISE).setOverlayLevel(-40)
+                        .setAccepted(false),
+                new Scenario("noisy").setOverlay(Overlay.NOISE).setOverlayLevel(-22),
+                new Scenario("speech").setOverlay(Overlay.SPEECH).setOverlayLevel(-20),
+                new Scenario("talk-off").setDigits(0).setOverlay(Overlay.SPEECH).setOverlayLevel(-10).setPause(10000));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of digits dialled in every call.
+     */
+    public int getDigits() {
+        return digits;
+    }
+
+    public Scenario setDigits(int digits) {
+        this.digits = digits;
+        return this;
+    }
+
+    /**
+     * @return the level of the low group tone, in dBm0.
+     */
+    public double getLevel() {
+        return level;
+    }
+
+    public Scenario setLevel(double level) {
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * @return how much stronger the high group tone is than the low group tone, in dB. Negative values make the low group
+     *         tone stronger.
+     */
+    public double getTwist() {
+        return twist;
+    }
+
+    public Scenario setTwist(double twist) {
+        this.twist = twist;
+        return this;
+    }
+
+    /**
+     * @return how far both tones are from their nominal frequency, in percent. Every digit is shifted up or down at random.
+     */
+    public double getFrequencyOffset() {
+        return frequencyOffset;
+    }
+
+    public Scenario setFrequencyOffset(double frequencyOffset) {
+        this.frequencyOffset = frequencyOffset;
+        return this;
+    }
+
+    public Overlay getOverlay() {
+        return overlay;
+    }
+
+    public Scenario setOverlay(Overlay overlay) {
+        this.overlay = overlay;
+        return this;
+    }
+
+    /**
+     * @return the RMS level of the overlay, in dBm0.
+     */
+    public double getOverlayLevel() {
+        return overlayLevel;
+    }
+
+    public Scenario setOverlayLevel(double overlayLevel) {
+        this.overlayLevel = overlayLevel;
+        return this;
+    }
+
+    /**
+     * @return the duration of every digit, in milliseconds.
+     */
+    public int getToneDuration() {
+        return toneDuration;
+    }
+
+    public Scenario setToneDuration(int toneDuration) {
+        this.toneDuration = toneDuration;
+        return this;
+    }
+
+    /**
+     * @return the pause before, between and after digits, in milliseconds.
+     */
+    public int getPause() {
+        return pause;
+    }
+
+    public Scenario setPause(int pause) {
+        this.pause = pause;
+        return this;
+    }
+
+    /**
+     * @return whether ITU-T Q.24 requires receivers to accept the digits of the scenario, rather than to reject them as
+     *         digits 3.5% or more off their nominal frequencies must be.
+     */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    public Scenario setAccepted(boolean accepted) {
+        this.accepted = accepted;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
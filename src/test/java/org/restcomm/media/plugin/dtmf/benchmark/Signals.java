@@ -0,0 +1,127 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates the synthetic 8 kHz audio used by the benchmarks, as 16-bit little-endian linear PCM frames.
+ */
+public final class Signals {
+
+    public static final int SAMPLE_RATE = 8000;
+
+    private static final int[] lowFreq = new int[]{697, 770, 852, 941};
+    private static final int[] highFreq = new int[]{1209, 1336, 1477, 1633};
+
+    private Signals() {
+        super();
+    }
+
+    /**
+     * Kinds of audio the benchmarks run against.
+     */
+    public enum Kind {
+        /** Digital silence. */
+        SILENCE,
+        /** Noise shaped like speech: low-pass filtered, with a syllabic envelope and pauses. */
+        SPEECH,
+        /** One DTMF digit after another, without pauses. */
+        DTMF
+    }
+
+    /**
+     * Generates consecutive frames of the requested kind of audio.
+     *
+     * @param kind the kind of audio.
+     * @param frames the number of frames.
+     * @param frameSize the duration of a frame, in milliseconds.
+     * @param seed the seed of the random generator.
+     * @return the frames.
+     */
+    public static byte[][] generate(Kind kind, int frames, int frameSize, long seed) {
+        final int samplesPerFrame = SAMPLE_RATE / 1000 * frameSize;
+        final short[] samples = new short[frames * samplesPerFrame];
+        switch (kind) {
+            case SPEECH:
+                speech(samples, new Random(seed));
+                break;
+            case DTMF:
+                dtmf(samples, 100);
+                break;
+            default:
+                break;
+        }
+
+        final byte[][] data = new byte[frames][];
+        for (int i = 0; i < frames; i++) {
+            data[i] = toBytes(samples, i * samplesPerFrame, samplesPerFrame);
+        }
+        return data;
+    }
+
+    /**
+     * Fills a buffer with speech-like noise.
+     */
+    static void speech(short[] samples, Random random) {
+        double lowPass = 0;
+        double envelope = 0;
+        for (int i = 0; i < samples.length; i++) {
+            // Syllables of about 200 ms, every fourth one silent
+            final int syllable = i / (SAMPLE_RATE / 5);
+            final double target = (syllable % 4 == 3) ? 0.0 : 0.3 + 0.7 * Math.abs(Math.sin(syllable * 1.7));
+            envelope += (target - envelope) * 0.002;
+            lowPass += (random.nextGaussian() - lowPass) * 0.25;
+            samples[i] = clip(envelope * lowPass * 12000);
+        }
+    }
+
+    /**
+     * Fills a buffer with DTMF digits cycling through the whole keypad.
+     *
+     * @param toneDuration the duration of each digit, in milliseconds.
+     */
+    static void dtmf(short[] samples, int toneDuration) {
+        final int toneLength = SAMPLE_RATE / 1000 * toneDuration;
+        for (int i = 0; i < samples.length; i++) {
+            final int digit = (i / toneLength) % 16;
+            final double t = (double) i / SAMPLE_RATE;
+            final double value = 8000 * Math.sin(2 * Math.PI * lowFreq[digit >> 2] * t)
+                    + 8000 * Math.sin(2 * Math.PI * highFreq[digit & 3] * t);
+            samples[i] = clip(value);
+        }
+    }
+
+    static short clip(double value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+
+    static byte[] toBytes(short[] samples, int offset, int length) {
+        final byte[] data = new byte[2 * length];
+        for (int i = 0; i < length; i++) {
+            data[2 * i] = (byte) samples[offset + i];
+            data[2 * i + 1] = (byte) (samples[offset + i] >> 8);
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2018, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.restcomm.media.plugin.dtmf.benchmark;
+
+import java.util.Random;
+
+/**
+ * A synthetic 8 kHz call made out of a {@link Scenario}, along with the digits it holds and where they are.
+ */
+final class SyntheticCall {
+
+    private static final String KEYS = "123A456B789C*0#D";
+    private static final int[] lowFreq = new int[]{697, 770, 852, 941};
+    private static final int[] highFreq = new int[]{1209, 1336, 1477, 1633};
+
+    // Peak amplitude of a 0 dBm0 sine wave
+    private static final double ZERO_DBM0 = Short.MAX_VALUE * Math.pow(10, -3.14 / 20);
+
+    private final short[] samples;
+    private final String tones;
+    private final long[] onsets;
+    private final long[] ends;
+
+    private SyntheticCall(short[] samples, String tones, long[] onsets, long[] ends) {
+        this.samples = samples;
+        this.tones = tones;
+        this.onsets = onsets;
+        this.ends = ends;
+    }
+
+    /**
+     * Generates a call.
+     * <p>
+     * Digits are picked at random from the whole keypad. The first one starts after the pause plus up to one frame of
+     * silence, so windows do not line up with digits the same way in every call.
+     *
+     * @param scenario the description of the call.
+     * @param seed the seed of the random generator, calls generated with the same seed are identical.
+     * @return the call.
+     */
+    static SyntheticCall generate(Scenario scenario, long seed) {
+        final Random random = new Random(seed);
+        final int toneLength = Signals.SAMPLE_RATE / 1000 * scenario.getToneDuration();
+        final int pauseLength = Signals.SAMPLE_RATE / 1000 * scenario.getPause();
+        final int start = pauseLength + random.nextInt(Signals.SAMPLE_RATE / 50);
+        final int digits = scenario.getDigits();
+        final double[] audio = new double[start + digits * (toneLength + pauseLength)];
+
+        final double lowAmplitude = ZERO_DBM0 * Math.pow(10, scenario.getLevel() / 20);
+        final double highAmplitude = lowAmplitude * Math.pow(10, scenario.getTwist() / 20);
+        final StringBuilder tones = new StringBuilder(digits);
+        final long[] onsets = new long[digits];
+        final long[] ends = new long[digits];
+        for (int d = 0; d < digits; d++) {
+            final int key = random.nextInt(KEYS.length());
+            final double shift = 1 + (random.nextBoolean() ? 1 : -1) * scenario.getFrequencyOffset() / 100;
+            final double low = 2 * Math.PI * lowFreq[key >> 2] * shift / Signals.SAMPLE_RATE;
+            final double high = 2 * Math.PI * highFreq[key & 3] * shift / Signals.SAMPLE_RATE;
+            final double phase = 2 * Math.PI * random.nextDouble();
+            final int onset = start + d * (toneLength + pauseLength);
+            for (int i = 0; i < toneLength; i++) {
+                audio[onset + i] = lowAmplitude * Math.sin(low * i + phase) + highAmplitude * Math.sin(high * i);
+            }
+            tones.append(KEYS.charAt(key));
+            onsets[d] = onset;
+            ends[d] = onset + toneLength;
+        }
+
+        overlay(audio, scenario, random);
+
+        final short[] samples = new short[audio.length];
+        for (int i = 0; i < audio.length; i++) {
+            samples[i] = Signals.clip(audio[i]);
+        }
+        return new SyntheticCall(samples, tones.toString(), onsets, ends);
+    }
+
+    /**
+     * Adds the overlay of a scenario, scaled to its RMS level over the whole call.
+     */
+    private static void overlay(double[] audio, Scenario scenario, Random random) {
+        final short[] overlay = new short[audio.length];
+        switch (scenario.getOverlay()) {
+            case NOISE:
+                for (int i = 0; i < overlay.length; i++) {
+                    overlay[i] = Signals.clip(random.nextGaussian() * 8000);
+                }
+                break;
+            case SPEECH:
+                Signals.speech(overlay, random);
+                break;
+            default:
+                return;
+        }
+
+        double energy = 0;
+        for (short sample : overlay) {
+            energy += (double) sample * sample;
+        }
+        if (energy == 0) {
+            return;
+        }
+        final double rms = ZERO_DBM0 / Math.sqrt(2) * Math.pow(10, scenario.getOverlayLevel() / 20);
+        final double gain = rms / Math.sqrt(energy / overlay.length);
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] += overlay[i] * gain;
+        }
+    }
+
+    short[] getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the digits of the call, in order.
+     */
+    String getTones() {
+        return tones;
+    }
+
+    /**
+     * @return the sample offset of the first sample of every digit.
+     */
+    long[] getOnsets() {
+        return onsets;
+    }
+
+    /**
+     * @return the sample offset right after the last sample of every digit.
+     */
+    long[] getEnds() {
+        return ends;
+    }
+
+}